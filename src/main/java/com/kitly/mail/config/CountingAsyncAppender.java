@@ -0,0 +1,29 @@
+package com.kitly.mail.config;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AsyncAppender} that counts the events it discards. Once the queue is more than
+ * {@code 1 - discardingThreshold/queueSize} full, events below WARN are discarded; WARN and ERROR
+ * are always queued, waiting for space if they must.
+ */
+public class CountingAsyncAppender extends AsyncAppender {
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        boolean discardable = super.isDiscardable(event);
+        if (discardable) {
+            discarded.incrementAndGet();
+        }
+        return discardable;
+    }
+
+    public long getDiscarded() {
+        return discarded.get();
+    }
+}
@@ -0,0 +1,50 @@
+package com.kitly.mail.config;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+
+/**
+ * Exposes how many log events were dropped as {@code logging.events.dropped}. Events removed by the
+ * {@link SampledLogFilter} are tagged {@code reason=sampled} with their category as {@code source};
+ * events discarded by a {@link CountingAsyncAppender} are tagged {@code reason=queue_full} with the
+ * appender as {@code source}.
+ */
+@Component
+public class LoggingMetrics {
+
+    static final String DROPPED = "logging.events.dropped";
+
+    public LoggingMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        if (LoggerFactory.getILoggerFactory() instanceof LoggerContext context) {
+            meterRegistry.ifAvailable(registry -> bindTo(context, registry));
+        }
+    }
+
+    static void bindTo(LoggerContext context, MeterRegistry registry) {
+        context.getTurboFilterList().stream()
+                .filter(SampledLogFilter.class::isInstance)
+                .map(SampledLogFilter.class::cast)
+                .flatMap(filter -> filter.getDropped().entrySet().stream())
+                .forEach(dropped -> FunctionCounter.builder(DROPPED, dropped.getValue(), Number::doubleValue)
+                        .tag("reason", "sampled")
+                        .tag("source", dropped.getKey())
+                        .register(registry));
+        for (Iterator<Appender<ILoggingEvent>> appenders = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)
+                .iteratorForAppenders(); appenders.hasNext(); ) {
+            if (appenders.next() instanceof CountingAsyncAppender appender) {
+                FunctionCounter.builder(DROPPED, appender, CountingAsyncAppender::getDiscarded)
+                        .tag("reason", "queue_full")
+                        .tag("source", appender.getName())
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kitly.mail.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one in every N log events below WARN for the configured categories and drops the rest
+ * before the event is even created. WARN and ERROR always pass.
+ * <p>
+ * Configured in {@code logback-spring.xml} with one {@code <category>logger=N</category>} per
+ * category; a category covers its logger and every logger below it, and the most specific category
+ * wins.
+ */
+public class SampledLogFilter extends TurboFilter {
+
+    private static final Category UNSAMPLED = new Category("", 1);
+
+    private final List<Category> categories = new ArrayList<>();
+    private final Map<String, Category> byLogger = new ConcurrentHashMap<>();
+
+    /**
+     * @param category {@code logger=N} to keep one in N events of the logger and its children
+     */
+    public void addCategory(String category) {
+        int separator = category.lastIndexOf('=');
+        if (separator < 1) {
+            addError("Invalid sampled log category '" + category + "', expected logger=N");
+            return;
+        }
+        int oneIn;
+        try {
+            oneIn = Integer.parseInt(category.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            addError("Invalid sampling rate in log category '" + category + "'");
+            return;
+        }
+        if (oneIn < 1) {
+            addError("Sampling rate of log category '" + category + "' must be at least 1");
+            return;
+        }
+        categories.add(new Category(category.substring(0, separator).trim(), oneIn));
+        categories.sort(Comparator.comparingInt((Category c) -> c.name.length()).reversed());
+        byLogger.clear();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // A null format is an isEnabled check, not an event
+        if (!isStarted() || format == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        Category category = byLogger.computeIfAbsent(logger.getName(), this::categoryOf);
+        if (category.oneIn == 1 || category.seen.getAndIncrement() % category.oneIn == 0) {
+            return FilterReply.NEUTRAL;
+        }
+        category.dropped.incrementAndGet();
+        return FilterReply.DENY;
+    }
+
+    /**
+     * @return The number of events dropped so far, by category
+     */
+    public Map<String, AtomicLong> getDropped() {
+        Map<String, AtomicLong> dropped = new ConcurrentHashMap<>();
+        categories.forEach(category -> dropped.put(category.name, category.dropped));
+        return dropped;
+    }
+
+    private Category categoryOf(String logger) {
+        for (Category category : categories) {
+            if (logger.equals(category.name) || logger.startsWith(category.name + ".")) {
+                return category;
+            }
+        }
+        return UNSAMPLED;
+    }
+
+    private static final class Category {
+        private final String name;
+        private final int oneIn;
+        private final AtomicLong seen = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private Category(String name, int oneIn) {
+            this.name = name;
+            this.oneIn = oneIn;
+        }
+    }
+}
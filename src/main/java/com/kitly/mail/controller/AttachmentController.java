@@ -0,0 +1,63 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.model.Attachment;
+import com.kitly.mail.service.AttachmentService;
+import com.kitly.mail.service.AttachmentTooLargeException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Uploads attachments ahead of a send request. Content is streamed straight to the spool directory,
+ * either from a multipart form part or from a raw request body.
+ */
+@RestController
+@RequestMapping("/api/attachments")
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentController {
+
+    private final AttachmentService attachmentService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AttachmentResponse> uploadMultipart(@RequestParam("file") MultipartFile file) {
+        try (InputStream content = file.getInputStream()) {
+            return upload(file.getOriginalFilename(), file.getContentType(), content);
+        } catch (IOException e) {
+            log.error("Failed to read uploaded attachment: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<AttachmentResponse> uploadStream(
+            @RequestParam String filename,
+            @RequestParam(required = false) String contentType,
+            InputStream content) {
+        return upload(filename, contentType, content);
+    }
+
+    private ResponseEntity<AttachmentResponse> upload(String filename, String contentType, InputStream content) {
+        if (filename == null || filename.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            Attachment attachment = attachmentService.upload(filename, contentType, content);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(AttachmentResponse.fromAttachment(attachment));
+        } catch (AttachmentTooLargeException e) {
+            log.warn("Rejected attachment {}: {}", filename, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).build();
+        } catch (IOException e) {
+            log.error("Failed to store attachment {}: {}", filename, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
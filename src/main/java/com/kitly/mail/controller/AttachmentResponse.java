@@ -0,0 +1,34 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.model.Attachment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentResponse {
+
+    private Long id;
+    private String filename;
+    private String contentType;
+    private long sizeBytes;
+    private String sha256;
+    private LocalDateTime createdAt;
+
+    public static AttachmentResponse fromAttachment(Attachment attachment) {
+        return AttachmentResponse.builder()
+                .id(attachment.getId())
+                .filename(attachment.getFilename())
+                .contentType(attachment.getContentType())
+                .sizeBytes(attachment.getSizeBytes())
+                .sha256(attachment.getSha256())
+                .createdAt(attachment.getCreatedAt())
+                .build();
+    }
+}
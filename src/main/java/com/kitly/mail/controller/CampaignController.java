@@ -0,0 +1,112 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.model.Campaign;
+import com.kitly.mail.service.CampaignService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongFunction;
+
+/**
+ * Sends one message to an uploaded recipient list. A campaign is created as a draft, gets its
+ * recipient list streamed in, and is then started; deliveries are spread evenly over its window
+ * and can be paused and resumed.
+ */
+@RestController
+@RequestMapping("/api/campaigns")
+@RequiredArgsConstructor
+@Slf4j
+public class CampaignController {
+
+    private final CampaignService campaignService;
+
+    @PostMapping
+    public ResponseEntity<CampaignResponse> createCampaign(@Valid @RequestBody CampaignRequest request) {
+        Campaign campaign = Campaign.builder()
+                .name(request.getName())
+                .fromEmail(request.getFromEmail())
+                .fromName(request.getFromName())
+                .subject(request.getSubject())
+                .htmlContent(request.getHtmlContent())
+                .textContent(request.getTextContent())
+                .priority(request.getPriority())
+                .windowSeconds(request.getWindowMinutes() != null ? request.getWindowMinutes() * 60 : 0)
+                .build();
+        return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(campaignService.create(campaign)));
+    }
+
+    /**
+     * Upload the recipient list, one {@code address[,name]} per line, streamed to disk as it arrives.
+     */
+    @PutMapping(path = "/{id}/recipients",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, "text/csv", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<CampaignResponse> uploadRecipients(@PathVariable Long id, InputStream content) {
+        try {
+            campaignService.getCampaign(id);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(toResponse(campaignService.uploadRecipients(id, content)));
+        } catch (IllegalStateException e) {
+            log.warn("Rejected recipients for campaign {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected recipients for campaign {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).build();
+        } catch (IOException e) {
+            log.error("Failed to store recipients for campaign {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/{id}/start")
+    public ResponseEntity<CampaignResponse> startCampaign(@PathVariable Long id) {
+        return transition(id, campaignService::start);
+    }
+
+    @PostMapping("/{id}/pause")
+    public ResponseEntity<CampaignResponse> pauseCampaign(@PathVariable Long id) {
+        return transition(id, campaignService::pause);
+    }
+
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<CampaignResponse> resumeCampaign(@PathVariable Long id) {
+        return transition(id, campaignService::resume);
+    }
+
+    /**
+     * Campaign with its progress: recipients queued so far and their delivery status counts.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<CampaignResponse> getCampaign(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(toResponse(campaignService.getCampaign(id)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    private ResponseEntity<CampaignResponse> transition(Long id, LongFunction<Campaign> action) {
+        try {
+            campaignService.getCampaign(id);
+            return ResponseEntity.ok(toResponse(action.apply(id)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            log.warn("Rejected campaign transition: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    private CampaignResponse toResponse(Campaign campaign) {
+        return CampaignResponse.fromCampaign(campaign, campaignService.countByStatus(campaign.getId()));
+    }
+}
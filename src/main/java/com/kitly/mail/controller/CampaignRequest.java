@@ -0,0 +1,48 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.model.Email.Priority;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CampaignRequest {
+
+    @NotBlank(message = "Name is required")
+    private String name;
+
+    @NotBlank(message = "From email is required")
+    @Email(message = "From email must be valid")
+    private String fromEmail;
+
+    @NotBlank(message = "From name is required")
+    private String fromName;
+
+    /**
+     * Subject and bodies may use the {@code {{email}}} and {@code {{name}}} placeholders.
+     */
+    @NotBlank(message = "Subject is required")
+    private String subject;
+
+    private String htmlContent;
+
+    private String textContent;
+
+    /**
+     * Defaults to {@code BULK}.
+     */
+    private Priority priority;
+
+    /**
+     * Minutes over which deliveries are spread evenly; {@code 0} or absent sends as fast as possible.
+     */
+    @PositiveOrZero(message = "Window must not be negative")
+    private Long windowMinutes;
+}
@@ -0,0 +1,52 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.model.Campaign;
+import com.kitly.mail.model.Email;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CampaignResponse {
+
+    private Long id;
+    private String name;
+    private String status;
+    private String priority;
+    private long windowMinutes;
+    private long totalRecipients;
+    private long rejectedRecipients;
+    private long queuedRecipients;
+    private long sent;
+    private long failed;
+    private long pending;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    public static CampaignResponse fromCampaign(Campaign campaign, Map<Email.EmailStatus, Long> counts) {
+        return CampaignResponse.builder()
+                .id(campaign.getId())
+                .name(campaign.getName())
+                .status(campaign.getStatus().name())
+                .priority(campaign.getPriority().name())
+                .windowMinutes(campaign.getWindowSeconds() / 60)
+                .totalRecipients(campaign.getTotalRecipients())
+                .rejectedRecipients(campaign.getRejectedRecipients())
+                .queuedRecipients(campaign.getExpandedRecipients())
+                .sent(counts.getOrDefault(Email.EmailStatus.SENT, 0L))
+                .failed(counts.getOrDefault(Email.EmailStatus.FAILED, 0L))
+                .pending(counts.getOrDefault(Email.EmailStatus.PENDING, 0L))
+                .createdAt(campaign.getCreatedAt())
+                .startedAt(campaign.getStartedAt())
+                .completedAt(campaign.getCompletedAt())
+                .build();
+    }
+}
@@ -1,72 +1,343 @@
 package com.kitly.mail.controller;
 
 import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.EmailStatusView;
+import com.kitly.mail.service.AdmissionControl;
+import com.kitly.mail.service.DatabaseUnavailableException;
+import com.kitly.mail.service.EmailDigester;
+import com.kitly.mail.service.EmailFilter;
 import com.kitly.mail.service.EmailService;
-import com.kitly.mail.service.MailProviderException;
+import com.kitly.mail.service.MailObservations;
+import com.kitly.mail.service.RecipientValidator;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
+import jakarta.validation.constraints.Positive;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/emails")
-@RequiredArgsConstructor
 @Slf4j
 public class EmailController {
 
     private final EmailService emailService;
+    private final EmailResponseCache responseCache;
+    private final AdmissionControl admissionControl;
+    private final EmailDigester digester;
+    private final RecipientValidator recipientValidator;
+    private final ObservationRegistry observationRegistry;
+    private final long responseTimeoutMs;
 
+    public EmailController(EmailService emailService, EmailResponseCache responseCache,
+                           AdmissionControl admissionControl, EmailDigester digester,
+                           RecipientValidator recipientValidator, ObservationRegistry observationRegistry,
+                           @Value("${mail.send.response-timeout-ms:30000}") long responseTimeoutMs) {
+        this.emailService = emailService;
+        this.responseCache = responseCache;
+        this.admissionControl = admissionControl;
+        this.digester = digester;
+        this.recipientValidator = recipientValidator;
+        this.observationRegistry = observationRegistry;
+        this.responseTimeoutMs = responseTimeoutMs;
+    }
+
+    /**
+     * Send or schedule an email. Sends complete asynchronously: the request thread is released while
+     * the provider call runs on the dispatch lane, and the response is written when it finishes.
+     * Sends the dispatcher cannot start in time, including sends held up by a throttled recipient
+     * domain, are shed with {@code 429} and a {@code Retry-After}. A send still running after
+     * {@code mail.send.response-timeout-ms} is answered with {@code 202} and the email id, and goes on
+     * in the background.
+     * Emails with a digest category are accepted with {@code 202} once they are in the local digest
+     * journal, and sent when their digest closes, or on the next start if the instance crashed.
+     * Recipients that are malformed, disposable or at a domain that takes no mail are rejected with
+     * {@code 422} before anything is stored.
+     * <p>
+     * The send is observed as {@link MailObservations#SEND}; the database and provider calls it makes
+     * are recorded as its children, also when they run on a dispatch worker.
+     */
     @PostMapping
-    public ResponseEntity<EmailResponse> sendEmail(@Valid @RequestBody EmailRequest request) {
+    public CompletableFuture<ResponseEntity<EmailResponse>> sendEmail(@Valid @RequestBody EmailRequest request) {
+        Observation observation = Observation.start(MailObservations.SEND, observationRegistry);
+        CompletableFuture<ResponseEntity<EmailResponse>> response;
+        try (Observation.Scope scope = observation.openScope()) {
+            response = send(request);
+        } catch (RuntimeException e) {
+            observation.error(e);
+            observation.stop();
+            throw e;
+        }
+        return response.whenComplete((entity, error) -> {
+            if (entity != null) {
+                EmailResponse body = entity.getBody();
+                observation.lowCardinalityKeyValue(MailObservations.OUTCOME, body != null
+                        ? body.getStatus() : HttpStatus.valueOf(entity.getStatusCode().value()).name());
+                if (body != null && body.getId() != null) {
+                    observation.highCardinalityKeyValue(MailObservations.EMAIL_ID, String.valueOf(body.getId()));
+                }
+            } else if (error != null) {
+                observation.error(error);
+            }
+            observation.stop();
+        });
+    }
+
+    private CompletableFuture<ResponseEntity<EmailResponse>> send(EmailRequest request) {
         log.info("Received request to send email to: {}", request.getToEmail());
 
+        RecipientValidator.Verdict recipient = recipientValidator.validate(request.getToEmail());
+        if (!recipient.valid()) {
+            log.warn("Rejected email to {}: {}", request.getToEmail(), recipient.rejection());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNPROCESSABLE_CONTENT)
+                    .body(EmailResponse.builder()
+                            .toEmail(request.getToEmail())
+                            .status("REJECTED")
+                            .errorMessage(recipient.rejection())
+                            .build()));
+        }
+
         Email email = Email.builder()
                 .fromEmail(request.getFromEmail())
                 .fromName(request.getFromName())
-                .toEmail(request.getToEmail())
+                .toEmail(recipient.address())
                 .toName(request.getToName())
                 .subject(request.getSubject())
                 .htmlContent(request.getHtmlContent())
                 .textContent(request.getTextContent())
+                .priority(request.getPriority() != null ? request.getPriority() : Email.Priority.TRANSACTIONAL)
                 .build();
+        List<Long> attachmentIds = request.getAttachmentIds() != null ? request.getAttachmentIds() : List.of();
+
+        if (request.getSendAt() != null) {
+            email.setSendAt(LocalDateTime.ofInstant(request.getSendAt().toInstant(), ZoneId.systemDefault()));
+            try {
+                Email scheduledEmail = emailService.scheduleEmail(email, attachmentIds);
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .body(EmailResponse.fromEmail(scheduledEmail)));
+            } catch (DatabaseUnavailableException e) {
+                return CompletableFuture.completedFuture(spool(email, attachmentIds, e));
+            } catch (IllegalArgumentException e) {
+                log.warn("Rejected email to {}: {}", request.getToEmail(), e.getMessage());
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+            }
+        }
+
+        if (request.getDigestCategory() != null && attachmentIds.isEmpty()) {
+            Duration window = request.getDigestWindowSeconds() != null
+                    ? Duration.ofSeconds(request.getDigestWindowSeconds()) : null;
+            Email digested = digester.add(email, request.getDigestCategory(), window);
+            if (digested != null) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .body(EmailResponse.fromEmail(digested)));
+            }
+        }
+
+        AdmissionControl.Decision admission = admissionControl.tryAdmit(email);
+        if (!admission.admitted()) {
+            log.warn("Shedding {} email to {}, retry after {} s",
+                    email.getPriority(), request.getToEmail(), admission.retryAfterSeconds());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()))
+                    .<EmailResponse>build());
+        }
+        try {
+            CompletableFuture<Email> sending = emailService.sendEmailAsync(email, attachmentIds);
+            // Released when the send finishes, not when the response times out
+            sending.whenComplete((sentEmail, error) -> admissionControl.release());
+            return sending.handle((sentEmail, error) -> {
+                if (error == null) {
+                    return ResponseEntity.status(HttpStatus.CREATED)
+                            .body(EmailResponse.fromEmail(sentEmail));
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof RejectedExecutionException) {
+                    // Stored but not sent before shutdown; lease recovery delivers it
+                    log.warn("Email {} left for lease recovery: {}", email.getId(), cause.getMessage());
+                    return ResponseEntity.status(HttpStatus.ACCEPTED).body(EmailResponse.fromEmail(email));
+                }
+                log.error("Failed to send email: {}", cause.getMessage());
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<EmailResponse>build();
+            }).orTimeout(responseTimeoutMs, TimeUnit.MILLISECONDS).exceptionally(error -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (!(cause instanceof TimeoutException)) {
+                    throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                }
+                // The email is stored; its status can be polled while the provider call goes on
+                log.warn("Email {} still sending after {} ms, answering 202", email.getId(), responseTimeoutMs);
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(EmailResponse.fromEmail(email));
+            });
+        } catch (DatabaseUnavailableException e) {
+            admissionControl.release();
+            return CompletableFuture.completedFuture(spool(email, attachmentIds, e));
+        } catch (IllegalArgumentException e) {
+            admissionControl.release();
+            log.warn("Rejected email to {}: {}", request.getToEmail(), e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        } catch (RejectedExecutionException e) {
+            admissionControl.release();
+            log.warn("Rejected email to {}: {}", request.getToEmail(), e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        } catch (RuntimeException e) {
+            admissionControl.release();
+            throw e;
+        }
+    }
 
+    /**
+     * Accept the email into the local spool when the database cannot take it. The response has no id
+     * yet; the message id identifies the email once the spool has been replayed.
+     */
+    private ResponseEntity<EmailResponse> spool(Email email, List<Long> attachmentIds, DatabaseUnavailableException cause) {
+        log.warn("Database unavailable, spooling email to {}: {}", email.getToEmail(), cause.getMessage());
         try {
-            Email sentEmail = emailService.sendEmail(email);
-            return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(EmailResponse.fromEmail(sentEmail));
-        } catch (MailProviderException e) {
-            log.error("Failed to send email: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(EmailResponse.fromEmail(emailService.spoolEmail(email, attachmentIds)));
+        } catch (IOException e) {
+            log.error("Failed to spool email to {}: {}", email.getToEmail(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
     }
 
+    /**
+     * Get one email. With {@code ?fields=status,sentAt} only those fields are returned, and only their
+     * columns are read when the email is not cached.
+     * <p>
+     * The response carries the email's row version as a strong ETag, distinct per fieldset. A request
+     * whose {@code If-None-Match} still matches is answered with {@code 304} from the response cache or
+     * a lookup of the version alone, without loading the email.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<EmailResponse> getEmail(@PathVariable Long id) {
-        Email email = emailService.getEmailById(id);
-        return ResponseEntity.ok(EmailResponse.fromEmail(email));
+    public ResponseEntity<?> getEmail(@PathVariable Long id,
+                                      @RequestParam(required = false) List<String> fields,
+                                      WebRequest request) {
+        List<String> fieldset = null;
+        if (fields != null) {
+            fieldset = EmailResponse.fieldset(fields);
+            if (fieldset == null) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        EmailResponse cached = responseCache.getIfPresent(id);
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<Long> version = cached != null ? Optional.of(cached.getVersion()) : emailService.findEmailVersion(id);
+            if (version.isPresent() && request.checkNotModified(eTag(version.get(), fieldset))) {
+                return null;
+            }
+        }
+
+        if (fieldset == null) {
+            EmailResponse response = cached != null
+                    ? cached
+                    : responseCache.get(id, key -> EmailResponse.fromEmail(emailService.getEmailById(key)));
+            return ResponseEntity.ok().eTag(eTag(response.getVersion(), null)).body(response);
+        }
+        if (cached != null) {
+            return ResponseEntity.ok().eTag(eTag(cached.getVersion(), fieldset)).body(cached.project(fieldset));
+        }
+        // The version is always read, for the ETag
+        List<String> attributes = Stream.concat(fieldset.stream(), Stream.of("version")).distinct().toList();
+        Map<String, Object> values = emailService.getEmailAttributes(id, attributes);
+        return ResponseEntity.ok()
+                .eTag(eTag((Long) values.get("version"), fieldset))
+                .body(EmailResponse.project(values, fieldset));
+    }
+
+    /**
+     * Look up the status of up to 5000 emails by id and 5000 by provider id in one round trip. Ids
+     * whose response is cached are answered from the cache; the rest are resolved with one {@code IN}
+     * query per kind of id over a projection of id, external id and status. Ids that match no email are
+     * left out of the result. If an external id matches several emails, the latest wins.
+     */
+    @PostMapping("/status:lookup")
+    public ResponseEntity<EmailStatusLookupResponse> lookupStatuses(@Valid @RequestBody EmailStatusLookupRequest request) {
+        Map<Long, String> byId = new LinkedHashMap<>();
+        Set<Long> uncached = new LinkedHashSet<>();
+        if (request.getIds() != null) {
+            for (Long id : request.getIds()) {
+                EmailResponse cached = id != null ? responseCache.getIfPresent(id) : null;
+                if (cached != null) {
+                    byId.put(id, cached.getStatus());
+                } else if (id != null) {
+                    uncached.add(id);
+                }
+            }
+        }
+        Set<String> externalIds = request.getExternalIds() != null
+                ? request.getExternalIds().stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new))
+                : Set.of();
+
+        Map<String, String> byExternalId = new LinkedHashMap<>();
+        for (EmailStatusView email : emailService.findStatuses(uncached, externalIds)) {
+            if (uncached.contains(email.getId())) {
+                byId.put(email.getId(), email.getStatus().name());
+            }
+            if (email.getExternalId() != null && externalIds.contains(email.getExternalId())) {
+                byExternalId.put(email.getExternalId(), email.getStatus().name());
+            }
+        }
+        return ResponseEntity.ok(EmailStatusLookupResponse.builder()
+                .byId(byId)
+                .byExternalId(byExternalId)
+                .build());
+    }
+
+    /**
+     * @param fieldset The selected fields, or {@code null} for the full response
+     */
+    private static String eTag(long version, List<String> fieldset) {
+        return "\"" + version + (fieldset != null ? ";" + String.join(",", fieldset) : "") + "\"";
     }
 
     @GetMapping
     public ResponseEntity<List<EmailResponse>> getAllEmails(
             @RequestParam(required = false) String status,
-            @RequestParam(required = false) String recipient) {
-
-        List<Email> emails;
+            @RequestParam(required = false) String recipient,
+            @RequestParam(required = false) String sender,
+            @RequestParam(required = false) String provider,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(required = false) @Positive Integer limit) {
 
-        if (status != null) {
-            emails = emailService.getEmailsByStatus(Email.EmailStatus.valueOf(status.toUpperCase()));
-        } else if (recipient != null) {
-            emails = emailService.getEmailsByRecipient(recipient);
-        } else {
-            emails = emailService.getAllEmails();
-        }
+        EmailFilter filter = EmailFilter.builder()
+                .status(status != null ? Email.EmailStatus.valueOf(status.toUpperCase()) : null)
+                .recipient(recipient)
+                .sender(sender)
+                .provider(provider)
+                .createdFrom(createdFrom)
+                .createdTo(createdTo)
+                .limit(limit)
+                .build();
 
-        List<EmailResponse> responses = emails.stream()
+        List<EmailResponse> responses = emailService.findEmails(filter).stream()
                 .map(EmailResponse::fromEmail)
                 .collect(Collectors.toList());
 
@@ -1,12 +1,19 @@
 package com.kitly.mail.controller;
 
+import com.kitly.mail.model.Email.Priority;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+import java.time.OffsetDateTime;
+import java.util.List;
 
 @Data
 @Builder
@@ -34,4 +41,30 @@ public class EmailRequest {
     private String htmlContent;
 
     private String textContent;
+
+    private Priority priority;
+
+    /**
+     * Optional delivery time. When set, the email is stored and sent once this time is reached.
+     */
+    @Future(message = "Send time must be in the future")
+    private OffsetDateTime sendAt;
+
+    /**
+     * Ids of attachments uploaded through {@code /api/attachments}. Each attachment can be used by one email.
+     */
+    private List<Long> attachmentIds;
+
+    /**
+     * Opt-in digest category. Emails to the same recipient with the same category that arrive within
+     * the digest window are merged into one email. Ignored for scheduled emails and emails with attachments.
+     */
+    @Size(max = 100, message = "Digest category must be at most 100 characters")
+    private String digestCategory;
+
+    /**
+     * How long a digest opened by this email collects further emails. Defaults to {@code mail.digest.default-window-seconds}.
+     */
+    @Positive(message = "Digest window must be positive")
+    private Integer digestWindowSeconds;
 }
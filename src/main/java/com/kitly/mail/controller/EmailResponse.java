@@ -7,6 +7,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 @Data
 @Builder
@@ -14,31 +19,106 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class EmailResponse {
 
+    /**
+     * The fields a client can select with {@code ?fields=}, in response order. Each is read from the
+     * {@link Email} attribute of the same name.
+     */
+    private static final Map<String, Function<EmailResponse, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("id", EmailResponse::getId);
+        FIELDS.put("messageId", EmailResponse::getMessageId);
+        FIELDS.put("fromEmail", EmailResponse::getFromEmail);
+        FIELDS.put("fromName", EmailResponse::getFromName);
+        FIELDS.put("toEmail", EmailResponse::getToEmail);
+        FIELDS.put("toName", EmailResponse::getToName);
+        FIELDS.put("subject", EmailResponse::getSubject);
+        FIELDS.put("status", EmailResponse::getStatus);
+        FIELDS.put("priority", EmailResponse::getPriority);
+        FIELDS.put("externalId", EmailResponse::getExternalId);
+        FIELDS.put("provider", EmailResponse::getProvider);
+        FIELDS.put("errorMessage", EmailResponse::getErrorMessage);
+        FIELDS.put("createdAt", EmailResponse::getCreatedAt);
+        FIELDS.put("sentAt", EmailResponse::getSentAt);
+        FIELDS.put("sendAt", EmailResponse::getSendAt);
+        FIELDS.put("attachmentCount", EmailResponse::getAttachmentCount);
+        FIELDS.put("version", EmailResponse::getVersion);
+    }
+
     private Long id;
+    private String messageId;
     private String fromEmail;
     private String fromName;
     private String toEmail;
     private String toName;
     private String subject;
     private String status;
+    private String priority;
     private String externalId;
+    private String provider;
     private String errorMessage;
     private LocalDateTime createdAt;
     private LocalDateTime sentAt;
+    private LocalDateTime sendAt;
+    private int attachmentCount;
+    private long version;
 
     public static EmailResponse fromEmail(Email email) {
         return EmailResponse.builder()
                 .id(email.getId())
+                .messageId(email.getMessageId())
                 .fromEmail(email.getFromEmail())
                 .fromName(email.getFromName())
                 .toEmail(email.getToEmail())
                 .toName(email.getToName())
                 .subject(email.getSubject())
                 .status(email.getStatus().name())
+                .priority(email.getPriority() != null ? email.getPriority().name() : null)
                 .externalId(email.getExternalId())
+                .provider(email.getProvider())
                 .errorMessage(email.getErrorMessage())
                 .createdAt(email.getCreatedAt())
                 .sentAt(email.getSentAt())
+                .sendAt(email.getSendAt())
+                .attachmentCount(email.getAttachmentCount())
+                .version(email.getVersion())
                 .build();
     }
+
+    /**
+     * @param names Requested field names, possibly repeated
+     * @return The fields in response order, or {@code null} if a name is not a field
+     */
+    static List<String> fieldset(Collection<String> names) {
+        for (String name : names) {
+            if (!FIELDS.containsKey(name)) {
+                return null;
+            }
+        }
+        return FIELDS.keySet().stream().filter(names::contains).toList();
+    }
+
+    /**
+     * @return Only the given fields of this response
+     */
+    Map<String, Object> project(List<String> fieldset) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (String name : fieldset) {
+            fields.put(name, FIELDS.get(name).apply(this));
+        }
+        return fields;
+    }
+
+    /**
+     * @param attributes Attribute values of an {@link Email} by name, as selected for a fieldset
+     * @return The given fields, formatted as in a full response
+     */
+    static Map<String, Object> project(Map<String, Object> attributes, List<String> fieldset) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (String name : fieldset) {
+            Object value = attributes.get(name);
+            fields.put(name, value instanceof Enum<?> constant ? constant.name() : value);
+        }
+        return fields;
+    }
 }
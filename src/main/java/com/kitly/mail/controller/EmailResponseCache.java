@@ -0,0 +1,58 @@
+package com.kitly.mail.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.service.EmailStatusListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of {@link EmailResponse}s for status polling. Entries are refreshed on every status
+ * transition made by this instance; the time-based expiry bounds staleness for transitions made by
+ * other instances.
+ */
+@Component
+public class EmailResponseCache implements EmailStatusListener {
+
+    private final Cache<Long, EmailResponse> cache;
+
+    public EmailResponseCache(@Value("${mail.cache.max-size:100000}") long maxSize,
+                              @Value("${mail.cache.expire-after-write-ms:30000}") long expireAfterWriteMs,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                .recordStats()
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "emailResponses"));
+    }
+
+    public EmailResponse get(Long id, Function<Long, EmailResponse> loader) {
+        return cache.get(id, loader);
+    }
+
+    /**
+     * @return The cached response, or {@code null} if there is none
+     */
+    public EmailResponse getIfPresent(Long id) {
+        return cache.getIfPresent(id);
+    }
+
+    @Override
+    public void onStatusChange(Email email, Email.EmailStatus previousStatus) {
+        if (email.getId() != null) {
+            cache.put(email.getId(), EmailResponse.fromEmail(email));
+        }
+    }
+
+    Cache<Long, EmailResponse> cache() {
+        return cache;
+    }
+}
@@ -0,0 +1,34 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.service.EmailStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@RestController
+@RequestMapping("/api/emails/stats")
+@RequiredArgsConstructor
+public class EmailStatsController {
+
+    private final EmailStatsService emailStatsService;
+
+    @GetMapping
+    public ResponseEntity<EmailStatsResponse> getStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "hour") String granularity) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+
+        EmailStatsService.Granularity bucketSize = EmailStatsService.Granularity.valueOf(granularity.toUpperCase());
+        return ResponseEntity.ok(EmailStatsResponse.fromStats(emailStatsService.getStats(start, end, bucketSize)));
+    }
+}
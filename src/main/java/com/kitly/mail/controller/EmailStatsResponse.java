@@ -0,0 +1,38 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.service.EmailStats;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailStatsResponse {
+
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String granularity;
+    private Map<String, Long> totals;
+    private Map<String, Map<String, Long>> byProvider;
+    private List<EmailStats.Bucket> buckets;
+    private double failureRate;
+
+    public static EmailStatsResponse fromStats(EmailStats stats) {
+        return EmailStatsResponse.builder()
+                .from(stats.getFrom())
+                .to(stats.getTo())
+                .granularity(stats.getGranularity().name())
+                .totals(stats.getTotals())
+                .byProvider(stats.getByProvider())
+                .buckets(stats.getBuckets())
+                .failureRate(stats.getFailureRate())
+                .build();
+    }
+}
@@ -0,0 +1,27 @@
+package com.kitly.mail.controller;
+
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailStatusLookupRequest {
+
+    static final int MAX_IDS = 5000;
+
+    @Size(max = MAX_IDS, message = "At most {max} ids per lookup")
+    private List<Long> ids;
+
+    /**
+     * Ids assigned by the provider, as returned in {@code externalId}.
+     */
+    @Size(max = MAX_IDS, message = "At most {max} external ids per lookup")
+    private List<String> externalIds;
+}
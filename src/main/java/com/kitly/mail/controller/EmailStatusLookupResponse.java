@@ -0,0 +1,21 @@
+package com.kitly.mail.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Status of each email found; ids that match no email are left out.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailStatusLookupResponse {
+
+    private Map<Long, String> byId;
+    private Map<String, String> byExternalId;
+}
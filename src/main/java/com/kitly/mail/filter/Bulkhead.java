@@ -0,0 +1,90 @@
+package com.kitly.mail.filter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of requests of one traffic class in flight at once. Callers beyond the cap wait in
+ * a bounded queue for up to a fixed time and are rejected after that, or immediately if the queue is full.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMs) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Take a slot, waiting in the queue if the bulkhead is full.
+     *
+     * @return false if the request was rejected; {@link #exit()} must only be called after true
+     */
+    public boolean tryEnter() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            rejected.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void exit() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int inFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.bulkhead.in.flight", this, Bulkhead::inFlight)
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("mail.bulkhead.queued", this, Bulkhead::queued)
+                .tag("bulkhead", name)
+                .register(registry);
+        FunctionCounter.builder("mail.bulkhead.rejected", this, Bulkhead::rejected)
+                .tag("bulkhead", name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,139 @@
+package com.kitly.mail.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs send, read and admin traffic in separate bulkheads so that one class of request cannot take
+ * every server thread and database connection from the others. A slow provider fills the send
+ * bulkhead, but status lookups keep their own capacity. Runs after the security filters, so only
+ * authenticated requests take a slot.
+ */
+@Component
+@Order(0)
+@Slf4j
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    enum TrafficClass {
+        SEND, READ, ADMIN
+    }
+
+    private final Map<TrafficClass, Bulkhead> bulkheads = new EnumMap<>(TrafficClass.class);
+
+    public BulkheadFilter(@Value("${mail.bulkhead.send.max-concurrent:200}") int sendMaxConcurrent,
+                          @Value("${mail.bulkhead.send.max-queued:100}") int sendMaxQueued,
+                          @Value("${mail.bulkhead.read.max-concurrent:50}") int readMaxConcurrent,
+                          @Value("${mail.bulkhead.read.max-queued:100}") int readMaxQueued,
+                          @Value("${mail.bulkhead.admin.max-concurrent:4}") int adminMaxConcurrent,
+                          @Value("${mail.bulkhead.admin.max-queued:8}") int adminMaxQueued,
+                          @Value("${mail.bulkhead.max-wait-ms:1000}") long maxWaitMs,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        bulkheads.put(TrafficClass.SEND, new Bulkhead("send", sendMaxConcurrent, sendMaxQueued, maxWaitMs));
+        bulkheads.put(TrafficClass.READ, new Bulkhead("read", readMaxConcurrent, readMaxQueued, maxWaitMs));
+        bulkheads.put(TrafficClass.ADMIN, new Bulkhead("admin", adminMaxConcurrent, adminMaxQueued, maxWaitMs));
+        meterRegistry.ifAvailable(registry -> bulkheads.values().forEach(bulkhead -> bulkhead.bindTo(registry)));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        TrafficClass trafficClass = classify(request);
+        if (trafficClass == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Bulkhead bulkhead = bulkheads.get(trafficClass);
+        try {
+            if (!bulkhead.tryEnter()) {
+                log.warn("Bulkhead {} full, rejecting {} {}", bulkhead.getName(), request.getMethod(), request.getRequestURI());
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.exit();
+            }
+        };
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // Async sends keep their slot until the response is written
+                request.getAsyncContext().addListener(new ReleasingListener(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    static TrafficClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/actuator") || path.startsWith("/h2-console") || path.startsWith("/api/emails/stats")) {
+            return TrafficClass.ADMIN;
+        }
+        if (!path.startsWith("/api/")) {
+            return null;
+        }
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method) || path.equals("/api/emails/status:lookup")) {
+            // The bulk status lookup is a POST only to carry its id list
+            return TrafficClass.READ;
+        }
+        return TrafficClass.SEND;
+    }
+
+    Bulkhead bulkhead(TrafficClass trafficClass) {
+        return bulkheads.get(trafficClass);
+    }
+
+    private record ReleasingListener(Runnable release) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
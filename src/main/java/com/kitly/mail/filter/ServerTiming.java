@@ -0,0 +1,53 @@
+package com.kitly.mail.filter;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent per phase while serving one request, reported in the {@code Server-Timing} response
+ * header. Phases are recorded from the request thread and from dispatch workers, so recording is
+ * thread-safe; the time of repeated phases adds up.
+ */
+public class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+    static final String ATTRIBUTE = ServerTiming.class.getName();
+
+    private final long startNanos;
+    private final Map<String, Long> phases = new ConcurrentHashMap<>();
+
+    public ServerTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    public void record(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Record the time from the start of the request until now as a phase.
+     */
+    public void recordSinceStart(String phase) {
+        record(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The header value, e.g. {@code db;dur=3.2, provider;dur=180.4, total;dur=190.1}, with the
+     * phases sorted by name and the total last
+     */
+    public String toHeaderValue() {
+        StringJoiner value = new StringJoiner(", ");
+        phases.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(phase -> value.add(format(phase.getKey(), phase.getValue())));
+        value.add(format("total", System.nanoTime() - startNanos));
+        return value.toString();
+    }
+
+    private static String format(String phase, long nanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.1f", phase, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
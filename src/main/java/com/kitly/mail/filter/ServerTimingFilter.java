@@ -0,0 +1,116 @@
+package com.kitly.mail.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Reports where the time of a request went in a {@code Server-Timing} header, e.g.
+ * {@code bind;dur=1.3, db;dur=4.1, provider;dur=182.0, queue;dur=0.2, total;dur=188.4}.
+ * <p>
+ * The phases are recorded by the {@link ServerTimingObservationHandler}; the header is added just
+ * before the response is committed. Asynchronous sends commit on the async dispatch, after the
+ * provider call, so their header covers the whole send.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private final boolean enabled;
+
+    public ServerTimingFilter(@Value("${mail.server-timing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        ServerTiming timing = (ServerTiming) request.getAttribute(ServerTiming.ATTRIBUTE);
+        if (timing == null) {
+            timing = new ServerTiming(System.nanoTime());
+            request.setAttribute(ServerTiming.ATTRIBUTE, timing);
+        }
+        TimingResponse timingResponse = WebUtils.getNativeResponse(response, TimingResponse.class);
+        if (timingResponse == null) {
+            timingResponse = new TimingResponse(response, timing);
+        }
+        filterChain.doFilter(request, timingResponse);
+        if (!request.isAsyncStarted()) {
+            timingResponse.addTimingHeader();
+        }
+    }
+
+    /**
+     * Adds the header when the body is first written or the response is flushed or sent as an error.
+     */
+    private static final class TimingResponse extends HttpServletResponseWrapper {
+
+        private final ServerTiming timing;
+        private boolean added;
+
+        private TimingResponse(HttpServletResponse response, ServerTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        private void addTimingHeader() {
+            if (!added && !isCommitted()) {
+                added = true;
+                setHeader(ServerTiming.HEADER, timing.toHeaderValue());
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addTimingHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addTimingHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addTimingHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addTimingHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addTimingHeader();
+            super.sendError(sc);
+        }
+    }
+}
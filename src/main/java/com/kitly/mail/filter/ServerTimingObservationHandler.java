@@ -0,0 +1,75 @@
+package com.kitly.mail.filter;
+
+import com.kitly.mail.service.MailObservations;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationView;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+
+/**
+ * Adds the duration of the mail observations to the {@link ServerTiming} of the request they run for.
+ * <p>
+ * The request's timing is looked up when an observation starts: from its parent observation, which
+ * also reaches observations started on dispatch workers, or else from the current request on the
+ * request thread. Observations outside of a request are ignored.
+ */
+@Component
+public class ServerTimingObservationHandler implements ObservationHandler<Observation.Context> {
+
+    private static final Map<String, String> PHASES = Map.of(
+            MailObservations.DB, "db",
+            MailObservations.DISPATCH_QUEUE, "queue",
+            MailObservations.PROVIDER_SEND, "provider");
+
+    @Override
+    public void onStart(Observation.Context context) {
+        ServerTiming timing = lookup(context);
+        if (timing == null) {
+            return;
+        }
+        context.put(ServerTiming.class, timing);
+        if (MailObservations.SEND.equals(context.getName())) {
+            // Filters, JSON parsing and Bean Validation run before the controller starts the send
+            timing.recordSinceStart("bind");
+        }
+        if (PHASES.containsKey(context.getName())) {
+            context.put(StartTime.class, new StartTime(System.nanoTime()));
+        }
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        ServerTiming timing = context.get(ServerTiming.class);
+        StartTime start = context.get(StartTime.class);
+        if (timing != null && start != null) {
+            timing.record(PHASES.get(context.getName()), System.nanoTime() - start.nanos());
+        }
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return true;
+    }
+
+    private static ServerTiming lookup(Observation.Context context) {
+        ObservationView parent = context.getParentObservation();
+        if (parent != null) {
+            ServerTiming timing = parent.getContextView().get(ServerTiming.class);
+            if (timing != null) {
+                return timing;
+            }
+        }
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            return (ServerTiming) request.getAttribute(ServerTiming.ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+        return null;
+    }
+
+    private record StartTime(long nanos) {
+    }
+}
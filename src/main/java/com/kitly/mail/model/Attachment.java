@@ -0,0 +1,62 @@
+package com.kitly.mail.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * File attached to an email. The content lives in the attachment spool directory under
+ * {@link #storageKey}; only metadata is kept in the database.
+ */
+@Entity
+@Table(name = "attachments")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Attachment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Email the attachment belongs to, {@code null} until it is used in a send request.
+     */
+    @Column
+    private Long emailId;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    @Column(nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private String sha256;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Resolved location of the spooled content, set when the attachment is loaded for delivery.
+     */
+    @Transient
+    private Path contentPath;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
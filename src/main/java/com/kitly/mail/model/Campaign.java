@@ -0,0 +1,119 @@
+package com.kitly.mail.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One message sent to an uploaded recipient list. The list lives in the campaign directory under
+ * {@link #recipientsKey} and is expanded into {@link Email} rows a chunk at a time, paced evenly
+ * over {@link #windowSeconds}.
+ */
+@Entity
+@Table(name = "campaigns")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Campaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private String fromEmail;
+
+    @Column(nullable = false)
+    private String fromName;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String htmlContent;
+
+    @Column(columnDefinition = "TEXT")
+    private String textContent;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Email.Priority priority;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    /**
+     * Time over which the recipients are spread; {@code 0} sends as fast as the pacer allows.
+     */
+    @Column(nullable = false)
+    private long windowSeconds;
+
+    @Column
+    private String recipientsKey;
+
+    @Column(nullable = false)
+    private long totalRecipients;
+
+    /**
+     * Lines of the uploaded list that were not a valid address.
+     */
+    @Column(nullable = false)
+    private long rejectedRecipients;
+
+    @Column(nullable = false)
+    private long expandedRecipients;
+
+    /**
+     * Byte offset of the next recipient to expand in the stored list.
+     */
+    @Column(nullable = false)
+    private long recipientsOffset;
+
+    /**
+     * Start of the current pacing run, reset on resume so paused time does not count.
+     */
+    @Column
+    private LocalDateTime pacedFrom;
+
+    /**
+     * Recipients already expanded when the current pacing run started.
+     */
+    @Column(nullable = false)
+    private long pacedBase;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column
+    private LocalDateTime startedAt;
+
+    @Column
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (status == null) {
+            status = Status.DRAFT;
+        }
+        if (priority == null) {
+            priority = Email.Priority.BULK;
+        }
+    }
+
+    public enum Status {
+        DRAFT,
+        RUNNING,
+        PAUSED,
+        COMPLETED
+    }
+}
@@ -7,6 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
 
 @Entity
 @Table(name = "emails")
@@ -48,6 +50,20 @@ public class Email {
     @Column
     private String externalId;
 
+    @Column
+    private String provider;
+
+    /**
+     * Client-generated id sent with the provider request, so the outcome of a delivery can be
+     * looked up even when the provider's external id was never recorded.
+     */
+    @Column(unique = true)
+    private String messageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Priority priority;
+
     @Column
     private String errorMessage;
 
@@ -57,17 +73,71 @@ public class Email {
     @Column
     private LocalDateTime sentAt;
 
+    @Column
+    private LocalDateTime sendAt;
+
+    /**
+     * Instance currently responsible for delivering this email, see {@link #leaseExpiresAt}.
+     */
+    @Column
+    private String leaseOwner;
+
+    @Column
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(nullable = false)
+    private int attachmentCount;
+
+    /**
+     * Campaign this email was expanded from, {@code null} for single sends.
+     */
+    @Column
+    private Long campaignId;
+
+    /**
+     * Row version, bumped by every update including the bulk and batched status updates, which
+     * bump it explicitly. The ETag of the email resource.
+     */
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    /**
+     * Attachments to deliver with this email, loaded on demand when {@link #attachmentCount} is non-zero.
+     */
+    @Transient
+    private List<Attachment> attachments;
+
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
         if (status == null) {
             status = EmailStatus.PENDING;
         }
+        if (priority == null) {
+            priority = Priority.TRANSACTIONAL;
+        }
+        if (messageId == null) {
+            messageId = UUID.randomUUID().toString();
+        }
     }
 
     public enum EmailStatus {
+        SCHEDULED,
         PENDING,
         SENT,
         FAILED
     }
+
+    /**
+     * Dispatch lane of an email. Critical mail (password resets, 2FA codes) is served ahead of
+     * transactional mail, which in turn is served ahead of bulk mail.
+     */
+    public enum Priority {
+        CRITICAL,
+        TRANSACTIONAL,
+        BULK
+    }
 }
@@ -0,0 +1,45 @@
+package com.kitly.mail.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Hourly send counter per status and provider. Rows are maintained incrementally on every
+ * status transition, so statistics queries scan buckets instead of emails.
+ */
+@Entity
+@Table(name = "email_stats_rollup")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailStatsRollup {
+
+    @EmbeddedId
+    private Key id;
+
+    @Column(nullable = false)
+    private long emailCount;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        @Column(nullable = false)
+        private LocalDateTime bucketStart;
+
+        @Column(nullable = false)
+        private String status;
+
+        @Column(nullable = false)
+        private String provider;
+    }
+}
@@ -0,0 +1,271 @@
+package com.kitly.mail.provider;
+
+import com.kitly.mail.service.MailProviderException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * The API keys of one HTTP provider, each with its own {@link WebClient}, so sends are spread over
+ * several accounts and their rate limits.
+ * <p>
+ * A send goes to the key with the fewest requests in flight, and among those to the one with the
+ * most quota left, as reported by the provider's rate limit headers. A key is taken out of rotation
+ * when its quota is used up, when it is answered with {@code 429}, or when its credentials are
+ * rejected with {@code 401} or {@code 403}; it comes back once the reset time, {@code Retry-After}
+ * or the configured cool-down has passed. A send that took a key out of rotation fails with a
+ * {@link KeyRemovedException}, so the provider can retry it once on another key.
+ */
+@Slf4j
+public class ApiKeyPool {
+
+    private static final List<String> REMAINING_HEADERS = List.of(
+            "x-sib-ratelimit-remaining", "X-RateLimit-Remaining", "RateLimit-Remaining");
+    private static final List<String> RESET_HEADERS = List.of(
+            "x-sib-ratelimit-reset", "X-RateLimit-Reset", "RateLimit-Reset");
+
+    private final String provider;
+    private final List<Account> accounts = new ArrayList<>();
+    private final long rateLimitCooldownMs;
+    private final long authCooldownMs;
+    private final LongSupplier clock;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param keys    The API keys; blank entries are ignored
+     * @param clients Creates the client of a key
+     */
+    public ApiKeyPool(String provider, List<String> keys, Function<String, WebClient> clients,
+                      Duration rateLimitCooldown, Duration authCooldown) {
+        this(provider, keys, clients, rateLimitCooldown, authCooldown, System::currentTimeMillis);
+    }
+
+    ApiKeyPool(String provider, List<String> keys, Function<String, WebClient> clients,
+               Duration rateLimitCooldown, Duration authCooldown, LongSupplier clock) {
+        this.provider = provider;
+        this.rateLimitCooldownMs = rateLimitCooldown.toMillis();
+        this.authCooldownMs = authCooldown.toMillis();
+        this.clock = clock;
+        for (String key : keys) {
+            if (key != null && !key.isBlank()) {
+                accounts.add(new Account("key-" + (accounts.size() + 1), clients.apply(key.strip())));
+            }
+        }
+        if (accounts.isEmpty()) {
+            throw new IllegalArgumentException("No API key configured for " + provider);
+        }
+    }
+
+    /**
+     * Take the key that should carry the next request. The lease must be closed when the request is done.
+     *
+     * @throws MailProviderException if every key is out of rotation
+     */
+    public Lease acquire() throws MailProviderException {
+        long now = clock.getAsLong();
+        int start = Math.floorMod(next.getAndIncrement(), accounts.size());
+        Account best = null;
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get((start + i) % accounts.size());
+            if (!account.inRotation(now)) {
+                continue;
+            }
+            if (best == null || account.inFlight.get() < best.inFlight.get()
+                    || (account.inFlight.get() == best.inFlight.get() && account.remaining > best.remaining)) {
+                best = account;
+            }
+        }
+        if (best == null) {
+            throw new MailProviderException("All " + accounts.size() + " " + provider + " API keys are out of rotation");
+        }
+        best.inFlight.incrementAndGet();
+        return new Lease(best);
+    }
+
+    /**
+     * @return The client of every key, in configured order, e.g. to look something up on each account
+     */
+    public List<WebClient> clients() {
+        return accounts.stream().map(account -> account.client).toList();
+    }
+
+    /**
+     * @return The number of keys currently in rotation
+     */
+    public int available() {
+        long now = clock.getAsLong();
+        return (int) accounts.stream().filter(account -> account.inRotation(now)).count();
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.provider.keys.available", this, ApiKeyPool::available)
+                .tag("provider", provider)
+                .register(registry);
+        for (Account account : accounts) {
+            Gauge.builder("mail.provider.keys.in-flight", account.inFlight, AtomicInteger::get)
+                    .tag("provider", provider)
+                    .tag("key", account.name)
+                    .register(registry);
+            for (Removal reason : Removal.values()) {
+                account.removals.put(reason, Counter.builder("mail.provider.keys.removed")
+                        .tag("provider", provider)
+                        .tag("key", account.name)
+                        .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                        .register(registry));
+            }
+        }
+    }
+
+    /**
+     * One request on one key.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Account account;
+        private boolean closed;
+
+        private Lease(Account account) {
+            this.account = account;
+        }
+
+        public WebClient client() {
+            return account.client;
+        }
+
+        /**
+         * Record the quota reported with a successful response.
+         */
+        public void succeeded(HttpHeaders headers) {
+            updateQuota(headers);
+        }
+
+        /**
+         * Take the key out of rotation if the provider throttled it or rejected its credentials.
+         *
+         * @return true if the key was taken out of rotation, i.e. the request was refused because of
+         *         the key and may be retried on another one
+         */
+        public boolean failed(WebClientResponseException e) {
+            HttpStatus status = HttpStatus.resolve(e.getStatusCode().value());
+            if (status == HttpStatus.TOO_MANY_REQUESTS) {
+                long retryAfterMs = number(e.getHeaders(), List.of(HttpHeaders.RETRY_AFTER))
+                        .map(seconds -> seconds * 1000)
+                        .or(() -> resetDelayMs(e.getHeaders()))
+                        .orElse(rateLimitCooldownMs);
+                remove(Math.max(retryAfterMs, 1000), Removal.RATE_LIMITED);
+                return true;
+            }
+            if (status == HttpStatus.UNAUTHORIZED || status == HttpStatus.FORBIDDEN) {
+                remove(authCooldownMs, Removal.AUTH);
+                return true;
+            }
+            updateQuota(e.getHeaders());
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                account.inFlight.decrementAndGet();
+            }
+        }
+
+        private void updateQuota(HttpHeaders headers) {
+            number(headers, REMAINING_HEADERS).ifPresent(remaining -> {
+                account.remaining = remaining;
+                if (remaining <= 0) {
+                    long resetMs = resetDelayMs(headers).orElse(rateLimitCooldownMs);
+                    remove(Math.max(resetMs, 1000), Removal.QUOTA);
+                }
+            });
+        }
+
+        private void remove(long forMs, Removal reason) {
+            account.outUntil = clock.getAsLong() + forMs;
+            account.remaining = Long.MAX_VALUE;
+            Counter removals = account.removals.get(reason);
+            if (removals != null) {
+                removals.increment();
+            }
+            log.warn("{} API {} out of rotation for {} ms: {}", provider, account.name, forMs, reason);
+        }
+    }
+
+    /**
+     * The reset header is a delay in seconds for some APIs and an epoch timestamp in seconds for
+     * others; a value past the current time is taken as the latter.
+     */
+    private Optional<Long> resetDelayMs(HttpHeaders headers) {
+        long now = clock.getAsLong();
+        return number(headers, RESET_HEADERS)
+                .map(reset -> reset > now / 1000 ? reset * 1000 - now : reset * 1000);
+    }
+
+    private static Optional<Long> number(HttpHeaders headers, List<String> names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (value != null) {
+                try {
+                    return Optional.of(Long.parseLong(value.strip()));
+                } catch (NumberFormatException e) {
+                    // E.g. a Retry-After given as an HTTP date; fall back to the next header or the default
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The provider refused the request because of its key, which is now out of rotation.
+     */
+    public static final class KeyRemovedException extends MailProviderException {
+
+        public KeyRemovedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private enum Removal {
+        QUOTA, RATE_LIMITED, AUTH
+    }
+
+    private static final class Account {
+        private final String name;
+        private final WebClient client;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Map<Removal, Counter> removals = new EnumMap<>(Removal.class);
+        // Remaining quota as last reported, unknown until the provider reports it
+        private volatile long remaining = Long.MAX_VALUE;
+        private volatile long outUntil;
+
+        private Account(String name, WebClient client) {
+            this.name = name;
+            this.client = client;
+        }
+
+        private boolean inRotation(long now) {
+            return outUntil <= now;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.kitly.mail.provider;
+
+import com.kitly.mail.model.Attachment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * JSON request body whose attachment array carries base64 content streamed from the spool directory.
+ * Each attachment is read and encoded one chunk at a time, so a request never holds a whole file
+ * (or its base64 form) in memory. The exact body length is known up front from the file sizes.
+ */
+public final class AttachmentJsonBody {
+
+    // A multiple of 3 so only the final chunk of a file carries base64 padding
+    private static final int CHUNK_SIZE = 48 * 1024;
+
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+    private static final DefaultDataBufferFactory BUFFERS = DefaultDataBufferFactory.sharedInstance;
+    private static final byte[] ENTRY_CLOSE = bytes("\"}");
+    private static final byte[] BODY_CLOSE = bytes("]}");
+
+    private final List<byte[]> parts = new ArrayList<>();
+    private final List<Attachment> attachments;
+    private final long contentLength;
+
+    /**
+     * @param request      the request fields, without attachments
+     * @param arrayField   name of the attachment array in the request
+     * @param metadata     the fields of one attachment entry, without its content
+     * @param contentField name of the base64 content field in an attachment entry
+     */
+    public AttachmentJsonBody(Map<String, Object> request, String arrayField, List<Attachment> attachments,
+                              Function<Attachment, Map<String, Object>> metadata, String contentField) {
+        this.attachments = attachments;
+
+        String fields = JSON.writeValueAsString(request);
+        String open = fields.substring(0, fields.length() - 1) + (request.isEmpty() ? "" : ",")
+                + JSON.writeValueAsString(arrayField) + ":[";
+        parts.add(bytes(open));
+
+        long length = parts.get(0).length;
+        for (int i = 0; i < attachments.size(); i++) {
+            Attachment attachment = attachments.get(i);
+            String entry = JSON.writeValueAsString(metadata.apply(attachment));
+            // Reopen the entry object so the content field can follow the metadata
+            byte[] entryOpen = bytes((i > 0 ? "," : "") + entry.substring(0, entry.length() - 1) + ","
+                    + JSON.writeValueAsString(contentField) + ":\"");
+            parts.add(entryOpen);
+            length += entryOpen.length + base64Length(attachment.getSizeBytes()) + ENTRY_CLOSE.length;
+        }
+        length += BODY_CLOSE.length;
+        this.contentLength = length;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Write this body into the request with its exact content length.
+     */
+    public WebClient.RequestHeadersSpec<?> insertInto(WebClient.RequestBodySpec request) {
+        return request.contentLength(contentLength)
+                .body(BodyInserters.fromDataBuffers(toFlux()));
+    }
+
+    public Flux<DataBuffer> toFlux() {
+        List<Flux<DataBuffer>> body = new ArrayList<>();
+        body.add(literal(parts.get(0)));
+        for (int i = 0; i < attachments.size(); i++) {
+            body.add(literal(parts.get(i + 1)));
+            body.add(base64(attachments.get(i)));
+            body.add(literal(ENTRY_CLOSE));
+        }
+        body.add(literal(BODY_CLOSE));
+        return Flux.concat(body);
+    }
+
+    private static Flux<DataBuffer> literal(byte[] content) {
+        return Flux.defer(() -> Flux.just(BUFFERS.wrap(content)));
+    }
+
+    private static Flux<DataBuffer> base64(Attachment attachment) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return Flux.using(
+                () -> Files.newInputStream(attachment.getContentPath()),
+                in -> Flux.<DataBuffer>generate(sink -> {
+                    try {
+                        byte[] chunk = in.readNBytes(CHUNK_SIZE);
+                        if (chunk.length > 0) {
+                            sink.next(BUFFERS.wrap(encoder.encode(chunk)));
+                        }
+                        if (chunk.length < CHUNK_SIZE) {
+                            sink.complete();
+                        }
+                    } catch (IOException e) {
+                        sink.error(new UncheckedIOException(e));
+                    }
+                }),
+                AttachmentJsonBody::closeQuietly);
+    }
+
+    private static long base64Length(long sizeBytes) {
+        return 4 * ((sizeBytes + 2) / 3);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // Nothing left to read
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.kitly.mail.provider.brevo;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BrevoEmailListResponse {
+    private List<TransactionalEmail> transactionalEmails;
+
+    @Data
+    public static class TransactionalEmail {
+        private String messageId;
+        private List<String> tags;
+    }
+}
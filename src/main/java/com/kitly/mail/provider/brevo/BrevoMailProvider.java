@@ -1,65 +1,125 @@
 package com.kitly.mail.provider.brevo;
 
 import com.kitly.mail.model.Email;
+import com.kitly.mail.provider.ApiKeyPool;
+import com.kitly.mail.provider.AttachmentJsonBody;
+import com.kitly.mail.service.DeliveryLookup;
+import com.kitly.mail.service.MailEvents;
 import com.kitly.mail.service.MailProvider;
 import com.kitly.mail.service.MailProviderException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @ConditionalOnProperty(name = "mail.provider", havingValue = "brevo")
 @Slf4j
 public class BrevoMailProvider implements MailProvider {
 
-    private final WebClient webClient;
-    private final String apiKey;
+    static final String MESSAGE_ID_HEADER = "X-Kitly-Message-Id";
 
-    public BrevoMailProvider(@Value("${brevo.api.key}") String apiKey,
-                             @Value("${brevo.api.url:https://api.brevo.com/v3}") String apiUrl) {
-        this.apiKey = apiKey;
-        this.webClient = WebClient.builder()
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    private final ApiKeyPool keys;
+
+    /**
+     * @param apiKeys One key per account; sends are balanced over them
+     */
+    public BrevoMailProvider(@Value("${brevo.api.keys:${brevo.api.key}}") List<String> apiKeys,
+                             @Value("${brevo.api.url:https://api.brevo.com/v3}") String apiUrl,
+                             @Value("${mail.provider-keys.rate-limit-cooldown-seconds:60}") long rateLimitCooldownSeconds,
+                             @Value("${mail.provider-keys.auth-cooldown-seconds:300}") long authCooldownSeconds,
+                             ObservationRegistry observationRegistry,
+                             ObjectProvider<MeterRegistry> meterRegistry) {
+        // Observed requests are traced and carry the trace context to the provider
+        this.keys = new ApiKeyPool(getProviderName(), apiKeys, apiKey -> WebClient.builder()
+                .observationRegistry(observationRegistry)
                 .baseUrl(apiUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("api-key", apiKey)
-                .build();
+                .build(),
+                Duration.ofSeconds(rateLimitCooldownSeconds), Duration.ofSeconds(authCooldownSeconds));
+        meterRegistry.ifAvailable(keys::bindTo);
     }
 
     @Override
     public String sendEmail(Email email) throws MailProviderException {
+        try {
+            return send(email);
+        } catch (ApiKeyPool.KeyRemovedException e) {
+            // The key was refused before the request was accepted, so another key may take it
+            if (keys.available() == 0) {
+                throw e;
+            }
+            log.warn("Retrying email {} via BREVO on another API key", email.getId());
+            return send(email);
+        }
+    }
+
+    private String send(Email email) throws MailProviderException {
+        ApiKeyPool.Lease lease = keys.acquire();
+        MailEvents.ProviderRequest event = MailEvents.ProviderRequest.start(getProviderName(), email);
+        boolean succeeded = false;
         try {
             log.info("Sending email via BREVO to: {}", email.getToEmail());
 
             Map<String, Object> request = buildBrevoRequest(email);
 
-            BrevoResponse response = webClient.post()
-                    .uri("/smtp/email")
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(BrevoResponse.class)
+            WebClient.RequestBodySpec post = lease.client().post().uri("/smtp/email");
+            WebClient.RequestHeadersSpec<?> spec;
+            if (hasAttachments(email)) {
+                AttachmentJsonBody body = attachmentBody(request, email);
+                event.payloadSize(body.getContentLength());
+                spec = body.insertInto(post);
+            } else {
+                // Serialized up front so the flight recorder event knows the payload size
+                byte[] json = JSON.writeValueAsBytes(request);
+                event.payloadSize(json.length);
+                spec = post.bodyValue(json);
+            }
+            ResponseEntity<BrevoResponse> entity = spec.retrieve()
+                    .toEntity(BrevoResponse.class)
                     .block();
+            event.statusCode(entity.getStatusCode().value());
+            lease.succeeded(entity.getHeaders());
+            BrevoResponse response = entity.getBody();
 
             if (response != null && response.getMessageId() != null) {
                 log.info("Email sent successfully via BREVO. Message ID: {}", response.getMessageId());
+                succeeded = true;
                 return response.getMessageId();
             } else {
                 throw new MailProviderException("No message ID received from BREVO");
             }
         } catch (WebClientResponseException e) {
+            event.statusCode(e.getStatusCode().value());
+            boolean keyRemoved = lease.failed(e);
             log.error("Error sending email via BREVO: {}", e.getResponseBodyAsString(), e);
-            throw new MailProviderException("BREVO API error: " + e.getMessage(), e);
+            String message = "BREVO API error: " + e.getMessage();
+            throw keyRemoved ? new ApiKeyPool.KeyRemovedException(message, e) : new MailProviderException(message, e);
         } catch (Exception e) {
             log.error("Unexpected error sending email via BREVO", e);
             throw new MailProviderException("Unexpected error: " + e.getMessage(), e);
+        } finally {
+            lease.close();
+            event.finish(succeeded);
         }
     }
 
@@ -86,9 +146,77 @@ public class BrevoMailProvider implements MailProvider {
             request.put("textContent", email.getTextContent());
         }
 
+        if (email.getMessageId() != null) {
+            // BREVO drops repeated sends with the same idempotency key, and the tag lets us find the email again
+            request.put("headers", Map.of(MESSAGE_ID_HEADER, email.getMessageId(),
+                    "idempotencyKey", email.getMessageId()));
+            request.put("tags", List.of(messageIdTag(email)));
+        }
+
         return request;
     }
 
+    private static boolean hasAttachments(Email email) {
+        return email.getAttachments() != null && !email.getAttachments().isEmpty();
+    }
+
+    private static AttachmentJsonBody attachmentBody(Map<String, Object> request, Email email) {
+        return new AttachmentJsonBody(request, "attachment", email.getAttachments(),
+                attachment -> Map.of("name", attachment.getFilename()), "content");
+    }
+
+    /**
+     * The email may have been sent with any of the keys, so each account is asked until one has it.
+     */
+    @Override
+    public DeliveryLookup lookupDelivery(Email email) {
+        if (email.getMessageId() == null || email.getCreatedAt() == null) {
+            return DeliveryLookup.unknown();
+        }
+        LocalDate from = email.getCreatedAt().toLocalDate();
+        String tag = messageIdTag(email);
+        boolean unknown = false;
+        for (WebClient client : keys.clients()) {
+            try {
+                BrevoEmailListResponse response = client.get()
+                        .uri(uri -> uri.path("/smtp/emails")
+                                .queryParam("email", email.getToEmail())
+                                .queryParam("startDate", from.toString())
+                                .queryParam("endDate", LocalDate.now().toString())
+                                .queryParam("limit", 500)
+                                .queryParam("sort", "desc")
+                                .build())
+                        .retrieve()
+                        .bodyToMono(BrevoEmailListResponse.class)
+                        .block();
+
+                if (response == null || response.getTransactionalEmails() == null) {
+                    continue;
+                }
+                Optional<BrevoEmailListResponse.TransactionalEmail> sent = response.getTransactionalEmails().stream()
+                        .filter(candidate -> candidate.getTags() != null && candidate.getTags().contains(tag))
+                        .findFirst();
+                if (sent.isPresent()) {
+                    return DeliveryLookup.delivered(sent.get().getMessageId());
+                }
+            } catch (Exception e) {
+                log.warn("Could not look up BREVO delivery of message {}", email.getMessageId(), e);
+                unknown = true;
+            }
+        }
+        // Not found on the accounts that answered, but possibly sent through one that did not
+        return unknown ? DeliveryLookup.unknown() : DeliveryLookup.notFound();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+
+    private static String messageIdTag(Email email) {
+        return "kitly-" + email.getMessageId();
+    }
+
     @Override
     public String getProviderName() {
         return "BREVO";
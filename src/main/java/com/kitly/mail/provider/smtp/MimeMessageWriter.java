@@ -0,0 +1,223 @@
+package com.kitly.mail.provider.smtp;
+
+import com.kitly.mail.model.Attachment;
+import com.kitly.mail.model.Email;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Writes an email as a MIME message in SMTP wire form. Every body part is base64 encoded, so no line
+ * can start with a dot and the content needs no dot-stuffing. Attachments are streamed from disk.
+ */
+class MimeMessageWriter {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    // 57 input bytes make one 76 character base64 line
+    private static final int ENCODE_CHUNK = 57 * 1024;
+    private static final int MAX_WORD_BYTES = 45;
+
+    private final Email email;
+    private final String messageIdHeader;
+    private long size;
+
+    MimeMessageWriter(Email email, String messageIdHeader) {
+        this.email = email;
+        this.messageIdHeader = messageIdHeader;
+    }
+
+    void writeTo(OutputStream target) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(target);
+        try {
+            writeMessage(out);
+        } finally {
+            size = out.count;
+        }
+    }
+
+    /**
+     * @return The number of bytes written by the last {@link #writeTo(OutputStream)}
+     */
+    long size() {
+        return size;
+    }
+
+    private void writeMessage(OutputStream out) throws IOException {
+        header(out, "Date", ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME));
+        header(out, "From", address(email.getFromName(), email.getFromEmail()));
+        header(out, "To", address(email.getToName(), email.getToEmail()));
+        header(out, "Subject", encodeText(email.getSubject() != null ? email.getSubject() : ""));
+        header(out, "Message-ID", messageIdHeader);
+        if (email.getMessageId() != null) {
+            header(out, "X-Kitly-Message-Id", email.getMessageId());
+        }
+        header(out, "MIME-Version", "1.0");
+
+        if (email.getAttachments() == null || email.getAttachments().isEmpty()) {
+            writeContent(out);
+            return;
+        }
+        String boundary = boundary();
+        header(out, "Content-Type", "multipart/mixed; boundary=\"" + boundary + "\"");
+        out.write(CRLF);
+        line(out, "--" + boundary);
+        writeContent(out);
+        for (Attachment attachment : email.getAttachments()) {
+            line(out, "--" + boundary);
+            header(out, "Content-Type", isPrintableAscii(attachment.getContentType())
+                    ? attachment.getContentType() : "application/octet-stream");
+            header(out, "Content-Disposition", "attachment; " + filenameParameter(attachment.getFilename()));
+            header(out, "Content-Transfer-Encoding", "base64");
+            out.write(CRLF);
+            try (InputStream in = Files.newInputStream(attachment.getContentPath())) {
+                writeBase64(out, in);
+            }
+        }
+        line(out, "--" + boundary + "--");
+    }
+
+    private void writeContent(OutputStream out) throws IOException {
+        boolean hasHtml = email.getHtmlContent() != null && !email.getHtmlContent().isEmpty();
+        boolean hasText = email.getTextContent() != null && !email.getTextContent().isEmpty();
+        if (hasHtml && hasText) {
+            String boundary = boundary();
+            header(out, "Content-Type", "multipart/alternative; boundary=\"" + boundary + "\"");
+            out.write(CRLF);
+            line(out, "--" + boundary);
+            writeTextPart(out, "text/plain", email.getTextContent());
+            line(out, "--" + boundary);
+            writeTextPart(out, "text/html", email.getHtmlContent());
+            line(out, "--" + boundary + "--");
+        } else if (hasHtml) {
+            writeTextPart(out, "text/html", email.getHtmlContent());
+        } else {
+            writeTextPart(out, "text/plain", hasText ? email.getTextContent() : "");
+        }
+    }
+
+    private static void writeTextPart(OutputStream out, String mimeType, String content) throws IOException {
+        header(out, "Content-Type", mimeType + "; charset=UTF-8");
+        header(out, "Content-Transfer-Encoding", "base64");
+        out.write(CRLF);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0) {
+            out.write(Base64.getMimeEncoder().encode(bytes));
+            out.write(CRLF);
+        }
+    }
+
+    private static void writeBase64(OutputStream out, InputStream in) throws IOException {
+        Base64.Encoder encoder = Base64.getMimeEncoder();
+        byte[] chunk;
+        while ((chunk = in.readNBytes(ENCODE_CHUNK)).length > 0) {
+            out.write(encoder.encode(chunk));
+            out.write(CRLF);
+        }
+    }
+
+    static String address(String name, String address) {
+        if (address.indexOf('\r') >= 0 || address.indexOf('\n') >= 0 || address.indexOf('<') >= 0
+                || address.indexOf('>') >= 0) {
+            throw new IllegalArgumentException("Invalid email address: " + address);
+        }
+        if (name == null || name.isEmpty()) {
+            return "<" + address + ">";
+        }
+        if (isPrintableAscii(name)) {
+            return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\" <" + address + ">";
+        }
+        return encodeText(name) + " <" + address + ">";
+    }
+
+    /**
+     * Encode header text as RFC 2047 encoded-words when it is not plain printable ASCII, splitting
+     * long values into folded words without breaking a character apart.
+     */
+    static String encodeText(String text) {
+        if (isPrintableAscii(text)) {
+            return text;
+        }
+        StringBuilder encoded = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        int wordBytes = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            String character = new String(Character.toChars(codePoint));
+            int bytes = character.getBytes(StandardCharsets.UTF_8).length;
+            if (wordBytes + bytes > MAX_WORD_BYTES) {
+                appendWord(encoded, word);
+                word.setLength(0);
+                wordBytes = 0;
+            }
+            word.append(character);
+            wordBytes += bytes;
+            i += Character.charCount(codePoint);
+        }
+        appendWord(encoded, word);
+        return encoded.toString();
+    }
+
+    private static void appendWord(StringBuilder encoded, CharSequence word) {
+        if (encoded.length() > 0) {
+            encoded.append("\r\n ");
+        }
+        encoded.append("=?UTF-8?B?")
+                .append(Base64.getEncoder().encodeToString(word.toString().getBytes(StandardCharsets.UTF_8)))
+                .append("?=");
+    }
+
+    private static String filenameParameter(String filename) {
+        if (isPrintableAscii(filename)) {
+            return "filename=\"" + filename.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+        // RFC 2231 extended parameter for non-ASCII names
+        return "filename*=UTF-8''" + URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static boolean isPrintableAscii(String text) {
+        return text.chars().allMatch(c -> c >= 0x20 && c < 0x7f);
+    }
+
+    private static String boundary() {
+        return "kitly-" + UUID.randomUUID();
+    }
+
+    private static void header(OutputStream out, String name, String value) throws IOException {
+        line(out, name + ": " + value);
+    }
+
+    private static void line(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.kitly.mail.provider.smtp;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One authenticated ESMTP session. Sends any number of messages, each as MAIL / RCPT / DATA, and
+ * pipelines the envelope commands when the server advertises PIPELINING.
+ */
+@Slf4j
+class SmtpConnection implements Closeable {
+
+    private final Socket socket;
+    private Socket tlsSocket;
+    private InputStream in;
+    private OutputStream out;
+    private final Set<String> extensions = new HashSet<>();
+    @Getter
+    private long lastUsedMs = System.currentTimeMillis();
+    @Getter
+    private int messagesSent;
+    @Getter
+    private boolean used;
+    private boolean dirty;
+
+    private SmtpConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        bindStreams();
+    }
+
+    static SmtpConnection open(SmtpSettings settings) throws IOException {
+        Socket socket = settings.security() == SmtpSettings.Security.TLS
+                ? SSLSocketFactory.getDefault().createSocket()
+                : new Socket();
+        SmtpConnection connection = null;
+        try {
+            socket.connect(new InetSocketAddress(settings.host(), settings.port()), settings.timeoutMs());
+            socket.setSoTimeout(settings.timeoutMs());
+            connection = new SmtpConnection(socket);
+            connection.handshake(settings);
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            if (connection != null) {
+                connection.close();
+            } else {
+                socket.close();
+            }
+            throw e;
+        }
+    }
+
+    private void handshake(SmtpSettings settings) throws IOException {
+        expect(readReply(), 220);
+        ehlo(settings.heloName());
+        if (settings.security() == SmtpSettings.Security.STARTTLS) {
+            if (!supports("STARTTLS")) {
+                throw new IOException("Server does not support STARTTLS");
+            }
+            expect(command("STARTTLS"), 220);
+            SSLSocket tls = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                    .createSocket(socket, settings.host(), settings.port(), true);
+            tls.startHandshake();
+            upgrade(tls);
+            ehlo(settings.heloName());
+        }
+        if (settings.username() != null && !settings.username().isEmpty()) {
+            String credentials = "\0" + settings.username() + "\0" + settings.password();
+            expect(command("AUTH PLAIN " + Base64.getEncoder().encodeToString(
+                    credentials.getBytes(StandardCharsets.UTF_8))), 235);
+        }
+    }
+
+    private void upgrade(SSLSocket tls) throws IOException {
+        this.tlsSocket = tls;
+        bindStreams();
+    }
+
+    private void bindStreams() throws IOException {
+        Socket active = tlsSocket != null ? tlsSocket : socket;
+        this.in = new BufferedInputStream(active.getInputStream());
+        this.out = new BufferedOutputStream(active.getOutputStream(), 64 * 1024);
+    }
+
+    private void ehlo(String heloName) throws IOException {
+        Reply reply = command("EHLO " + heloName);
+        expect(reply, 250);
+        extensions.clear();
+        for (String line : reply.lines().subList(1, reply.lines().size())) {
+            extensions.add(line.split(" ", 2)[0].toUpperCase(Locale.ROOT));
+        }
+    }
+
+    boolean supports(String extension) {
+        return extensions.contains(extension);
+    }
+
+    /**
+     * Send one message. The envelope is pipelined when possible, together with a RSET if an earlier
+     * transaction on this session did not complete cleanly.
+     *
+     * @return the server's final reply to the message data
+     * @throws RejectedException if the server refused the message; the session stays usable
+     * @throws OutcomeUnknownException if the connection failed after the message data was sent
+     * @throws IOException       on transport errors; the session must be discarded
+     */
+    Reply send(String from, String to, MessageWriter message) throws IOException, RejectedException {
+        lastUsedMs = System.currentTimeMillis();
+        used = true;
+        List<String> envelope = new ArrayList<>();
+        if (dirty) {
+            envelope.add("RSET");
+        }
+        envelope.add("MAIL FROM:<" + from + ">");
+        envelope.add("RCPT TO:<" + to + ">");
+        envelope.add("DATA");
+
+        List<Reply> replies = new ArrayList<>();
+        if (supports("PIPELINING")) {
+            for (String command : envelope) {
+                write(command);
+            }
+            out.flush();
+            for (int i = 0; i < envelope.size(); i++) {
+                replies.add(readReply());
+            }
+        } else {
+            for (String command : envelope) {
+                Reply reply = command(command);
+                replies.add(reply);
+                if (!reply.isPositive()) {
+                    break;
+                }
+            }
+        }
+        dirty = true;
+
+        Reply failed = replies.stream()
+                .limit(Math.min(replies.size(), envelope.size() - 1))
+                .filter(reply -> !reply.isPositive())
+                .findFirst()
+                .orElse(null);
+        Reply data = replies.size() == envelope.size() ? replies.get(replies.size() - 1) : null;
+        if (data != null && data.code() == 354 && failed != null) {
+            // The server wants data despite a rejected envelope; end the transaction with an empty body
+            out.write(".\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            readReply();
+        }
+        if (failed != null) {
+            throw new RejectedException(failed);
+        }
+        if (data == null || data.code() != 354) {
+            throw new RejectedException(data != null ? data : replies.get(replies.size() - 1));
+        }
+
+        Reply result;
+        try {
+            message.writeTo(out);
+            out.write(".\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            result = readReply();
+        } catch (IOException e) {
+            throw new OutcomeUnknownException(e);
+        }
+        if (!result.isPositive()) {
+            throw new RejectedException(result);
+        }
+        dirty = false;
+        messagesSent++;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        try {
+            write("QUIT");
+            out.flush();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+        try {
+            (tlsSocket != null ? tlsSocket : socket).close();
+        } catch (IOException e) {
+            log.debug("Error closing SMTP connection", e);
+        }
+    }
+
+    private Reply command(String command) throws IOException {
+        write(command);
+        out.flush();
+        return readReply();
+    }
+
+    private void write(String command) throws IOException {
+        out.write((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Reply readReply() throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line = readLine();
+            if (line.length() < 3) {
+                throw new IOException("Malformed SMTP reply: " + line);
+            }
+            lines.add(line.length() > 4 ? line.substring(4) : "");
+            if (line.length() == 3 || line.charAt(3) == ' ') {
+                return new Reply(Integer.parseInt(line.substring(0, 3)), lines);
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+        throw new EOFException("SMTP connection closed by server");
+    }
+
+    private static void expect(Reply reply, int code) throws IOException {
+        if (reply.code() != code) {
+            throw new IOException("Unexpected SMTP reply: " + reply);
+        }
+    }
+
+    record Reply(int code, List<String> lines) {
+
+        boolean isPositive() {
+            return code >= 200 && code < 400;
+        }
+
+        String text() {
+            return String.join(" ", lines);
+        }
+
+        @Override
+        public String toString() {
+            return code + " " + text();
+        }
+    }
+
+    /**
+     * Writes the message content in SMTP wire form, without the terminating dot line.
+     */
+    @FunctionalInterface
+    interface MessageWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The connection failed while the server was receiving or accepting the message, so it may or may
+     * not have been queued. Sending it again could deliver a duplicate.
+     */
+    static class OutcomeUnknownException extends IOException {
+
+        OutcomeUnknownException(IOException cause) {
+            super("SMTP connection failed after sending message data: " + cause.getMessage(), cause);
+        }
+    }
+
+    static class RejectedException extends Exception {
+
+        @Getter
+        private final Reply reply;
+
+        RejectedException(Reply reply) {
+            super("SMTP server rejected the message: " + reply);
+            this.reply = reply;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kitly.mail.provider.smtp;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of authenticated SMTP sessions. Idle sessions are reused most-recently-used first, so
+ * a quiet period lets the rest expire, and each session is retired after a fixed number of messages.
+ */
+@Slf4j
+class SmtpConnectionPool implements Closeable {
+
+    private final SmtpSettings settings;
+    private final int maxMessagesPerConnection;
+    private final long maxIdleMs;
+    private final Semaphore permits;
+    private final BlockingDeque<SmtpConnection> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    SmtpConnectionPool(SmtpSettings settings, int maxConnections, int maxMessagesPerConnection, long maxIdleMs) {
+        this.settings = settings;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.maxIdleMs = maxIdleMs;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Take an idle session, or open a new one if none is usable.
+     *
+     * @throws IOException if no session becomes available within the timeout or the connection fails
+     */
+    SmtpConnection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("SMTP connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(settings.timeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for an SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for an SMTP connection", e);
+        }
+        try {
+            long now = System.currentTimeMillis();
+            SmtpConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (now - connection.getLastUsedMs() <= maxIdleMs) {
+                    return connection;
+                }
+                connection.close();
+            }
+            log.debug("Opening SMTP connection to {}:{}", settings.host(), settings.port());
+            return SmtpConnection.open(settings);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a healthy session for reuse.
+     */
+    void release(SmtpConnection connection) {
+        if (closed || connection.getMessagesSent() >= maxMessagesPerConnection) {
+            connection.close();
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    /**
+     * Close a session after a transport error.
+     */
+    void discard(SmtpConnection connection) {
+        connection.close();
+        permits.release();
+    }
+
+    int idleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SmtpConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+}
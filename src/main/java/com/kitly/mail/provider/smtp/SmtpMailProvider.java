@@ -0,0 +1,117 @@
+package com.kitly.mail.provider.smtp;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.service.MailEvents;
+import com.kitly.mail.service.MailProvider;
+import com.kitly.mail.service.MailProviderException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Sends email straight to an SMTP relay over a pool of persistent, authenticated sessions. Each
+ * session carries many messages, and the envelope is pipelined when the relay supports it, so the
+ * TCP, TLS and AUTH handshakes are paid once per session rather than once per email.
+ */
+@Service
+@ConditionalOnProperty(name = "mail.provider", havingValue = "smtp")
+@Slf4j
+public class SmtpMailProvider implements MailProvider {
+
+    private final SmtpConnectionPool pool;
+    private final String heloName;
+
+    public SmtpMailProvider(@Value("${smtp.host}") String host,
+                            @Value("${smtp.port:587}") int port,
+                            @Value("${smtp.security:starttls}") String security,
+                            @Value("${smtp.username:}") String username,
+                            @Value("${smtp.password:}") String password,
+                            @Value("${smtp.helo-name:localhost}") String heloName,
+                            @Value("${smtp.timeout-ms:30000}") int timeoutMs,
+                            @Value("${smtp.pool.max-connections:4}") int maxConnections,
+                            @Value("${smtp.pool.max-messages-per-connection:100}") int maxMessagesPerConnection,
+                            @Value("${smtp.pool.max-idle-ms:30000}") long maxIdleMs) {
+        this.heloName = heloName;
+        SmtpSettings settings = new SmtpSettings(host, port,
+                SmtpSettings.Security.valueOf(security.toUpperCase(Locale.ROOT)),
+                username, password, heloName, timeoutMs);
+        this.pool = new SmtpConnectionPool(settings, maxConnections, maxMessagesPerConnection, maxIdleMs);
+    }
+
+    /**
+     * @return the Message-ID header of the sent email
+     */
+    @Override
+    public String sendEmail(Email email) throws MailProviderException {
+        String messageIdHeader = "<" + (email.getMessageId() != null ? email.getMessageId() : UUID.randomUUID())
+                + "@" + heloName + ">";
+        MimeMessageWriter message;
+        try {
+            MimeMessageWriter.address(email.getFromName(), email.getFromEmail());
+            MimeMessageWriter.address(email.getToName(), email.getToEmail());
+            message = new MimeMessageWriter(email, messageIdHeader);
+        } catch (IllegalArgumentException e) {
+            throw new MailProviderException(e.getMessage(), e);
+        }
+
+        log.info("Sending email via SMTP to: {}", email.getToEmail());
+        MailEvents.ProviderRequest event = MailEvents.ProviderRequest.start(getProviderName(), email);
+        boolean succeeded = false;
+        try {
+            while (true) {
+                SmtpConnection connection;
+                try {
+                    connection = pool.borrow();
+                } catch (IOException e) {
+                    log.error("Could not connect to SMTP relay", e);
+                    throw new MailProviderException("SMTP connection error: " + e.getMessage(), e);
+                }
+                boolean reused = connection.isUsed();
+                try {
+                    SmtpConnection.Reply reply = connection.send(email.getFromEmail(), email.getToEmail(), message::writeTo);
+                    pool.release(connection);
+                    event.statusCode(reply.code());
+                    succeeded = true;
+                    log.info("Email sent successfully via SMTP. Message ID: {}, Relay reply: {}", messageIdHeader, reply);
+                    return messageIdHeader;
+                } catch (SmtpConnection.RejectedException e) {
+                    pool.release(connection);
+                    event.statusCode(e.getReply().code());
+                    log.error("SMTP relay rejected email to {}: {}", email.getToEmail(), e.getReply());
+                    throw new MailProviderException("SMTP error: " + e.getReply(), e);
+                } catch (SmtpConnection.OutcomeUnknownException e) {
+                    pool.discard(connection);
+                    log.error("SMTP connection failed while sending email to {}", email.getToEmail(), e);
+                    throw new MailProviderException(e.getMessage(), e);
+                } catch (IOException e) {
+                    pool.discard(connection);
+                    if (!reused) {
+                        log.error("SMTP connection failed while sending email to {}", email.getToEmail(), e);
+                        throw new MailProviderException("SMTP connection error: " + e.getMessage(), e);
+                    }
+                    // The relay closed an idle session before any data was sent; retry on another one
+                    log.debug("Discarding stale SMTP connection: {}", e.getMessage());
+                }
+            }
+        } finally {
+            event.payloadSize(message.size());
+            event.finish(succeeded);
+        }
+    }
+
+    @Override
+    public String getProviderName() {
+        return "SMTP";
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.close();
+    }
+}
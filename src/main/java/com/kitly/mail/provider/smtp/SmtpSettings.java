@@ -0,0 +1,17 @@
+package com.kitly.mail.provider.smtp;
+
+/**
+ * Connection settings for the SMTP relay.
+ */
+record SmtpSettings(String host, int port, Security security, String username, String password,
+                    String heloName, int timeoutMs) {
+
+    enum Security {
+        /** Plain connection, for relays on a trusted network */
+        NONE,
+        /** Upgrade a plain connection with STARTTLS, usually on port 587 */
+        STARTTLS,
+        /** TLS from the first byte, usually on port 465 */
+        TLS
+    }
+}
@@ -1,17 +1,26 @@
 package com.kitly.mail.provider.smtp2go;
 
 import com.kitly.mail.model.Email;
+import com.kitly.mail.provider.ApiKeyPool;
+import com.kitly.mail.provider.AttachmentJsonBody;
+import com.kitly.mail.service.MailEvents;
 import com.kitly.mail.service.MailProvider;
 import com.kitly.mail.service.MailProviderException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,17 +30,28 @@ import java.util.Map;
 @Slf4j
 public class Smtp2GoMailProvider implements MailProvider {
 
-    private final WebClient webClient;
-    private final String apiKey;
-
-    public Smtp2GoMailProvider(@Value("${smtp2go.api.key}") String apiKey,
-                               @Value("${smtp2go.api.url:https://api.smtp2go.com/v3}") String apiUrl) {
-        this.apiKey = apiKey;
-        this.webClient = WebClient.builder()
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    private final ApiKeyPool keys;
+
+    /**
+     * @param apiKeys One key per account; sends are balanced over them
+     */
+    public Smtp2GoMailProvider(@Value("${smtp2go.api.keys:${smtp2go.api.key}}") List<String> apiKeys,
+                               @Value("${smtp2go.api.url:https://api.smtp2go.com/v3}") String apiUrl,
+                               @Value("${mail.provider-keys.rate-limit-cooldown-seconds:60}") long rateLimitCooldownSeconds,
+                               @Value("${mail.provider-keys.auth-cooldown-seconds:300}") long authCooldownSeconds,
+                               ObservationRegistry observationRegistry,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        // Observed requests are traced and carry the trace context to the provider
+        this.keys = new ApiKeyPool(getProviderName(), apiKeys, apiKey -> WebClient.builder()
+                .observationRegistry(observationRegistry)
                 .baseUrl(apiUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("X-Smtp2go-Api-Key", apiKey)
-                .build();
+                .build(),
+                Duration.ofSeconds(rateLimitCooldownSeconds), Duration.ofSeconds(authCooldownSeconds));
+        meterRegistry.ifAvailable(keys::bindTo);
     }
 
     @Override
@@ -42,17 +62,45 @@ public class Smtp2GoMailProvider implements MailProvider {
             throw new MailProviderException("Email must have either HTML or text content");
         }
 
+        try {
+            return send(email);
+        } catch (ApiKeyPool.KeyRemovedException e) {
+            // The key was refused before the request was accepted, so another key may take it
+            if (keys.available() == 0) {
+                throw e;
+            }
+            log.warn("Retrying email {} via SMTP2GO on another API key", email.getId());
+            return send(email);
+        }
+    }
+
+    private String send(Email email) throws MailProviderException {
+        ApiKeyPool.Lease lease = keys.acquire();
+        MailEvents.ProviderRequest event = MailEvents.ProviderRequest.start(getProviderName(), email);
+        boolean succeeded = false;
         try {
             log.info("Sending email via SMTP2GO to: {}", email.getToEmail());
 
             Map<String, Object> request = buildSmtp2GoRequest(email);
 
-            Smtp2GoResponse response = webClient.post()
-                    .uri("/email/send")
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(Smtp2GoResponse.class)
+            WebClient.RequestBodySpec post = lease.client().post().uri("/email/send");
+            WebClient.RequestHeadersSpec<?> spec;
+            if (hasAttachments(email)) {
+                AttachmentJsonBody body = attachmentBody(request, email);
+                event.payloadSize(body.getContentLength());
+                spec = body.insertInto(post);
+            } else {
+                // Serialized up front so the flight recorder event knows the payload size
+                byte[] json = JSON.writeValueAsBytes(request);
+                event.payloadSize(json.length);
+                spec = post.bodyValue(json);
+            }
+            ResponseEntity<Smtp2GoResponse> entity = spec.retrieve()
+                    .toEntity(Smtp2GoResponse.class)
                     .block();
+            event.statusCode(entity.getStatusCode().value());
+            lease.succeeded(entity.getHeaders());
+            Smtp2GoResponse response = entity.getBody();
 
             if (response != null && response.getData() != null 
                     && Boolean.TRUE.equals(response.getData().getSucceeded())) {
@@ -64,16 +112,23 @@ public class Smtp2GoMailProvider implements MailProvider {
                     messageId = "UNKNOWN";
                 }
                 log.info("Email sent successfully via SMTP2GO. Message ID: {}", messageId);
+                succeeded = true;
                 return messageId;
             } else {
                 throw new MailProviderException("No success status received from SMTP2GO or send failed");
             }
         } catch (WebClientResponseException e) {
+            event.statusCode(e.getStatusCode().value());
+            boolean keyRemoved = lease.failed(e);
             log.error("Error sending email via SMTP2GO: {}", e.getResponseBodyAsString(), e);
-            throw new MailProviderException("SMTP2GO API error: " + e.getMessage(), e);
+            String message = "SMTP2GO API error: " + e.getMessage();
+            throw keyRemoved ? new ApiKeyPool.KeyRemovedException(message, e) : new MailProviderException(message, e);
         } catch (Exception e) {
             log.error("Unexpected error sending email via SMTP2GO", e);
             throw new MailProviderException("Unexpected error: " + e.getMessage(), e);
+        } finally {
+            lease.close();
+            event.finish(succeeded);
         }
     }
 
@@ -101,9 +156,25 @@ public class Smtp2GoMailProvider implements MailProvider {
             request.put("text_body", email.getTextContent());
         }
 
+        // Client-generated message id, for correlating the email later
+        if (email.getMessageId() != null) {
+            request.put("custom_headers", List.of(Map.of("header", "X-Kitly-Message-Id", "value", email.getMessageId())));
+        }
+
         return request;
     }
 
+    private static boolean hasAttachments(Email email) {
+        return email.getAttachments() != null && !email.getAttachments().isEmpty();
+    }
+
+    // Attachment content is streamed from the spool directory instead of being put in the request map
+    private static AttachmentJsonBody attachmentBody(Map<String, Object> request, Email email) {
+        return new AttachmentJsonBody(request, "attachments", email.getAttachments(),
+                attachment -> Map.of("filename", attachment.getFilename(), "mimetype", attachment.getContentType()),
+                "fileblob");
+    }
+
     private String formatEmailAddress(String name, String email) {
         if (name != null && !name.isEmpty()) {
             return name + " <" + email + ">";
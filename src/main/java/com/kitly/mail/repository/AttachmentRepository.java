@@ -0,0 +1,33 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Attachment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
+
+    List<Attachment> findByEmailIdOrderById(Long emailId);
+
+    List<Attachment> findByIdInAndEmailIdIsNull(Collection<Long> ids);
+
+    List<Attachment> findByEmailIdIsNullAndCreatedAtBefore(LocalDateTime createdAt);
+
+    /**
+     * Link uploaded attachments to an email. Attachments that already belong to an email are left alone.
+     *
+     * @return The number of attachments linked
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Attachment a SET a.emailId = :emailId WHERE a.id IN :ids AND a.emailId IS NULL")
+    int linkToEmail(@Param("ids") Collection<Long> ids, @Param("emailId") Long emailId);
+}
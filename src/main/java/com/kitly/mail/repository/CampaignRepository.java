@@ -0,0 +1,58 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Campaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CampaignRepository extends JpaRepository<Campaign, Long> {
+
+    List<Campaign> findByStatus(Campaign.Status status);
+
+    /**
+     * Start pacing from {@code now}, counting only recipients expanded from here on.
+     *
+     * @return 1 if the campaign was in status {@code from}, 0 otherwise
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Campaign c SET c.status = com.kitly.mail.model.Campaign.Status.RUNNING, "
+            + "c.pacedFrom = :now, c.pacedBase = c.expandedRecipients, c.startedAt = COALESCE(c.startedAt, :now) "
+            + "WHERE c.id = :id AND c.status = :from AND c.recipientsKey IS NOT NULL")
+    int startPacing(@Param("id") Long id, @Param("from") Campaign.Status from, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Campaign c SET c.status = :to WHERE c.id = :id AND c.status = :from")
+    int transitionStatus(@Param("id") Long id,
+                         @Param("from") Campaign.Status from,
+                         @Param("to") Campaign.Status to);
+
+    /**
+     * Claim the next chunk of recipients for expansion. Only succeeds for the caller that saw the
+     * current progress, so concurrent pacers never expand the same chunk twice. Must run in the
+     * transaction that inserts the chunk.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Campaign c SET c.expandedRecipients = :expanded, c.recipientsOffset = :offset "
+            + "WHERE c.id = :id AND c.expandedRecipients = :previous "
+            + "AND c.status = com.kitly.mail.model.Campaign.Status.RUNNING")
+    int advance(@Param("id") Long id,
+                @Param("previous") long previous,
+                @Param("expanded") long expanded,
+                @Param("offset") long offset);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Campaign c SET c.status = com.kitly.mail.model.Campaign.Status.COMPLETED, c.completedAt = :now "
+            + "WHERE c.id = :id AND c.status = com.kitly.mail.model.Campaign.Status.RUNNING "
+            + "AND c.expandedRecipients >= c.totalRecipients")
+    int complete(@Param("id") Long id, @Param("now") LocalDateTime now);
+}
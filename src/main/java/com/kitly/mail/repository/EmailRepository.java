@@ -1,15 +1,125 @@
 package com.kitly.mail.repository;
 
 import com.kitly.mail.model.Email;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface EmailRepository extends JpaRepository<Email, Long> {
+public interface EmailRepository extends JpaRepository<Email, Long>, JpaSpecificationExecutor<Email>,
+        EmailRepositoryCustom {
     
     List<Email> findByStatus(Email.EmailStatus status);
     
     List<Email> findByToEmail(String toEmail);
+
+    @Query("SELECT e.id AS id, e.externalId AS externalId, e.status AS status FROM Email e WHERE e.id IN :ids")
+    List<EmailStatusView> findStatusesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT e.id AS id, e.externalId AS externalId, e.status AS status FROM Email e "
+            + "WHERE e.externalId IN :externalIds ORDER BY e.id")
+    List<EmailStatusView> findStatusesByExternalIdIn(@Param("externalIds") Collection<String> externalIds);
+
+    @Query("SELECT e.version FROM Email e WHERE e.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("SELECT e.status AS status, COUNT(e) AS count FROM Email e WHERE e.campaignId = :campaignId GROUP BY e.status")
+    List<StatusCount> countByStatusForCampaign(@Param("campaignId") Long campaignId);
+
+    /**
+     * Keyset page of scheduled emails due before {@code until}, ordered by {@code (sendAt, id)}
+     * and starting after the given position.
+     */
+    @Query("SELECT e.id AS id, e.sendAt AS sendAt FROM Email e "
+            + "WHERE e.status = com.kitly.mail.model.Email.EmailStatus.SCHEDULED AND e.sendAt < :until "
+            + "AND (e.sendAt > :afterSendAt OR (e.sendAt = :afterSendAt AND e.id > :afterId)) "
+            + "ORDER BY e.sendAt, e.id")
+    List<ScheduledEmail> findScheduledBefore(@Param("until") LocalDateTime until,
+                                             @Param("afterSendAt") LocalDateTime afterSendAt,
+                                             @Param("afterId") long afterId,
+                                             Limit limit);
+
+    /**
+     * Lock a batch of unleased PENDING emails. Rows locked by concurrent claimers are skipped
+     * instead of waited for, so every caller gets a disjoint batch. Must run inside a transaction.
+     */
+    @Query(value = "SELECT * FROM emails WHERE status = 'PENDING' AND lease_expires_at IS NULL "
+            + "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Email> lockClaimableBatch(@Param("limit") int limit);
+
+    /**
+     * Lock a batch of PENDING emails whose lease has expired, i.e. whose owner may have died
+     * mid-delivery. Must run inside a transaction.
+     */
+    @Query(value = "SELECT * FROM emails WHERE status = 'PENDING' AND lease_expires_at < :now "
+            + "ORDER BY lease_expires_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Email> lockExpiredLeaseBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Email e SET e.leaseOwner = :owner, e.leaseExpiresAt = :leaseExpiresAt, e.version = e.version + 1 "
+            + "WHERE e.id IN :ids")
+    int assignLease(@Param("ids") List<Long> ids,
+                    @Param("owner") String owner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * Extend the lease held by {@code owner}, provided nobody has touched the row since the caller
+     * read it at {@code version}.
+     *
+     * @return 1 if the lease was extended, 0 if it expired and was claimed again or the email is no longer PENDING
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.leaseExpiresAt = :leaseExpiresAt, e.version = e.version + 1 "
+            + "WHERE e.id = :id AND e.leaseOwner = :owner AND e.version = :version "
+            + "AND e.status = com.kitly.mail.model.Email.EmailStatus.PENDING")
+    int renewLease(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("version") long version,
+                   @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * Drop the lease held by {@code owner}, making the email claimable again.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.leaseOwner = NULL, e.leaseExpiresAt = NULL, e.version = e.version + 1 "
+            + "WHERE e.id = :id AND e.leaseOwner = :owner AND e.status = com.kitly.mail.model.Email.EmailStatus.PENDING")
+    int releaseLease(@Param("id") Long id, @Param("owner") String owner);
+
+    /**
+     * Release a due scheduled email to PENDING under a lease held by the caller.
+     *
+     * @return 1 if this caller released the email, 0 if it was no longer SCHEDULED
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.status = com.kitly.mail.model.Email.EmailStatus.PENDING, "
+            + "e.leaseOwner = :owner, e.leaseExpiresAt = :leaseExpiresAt, e.version = e.version + 1 "
+            + "WHERE e.id = :id AND e.status = com.kitly.mail.model.Email.EmailStatus.SCHEDULED")
+    int claimScheduled(@Param("id") Long id,
+                       @Param("owner") String owner,
+                       @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * Atomically move an email from one status to another.
+     *
+     * @return 1 if this caller performed the transition, 0 if the email was not in the expected status
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Email e SET e.status = :to, e.version = e.version + 1 WHERE e.id = :id AND e.status = :from")
+    int transitionStatus(@Param("id") Long id,
+                         @Param("from") Email.EmailStatus from,
+                         @Param("to") Email.EmailStatus to);
 }
@@ -0,0 +1,19 @@
+package com.kitly.mail.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Queries of {@link EmailRepository} that are built at runtime.
+ */
+public interface EmailRepositoryCustom {
+
+    /**
+     * Select only the given attributes of an email, so the query reads only their columns.
+     *
+     * @param attributes Attribute names of {@link com.kitly.mail.model.Email}
+     * @return The values by attribute name, in the given order, or empty if there is no such email
+     */
+    Optional<Map<String, Object>> findAttributesById(Long id, Collection<String> attributes);
+}
@@ -0,0 +1,45 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Email;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+class EmailRepositoryCustomImpl implements EmailRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    EmailRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findAttributesById(Long id, Collection<String> attributes) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Email> root = query.from(Email.class);
+        Selection<?>[] selections = attributes.stream()
+                .map(attribute -> root.get(attribute).alias(attribute))
+                .toArray(Selection<?>[]::new);
+        query.select(cb.tuple(selections)).where(cb.equal(root.get("id"), id));
+
+        List<Tuple> rows = entityManager.createQuery(query).getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String attribute : attributes) {
+            values.put(attribute, rows.get(0).get(attribute));
+        }
+        return Optional.of(values);
+    }
+}
@@ -0,0 +1,52 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.service.EmailFilter;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds a single dynamic query for {@link EmailFilter}. Predicates are shaped to match the
+ * composite indexes: recipient and sender compare {@code LOWER(column)} and the created-at range
+ * is half-open ({@code from <= created_at < to}).
+ */
+public final class EmailSpecifications {
+
+    private EmailSpecifications() {
+    }
+
+    public static Specification<Email> matching(EmailFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.getStatus()));
+            }
+            if (filter.getRecipient() != null) {
+                predicates.add(cb.equal(cb.lower(root.get("toEmail")), normalize(filter.getRecipient())));
+            }
+            if (filter.getSender() != null) {
+                predicates.add(cb.equal(cb.lower(root.get("fromEmail")), normalize(filter.getSender())));
+            }
+            if (filter.getProvider() != null) {
+                predicates.add(cb.equal(root.get("provider"), filter.getProvider().toUpperCase(Locale.ROOT)));
+            }
+            if (filter.getCreatedFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), filter.getCreatedFrom()));
+            }
+            if (filter.getCreatedTo() != null) {
+                predicates.add(cb.lessThan(root.get("createdAt"), filter.getCreatedTo()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static String normalize(String address) {
+        return address.trim().toLowerCase(Locale.ROOT);
+    }
+}
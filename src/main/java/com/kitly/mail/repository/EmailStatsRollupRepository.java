@@ -0,0 +1,33 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.EmailStatsRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailStatsRollupRepository extends JpaRepository<EmailStatsRollup, EmailStatsRollup.Key> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailStatsRollup r SET r.emailCount = r.emailCount + :delta WHERE r.id = :id")
+    int increment(@Param("id") EmailStatsRollup.Key id, @Param("delta") long delta);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO email_stats_rollup (bucket_start, status, provider, email_count) "
+            + "VALUES (:bucketStart, :status, :provider, :count)", nativeQuery = true)
+    void insert(@Param("bucketStart") LocalDateTime bucketStart,
+                @Param("status") String status,
+                @Param("provider") String provider,
+                @Param("count") long count);
+
+    List<EmailStatsRollup> findByIdBucketStartGreaterThanEqualAndIdBucketStartLessThan(LocalDateTime from,
+                                                                                         LocalDateTime to);
+}
@@ -0,0 +1,15 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Email;
+
+/**
+ * Slim projection of an email for status lookups.
+ */
+public interface EmailStatusView {
+
+    Long getId();
+
+    String getExternalId();
+
+    Email.EmailStatus getStatus();
+}
@@ -0,0 +1,13 @@
+package com.kitly.mail.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Slim projection of a scheduled email: just enough to put it on a timer.
+ */
+public interface ScheduledEmail {
+
+    Long getId();
+
+    LocalDateTime getSendAt();
+}
@@ -0,0 +1,13 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.Email;
+
+/**
+ * Number of emails in one status.
+ */
+public interface StatusCount {
+
+    Email.EmailStatus getStatus();
+
+    long getCount();
+}
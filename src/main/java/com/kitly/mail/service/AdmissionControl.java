@@ -0,0 +1,133 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sheds sends that the dispatcher cannot finish in time, instead of letting every request slow down.
+ * <p>
+ * The queueing delay of a new send is estimated from the work ahead of it (admitted sends, queued
+ * and running dispatch tasks), the number of workers and the recent provider latency, plus the time
+ * its recipient domain's backlog needs to drain at the domain's send rate. A send is
+ * rejected when that delay exceeds the budget of its priority, or when its priority's share of the
+ * in-flight limit is used up. Bulk mail gets a quarter of the budget and transactional mail half,
+ * so bulk is shed first and critical mail last. The retry hint is the time the backlog needs to
+ * drain back into the budget.
+ */
+@Component
+@Slf4j
+public class AdmissionControl {
+
+    public record Decision(boolean admitted, long retryAfterSeconds) {
+        static final Decision ADMITTED = new Decision(true, 0);
+    }
+
+    private final PriorityDispatcher dispatcher;
+    private final DomainDispatcher domainDispatcher;
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final long queueDelayBudgetMs;
+    private final long initialLatencyMs;
+    private final long maxRetryAfterSeconds;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Email.Priority, AtomicLong> rejected = new EnumMap<>(Email.Priority.class);
+
+    public AdmissionControl(PriorityDispatcher dispatcher,
+                            DomainDispatcher domainDispatcher,
+                            @Value("${mail.admission.enabled:true}") boolean enabled,
+                            @Value("${mail.admission.max-in-flight:200}") int maxInFlight,
+                            @Value("${mail.admission.queue-delay-budget-ms:2000}") long queueDelayBudgetMs,
+                            @Value("${mail.admission.initial-latency-ms:200}") long initialLatencyMs,
+                            @Value("${mail.admission.max-retry-after-seconds:30}") long maxRetryAfterSeconds,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.dispatcher = dispatcher;
+        this.domainDispatcher = domainDispatcher;
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.queueDelayBudgetMs = queueDelayBudgetMs;
+        this.initialLatencyMs = initialLatencyMs;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+        for (Email.Priority priority : Email.Priority.values()) {
+            rejected.put(priority, new AtomicLong());
+        }
+        meterRegistry.ifAvailable(this::bindTo);
+    }
+
+    /**
+     * Decide whether a send of the email may start now.
+     *
+     * @return the decision; {@link #release()} must be called once the send finishes if it was admitted
+     */
+    public Decision tryAdmit(Email email) {
+        if (!enabled) {
+            inFlight.incrementAndGet();
+            return Decision.ADMITTED;
+        }
+        Email.Priority priority = email.getPriority();
+        double share = share(priority);
+        int limit = (int) Math.ceil(maxInFlight * share);
+        int workers = dispatcher.workerCount();
+        double latencyMs = dispatcher.averageTaskMillis() > 0 ? dispatcher.averageTaskMillis() : initialLatencyMs;
+
+        int current = inFlight.get();
+        int ahead = Math.max(current, dispatcher.queued() + dispatcher.busy());
+        long domainWaitMs = domainDispatcher.estimatedWaitMillis(email);
+        double delayMs = (double) ahead / workers * latencyMs + domainWaitMs;
+        double budgetMs = queueDelayBudgetMs * share;
+
+        if (delayMs <= budgetMs) {
+            if (inFlight.incrementAndGet() <= limit) {
+                return Decision.ADMITTED;
+            }
+            inFlight.decrementAndGet();
+        }
+
+        double excessMs = Math.max(delayMs - budgetMs, (double) (current - limit + 1) / workers * latencyMs);
+        long retryAfter = Math.min(Math.max(1, (long) Math.ceil(excessMs / 1000)), maxRetryAfterSeconds);
+        rejected.get(priority).incrementAndGet();
+        log.debug("Shedding {} send: {} ahead, domain wait {} ms, estimated delay {} ms, retry after {} s",
+                priority, ahead, domainWaitMs, Math.round(delayMs), retryAfter);
+        return new Decision(false, retryAfter);
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected(Email.Priority priority) {
+        return rejected.get(priority).get();
+    }
+
+    private static double share(Email.Priority priority) {
+        return switch (priority) {
+            case CRITICAL -> 1.0;
+            case TRANSACTIONAL -> 0.5;
+            case BULK -> 0.25;
+        };
+    }
+
+    private void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.admission.in.flight", this, AdmissionControl::inFlight)
+                .register(registry);
+        for (Email.Priority priority : Email.Priority.values()) {
+            FunctionCounter.builder("mail.admission.rejected", this, admission -> admission.rejected(priority))
+                    .tag("priority", priority.name())
+                    .register(registry);
+        }
+    }
+}
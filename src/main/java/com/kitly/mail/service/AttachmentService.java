@@ -0,0 +1,109 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Attachment;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.AttachmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Uploads, links and cleans up email attachments. Spooled content is removed once the email
+ * reaches a final status, and uploads never used in a send request expire after a retention period.
+ */
+@Service
+@Slf4j
+public class AttachmentService implements EmailStatusListener {
+
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentStorage storage;
+    private final long orphanRetentionMinutes;
+
+    public AttachmentService(AttachmentRepository attachmentRepository,
+                             AttachmentStorage storage,
+                             @Value("${mail.attachments.orphan-retention-minutes:1440}") long orphanRetentionMinutes) {
+        this.attachmentRepository = attachmentRepository;
+        this.storage = storage;
+        this.orphanRetentionMinutes = orphanRetentionMinutes;
+    }
+
+    public Attachment upload(String filename, String contentType, InputStream content) throws IOException {
+        AttachmentStorage.StoredContent stored = storage.store(content);
+        Attachment attachment = Attachment.builder()
+                .filename(filename)
+                .contentType(contentType != null ? contentType : "application/octet-stream")
+                .sizeBytes(stored.sizeBytes())
+                .storageKey(stored.key())
+                .sha256(stored.sha256())
+                .build();
+        attachment = attachmentRepository.save(attachment);
+        log.info("Attachment uploaded. ID: {}, Size: {} bytes", attachment.getId(), attachment.getSizeBytes());
+        return attachment;
+    }
+
+    /**
+     * Check that every id refers to an uploaded attachment not yet used by another email.
+     *
+     * @throws IllegalArgumentException if any attachment is missing or already linked
+     */
+    public void verifyUnlinked(Collection<Long> attachmentIds) {
+        List<Attachment> found = attachmentRepository.findByIdInAndEmailIdIsNull(attachmentIds);
+        if (found.size() != attachmentIds.size()) {
+            throw new IllegalArgumentException("Unknown or already used attachment ids: " + attachmentIds);
+        }
+    }
+
+    /**
+     * Link the attachments to the email.
+     *
+     * @throws IllegalArgumentException if another email claimed one of the attachments first
+     */
+    public void link(Long emailId, Collection<Long> attachmentIds) {
+        if (attachmentRepository.linkToEmail(attachmentIds, emailId) != attachmentIds.size()) {
+            throw new IllegalArgumentException("Unknown or already used attachment ids: " + attachmentIds);
+        }
+    }
+
+    /**
+     * Load the email's attachments with their spooled content resolved, ready for a provider request.
+     */
+    public List<Attachment> loadForDelivery(Long emailId) {
+        List<Attachment> attachments = attachmentRepository.findByEmailIdOrderById(emailId);
+        attachments.forEach(attachment -> attachment.setContentPath(storage.resolve(attachment.getStorageKey())));
+        return attachments;
+    }
+
+    @Override
+    public void onStatusChange(Email email, Email.EmailStatus previousStatus) {
+        if (email.getAttachmentCount() == 0) {
+            return;
+        }
+        if (email.getStatus() == Email.EmailStatus.SENT || email.getStatus() == Email.EmailStatus.FAILED) {
+            delete(attachmentRepository.findByEmailIdOrderById(email.getId()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mail.attachments.cleanup-interval-ms:3600000}")
+    public void deleteOrphans() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(orphanRetentionMinutes);
+        List<Attachment> orphans = attachmentRepository.findByEmailIdIsNullAndCreatedAtBefore(cutoff);
+        if (!orphans.isEmpty()) {
+            log.info("Deleting {} unused attachments uploaded before {}", orphans.size(), cutoff);
+            delete(orphans);
+        }
+    }
+
+    private void delete(List<Attachment> attachments) {
+        for (Attachment attachment : attachments) {
+            storage.delete(attachment.getStorageKey());
+        }
+        attachmentRepository.deleteAll(attachments);
+    }
+}
@@ -0,0 +1,101 @@
+package com.kitly.mail.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Spools attachment content to a local (or mounted) directory so uploads and provider requests
+ * stream through a fixed-size buffer instead of holding whole files on the heap.
+ */
+@Component
+@Slf4j
+public class AttachmentStorage {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    @Getter
+    private final long maxSizeBytes;
+
+    public AttachmentStorage(@Value("${mail.attachments.dir:${java.io.tmpdir}/kitly-mail/attachments}") String directory,
+                             @Value("${mail.attachments.max-size-bytes:20971520}") long maxSizeBytes) {
+        this.directory = Path.of(directory).toAbsolutePath();
+        this.maxSizeBytes = maxSizeBytes;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create attachment directory " + this.directory, e);
+        }
+    }
+
+    /**
+     * Copy the stream into the spool directory.
+     *
+     * @throws AttachmentTooLargeException if the content exceeds the configured maximum size
+     */
+    public StoredContent store(InputStream content) throws IOException {
+        String key = UUID.randomUUID().toString();
+        Path partial = directory.resolve(key + ".part");
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                size += read;
+                if (size > maxSizeBytes) {
+                    throw new AttachmentTooLargeException(maxSizeBytes);
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        // Only complete files ever appear under their final name
+        Files.move(partial, resolve(key), StandardCopyOption.ATOMIC_MOVE);
+        return new StoredContent(key, size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    public Path resolve(String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("Invalid attachment key: " + key);
+        }
+        return path;
+    }
+
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.warn("Could not delete spooled attachment {}", key, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record StoredContent(String key, long sizeBytes, String sha256) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.kitly.mail.service;
+
+public class AttachmentTooLargeException extends RuntimeException {
+
+    public AttachmentTooLargeException(long maxSizeBytes) {
+        super("Attachment exceeds the maximum size of " + maxSizeBytes + " bytes");
+    }
+}
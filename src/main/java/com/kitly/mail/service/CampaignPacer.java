@@ -0,0 +1,33 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Campaign;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically expands the recipients of running campaigns that have come due.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CampaignPacer {
+
+    private final CampaignService campaignService;
+
+    @Scheduled(fixedDelayString = "${mail.campaigns.pace-interval-ms:1000}")
+    public void pace() {
+        for (Campaign campaign : campaignService.getRunningCampaigns()) {
+            try {
+                int inserted = campaignService.expandDue(campaign);
+                if (inserted > 0) {
+                    log.debug("Campaign {}: queued {} emails", campaign.getId(), inserted);
+                }
+            } catch (Exception e) {
+                // Progress is only advanced with the inserts, so the next pass picks up from here
+                log.error("Failed to expand campaign {}", campaign.getId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.kitly.mail.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Stores uploaded campaign recipient lists and reads them back in chunks.
+ * <p>
+ * Uploads are parsed as they stream in, one {@code address[,name]} per line, and written as
+ * normalised {@code address<TAB>name} lines. Chunks are read from a byte offset, so neither the
+ * upload nor the expansion ever holds more than one line or one chunk in memory.
+ */
+@Component
+@Slf4j
+public class CampaignRecipientStore {
+
+    private static final Pattern ADDRESS = Pattern.compile("[^@\\s<>,;\"]+@[^@\\s<>,;\"]+\\.[^@\\s<>,;\"]+");
+    private static final int MAX_LENGTH = 255;
+
+    private final Path directory;
+    private final long maxRecipients;
+
+    public CampaignRecipientStore(@Value("${mail.campaigns.dir:${java.io.tmpdir}/kitly-mail/campaigns}") String directory,
+                                  @Value("${mail.campaigns.max-recipients:5000000}") long maxRecipients) {
+        this.directory = Path.of(directory).toAbsolutePath();
+        this.maxRecipients = maxRecipients;
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create campaign directory " + this.directory, e);
+        }
+    }
+
+    /**
+     * Parse and store a recipient list. Blank lines, {@code #} comments and an {@code email} header
+     * line are skipped; lines without a valid address are counted as rejected.
+     *
+     * @throws IllegalArgumentException if the list has more than the configured maximum of recipients
+     */
+    public StoredList store(InputStream content) throws IOException {
+        String key = UUID.randomUUID() + ".recipients";
+        Path partial = directory.resolve(key + ".part");
+        long accepted = 0;
+        long rejected = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+             BufferedWriter out = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            String line;
+            boolean first = true;
+            while ((line = in.readLine()) != null) {
+                line = line.strip();
+                if (first && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                String address = unquote(comma < 0 ? line : line.substring(0, comma));
+                String name = comma < 0 ? "" : unquote(line.substring(comma + 1));
+                if (first && address.equalsIgnoreCase("email")) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (address.length() > MAX_LENGTH || !ADDRESS.matcher(address).matches()) {
+                    rejected++;
+                    continue;
+                }
+                if (++accepted > maxRecipients) {
+                    throw new IllegalArgumentException("Recipient list exceeds " + maxRecipients + " recipients");
+                }
+                name = name.replace('\t', ' ');
+                out.write(address);
+                out.write('\t');
+                out.write(name.length() > MAX_LENGTH ? name.substring(0, MAX_LENGTH) : name);
+                out.write('\n');
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, resolve(key), StandardCopyOption.ATOMIC_MOVE);
+        return new StoredList(key, accepted, rejected);
+    }
+
+    /**
+     * Read up to {@code max} recipients starting at the given byte offset.
+     */
+    public Chunk read(String key, long offset, int max) throws IOException {
+        List<Recipient> recipients = new ArrayList<>(Math.min(max, 1024));
+        long position = offset;
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while (recipients.size() < max && (b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                int tab = text.indexOf('\t');
+                recipients.add(new Recipient(text.substring(0, tab), text.substring(tab + 1)));
+                line.reset();
+            }
+        }
+        return new Chunk(recipients, position);
+    }
+
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.warn("Could not delete recipient list {}", key, e);
+        }
+    }
+
+    private Path resolve(String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("Invalid recipient list key: " + key);
+        }
+        return path;
+    }
+
+    private static String unquote(String value) {
+        String stripped = value.strip();
+        if (stripped.length() >= 2 && stripped.startsWith("\"") && stripped.endsWith("\"")) {
+            return stripped.substring(1, stripped.length() - 1).strip();
+        }
+        return stripped;
+    }
+
+    public record StoredList(String key, long accepted, long rejected) {
+    }
+
+    public record Recipient(String email, String name) {
+    }
+
+    public record Chunk(List<Recipient> recipients, long nextOffset) {
+    }
+}
@@ -0,0 +1,250 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Campaign;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.CampaignRepository;
+import com.kitly.mail.repository.EmailRepository;
+import com.kitly.mail.repository.StatusCount;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Creates campaigns and expands their recipient lists into emails.
+ * <p>
+ * Expansion is paced: a running campaign is due {@code total / window} recipients per second since
+ * its pacing run started, and {@link #expandDue(Campaign)} inserts whatever is due in chunks as
+ * unleased PENDING emails for the claim poller to deliver. Each chunk is claimed with a conditional
+ * update of the campaign's progress in the same transaction as its inserts, so instances sharing the
+ * database never expand a chunk twice.
+ */
+@Service
+@Slf4j
+public class CampaignService {
+
+    private final CampaignRepository campaignRepository;
+    private final EmailRepository emailRepository;
+    private final CampaignRecipientStore recipientStore;
+    private final MailProvider mailProvider;
+    private final List<EmailStatusListener> statusListeners;
+    private final TransactionTemplate transactionTemplate;
+    private final HtmlPreprocessor htmlPreprocessor;
+    private final int chunkSize;
+    private final int maxPerRound;
+
+    public CampaignService(CampaignRepository campaignRepository,
+                           EmailRepository emailRepository,
+                           CampaignRecipientStore recipientStore,
+                           MailProvider mailProvider,
+                           List<EmailStatusListener> statusListeners,
+                           PlatformTransactionManager transactionManager,
+                           HtmlPreprocessor htmlPreprocessor,
+                           @Value("${mail.campaigns.chunk-size:500}") int chunkSize,
+                           @Value("${mail.campaigns.max-per-round:10000}") int maxPerRound) {
+        this.campaignRepository = campaignRepository;
+        this.emailRepository = emailRepository;
+        this.recipientStore = recipientStore;
+        this.mailProvider = mailProvider;
+        this.statusListeners = statusListeners;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.htmlPreprocessor = htmlPreprocessor;
+        this.chunkSize = chunkSize;
+        this.maxPerRound = maxPerRound;
+    }
+
+    /**
+     * Store a new campaign as a draft. Its HTML body is preprocessed once here rather than for every
+     * recipient.
+     */
+    public Campaign create(Campaign campaign) {
+        if (campaign.getHtmlContent() != null) {
+            Email template = Email.builder()
+                    .htmlContent(campaign.getHtmlContent())
+                    .textContent(campaign.getTextContent())
+                    .build();
+            htmlPreprocessor.prepare(template);
+            campaign.setHtmlContent(template.getHtmlContent());
+            campaign.setTextContent(template.getTextContent());
+        }
+        campaign.setStatus(Campaign.Status.DRAFT);
+        Campaign created = campaignRepository.save(campaign);
+        log.info("Campaign created. ID: {}", created.getId());
+        return created;
+    }
+
+    /**
+     * Store the recipient list of a draft campaign, replacing any list uploaded before.
+     *
+     * @throws IllegalArgumentException if the campaign does not exist or the list is too long
+     * @throws IllegalStateException    if the campaign has already started
+     */
+    public Campaign uploadRecipients(Long id, InputStream content) throws IOException {
+        Campaign campaign = getCampaign(id);
+        if (campaign.getStatus() != Campaign.Status.DRAFT) {
+            throw new IllegalStateException("Campaign " + id + " has already started");
+        }
+        CampaignRecipientStore.StoredList list = recipientStore.store(content);
+        String previousKey = campaign.getRecipientsKey();
+        campaign.setRecipientsKey(list.key());
+        campaign.setTotalRecipients(list.accepted());
+        campaign.setRejectedRecipients(list.rejected());
+        Campaign saved = campaignRepository.save(campaign);
+        if (previousKey != null) {
+            recipientStore.delete(previousKey);
+        }
+        log.info("Campaign {} recipients uploaded: {} accepted, {} rejected", id, list.accepted(), list.rejected());
+        return saved;
+    }
+
+    /**
+     * @throws IllegalStateException if the campaign is not a draft with a recipient list
+     */
+    public Campaign start(Long id) {
+        return startPacing(id, Campaign.Status.DRAFT);
+    }
+
+    public Campaign pause(Long id) {
+        if (campaignRepository.transitionStatus(id, Campaign.Status.RUNNING, Campaign.Status.PAUSED) == 0) {
+            throw new IllegalStateException("Campaign " + id + " is not running");
+        }
+        return getCampaign(id);
+    }
+
+    /**
+     * Continue a paused campaign at the same rate. Paused time does not count, so the campaign
+     * finishes later by the length of the pause.
+     */
+    public Campaign resume(Long id) {
+        return startPacing(id, Campaign.Status.PAUSED);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the campaign does not exist
+     */
+    public Campaign getCampaign(Long id) {
+        return campaignRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Campaign not found with id: " + id));
+    }
+
+    /**
+     * Delivery progress of the emails expanded so far, by status.
+     */
+    public Map<Email.EmailStatus, Long> countByStatus(Long id) {
+        Map<Email.EmailStatus, Long> counts = new EnumMap<>(Email.EmailStatus.class);
+        for (StatusCount count : emailRepository.countByStatusForCampaign(id)) {
+            counts.put(count.getStatus(), count.getCount());
+        }
+        return counts;
+    }
+
+    public List<Campaign> getRunningCampaigns() {
+        return campaignRepository.findByStatus(Campaign.Status.RUNNING);
+    }
+
+    /**
+     * Expand the recipients that are due by now, at most {@code mail.campaigns.max-per-round} at a time.
+     *
+     * @return The number of emails inserted
+     */
+    public int expandDue(Campaign campaign) throws IOException {
+        long due = Math.min(dueBy(campaign, LocalDateTime.now()), campaign.getExpandedRecipients() + maxPerRound);
+        long expanded = campaign.getExpandedRecipients();
+        long offset = campaign.getRecipientsOffset();
+        int inserted = 0;
+
+        while (expanded < due) {
+            int size = (int) Math.min(chunkSize, due - expanded);
+            CampaignRecipientStore.Chunk chunk = recipientStore.read(campaign.getRecipientsKey(), offset, size);
+            if (chunk.recipients().isEmpty()) {
+                break;
+            }
+            List<Email> emails = chunk.recipients().stream().map(recipient -> toEmail(campaign, recipient)).toList();
+            long previous = expanded;
+            long next = expanded + emails.size();
+            List<Email> saved = transactionTemplate.execute(status -> {
+                if (campaignRepository.advance(campaign.getId(), previous, next, chunk.nextOffset()) == 0) {
+                    // Paused, or another instance expanded this chunk
+                    return null;
+                }
+                return emailRepository.saveAll(emails);
+            });
+            if (saved == null) {
+                return inserted;
+            }
+            saved.forEach(email -> statusListeners.forEach(listener -> listener.onStatusChange(email, null)));
+            expanded = next;
+            offset = chunk.nextOffset();
+            inserted += saved.size();
+        }
+
+        if (expanded >= campaign.getTotalRecipients()
+                && campaignRepository.complete(campaign.getId(), LocalDateTime.now()) == 1) {
+            recipientStore.delete(campaign.getRecipientsKey());
+            log.info("Campaign {} fully expanded into {} emails", campaign.getId(), expanded);
+        }
+        return inserted;
+    }
+
+    /**
+     * Number of recipients that should have been expanded by {@code now}.
+     */
+    static long dueBy(Campaign campaign, LocalDateTime now) {
+        if (campaign.getWindowSeconds() <= 0 || campaign.getPacedFrom() == null) {
+            return campaign.getTotalRecipients();
+        }
+        double perMilli = (double) campaign.getTotalRecipients() / (campaign.getWindowSeconds() * 1000);
+        long elapsedMs = Math.max(0, Duration.between(campaign.getPacedFrom(), now).toMillis());
+        return Math.min(campaign.getTotalRecipients(), campaign.getPacedBase() + (long) (elapsedMs * perMilli));
+    }
+
+    private Campaign startPacing(Long id, Campaign.Status from) {
+        if (campaignRepository.startPacing(id, from, LocalDateTime.now()) == 0) {
+            Campaign campaign = getCampaign(id);
+            throw new IllegalStateException("Campaign " + id + " cannot be started from " + campaign.getStatus()
+                    + (campaign.getRecipientsKey() == null ? " without recipients" : ""));
+        }
+        return getCampaign(id);
+    }
+
+    private Email toEmail(Campaign campaign, CampaignRecipientStore.Recipient recipient) {
+        String name = recipient.name().isEmpty() ? recipient.email() : recipient.name();
+        return Email.builder()
+                .fromEmail(campaign.getFromEmail())
+                .fromName(campaign.getFromName())
+                .toEmail(recipient.email())
+                .toName(name)
+                .subject(personalize(campaign.getSubject(), recipient.email(), name, false))
+                .htmlContent(personalize(campaign.getHtmlContent(), recipient.email(), name, true))
+                .textContent(personalize(campaign.getTextContent(), recipient.email(), name, false))
+                .status(Email.EmailStatus.PENDING)
+                .priority(campaign.getPriority())
+                .provider(mailProvider.getProviderName())
+                .messageId(UUID.randomUUID().toString())
+                .campaignId(campaign.getId())
+                .build();
+    }
+
+    /**
+     * Fill in the {@code {{email}}} and {@code {{name}}} placeholders, HTML-escaped for HTML bodies.
+     */
+    static String personalize(String template, String email, String name, boolean html) {
+        if (template == null || !template.contains("{{")) {
+            return template;
+        }
+        return template
+                .replace("{{email}}", html ? HtmlUtils.htmlEscape(email) : email)
+                .replace("{{name}}", html ? HtmlUtils.htmlEscape(name) : name);
+    }
+}
@@ -0,0 +1,53 @@
+package com.kitly.mail.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks whether email inserts are succeeding within the latency budget. A failed write, or several
+ * slow writes in a row, mark the database degraded for a retry interval. While degraded, sends go to
+ * the local spool without trying the database; the first write after the interval acts as a probe.
+ */
+@Component
+@Slf4j
+public class DatabaseHealth {
+
+    private final long latencyBudgetMs;
+    private final int slowWritesToDegrade;
+    private final long retryAfterMs;
+    private final AtomicInteger consecutiveSlowWrites = new AtomicInteger();
+    private volatile long degradedUntilMs;
+
+    public DatabaseHealth(@Value("${mail.spool.latency-budget-ms:500}") long latencyBudgetMs,
+                          @Value("${mail.spool.slow-writes-to-degrade:3}") int slowWritesToDegrade,
+                          @Value("${mail.spool.retry-database-after-ms:5000}") long retryAfterMs) {
+        this.latencyBudgetMs = latencyBudgetMs;
+        this.slowWritesToDegrade = slowWritesToDegrade;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public boolean isDegraded() {
+        return System.currentTimeMillis() < degradedUntilMs;
+    }
+
+    public void recordSuccess(long latencyMs) {
+        if (latencyMs <= latencyBudgetMs) {
+            consecutiveSlowWrites.set(0);
+        } else if (consecutiveSlowWrites.incrementAndGet() >= slowWritesToDegrade) {
+            consecutiveSlowWrites.set(0);
+            degrade("writes over the " + latencyBudgetMs + " ms latency budget");
+        }
+    }
+
+    public void recordFailure(Exception e) {
+        degrade(e.getMessage());
+    }
+
+    private void degrade(String reason) {
+        degradedUntilMs = System.currentTimeMillis() + retryAfterMs;
+        log.warn("Database marked degraded for {} ms: {}", retryAfterMs, reason);
+    }
+}
@@ -0,0 +1,15 @@
+package com.kitly.mail.service;
+
+/**
+ * The database could not take a write, or has been marked unhealthy after recent failures or slow writes.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
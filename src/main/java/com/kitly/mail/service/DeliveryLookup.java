@@ -0,0 +1,36 @@
+package com.kitly.mail.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * What a provider knows about an earlier delivery attempt of an email.
+ */
+@Data
+@AllArgsConstructor
+public class DeliveryLookup {
+
+    public enum State {
+        /** The provider accepted the email */
+        DELIVERED,
+        /** The provider has no record of the email */
+        NOT_FOUND,
+        /** The provider cannot tell */
+        UNKNOWN
+    }
+
+    private State state;
+    private String externalId;
+
+    public static DeliveryLookup delivered(String externalId) {
+        return new DeliveryLookup(State.DELIVERED, externalId);
+    }
+
+    public static DeliveryLookup notFound() {
+        return new DeliveryLookup(State.NOT_FOUND, null);
+    }
+
+    public static DeliveryLookup unknown() {
+        return new DeliveryLookup(State.UNKNOWN, null);
+    }
+}
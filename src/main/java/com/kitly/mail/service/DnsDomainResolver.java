@@ -0,0 +1,95 @@
+package com.kitly.mail.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.io.IOException;
+import java.util.Hashtable;
+
+/**
+ * Resolves domains with the JDK's DNS provider, using the system's resolvers.
+ * <p>
+ * Each record type is asked for in a query of its own: the JDK sends a request for several types as
+ * one {@code ANY} query, which resolvers may answer with a single synthetic record (RFC 8482).
+ */
+@Component
+public class DnsDomainResolver implements DomainResolver {
+
+    /**
+     * Looks up the records of one type.
+     */
+    @FunctionalInterface
+    interface RecordLookup {
+        /**
+         * @return The records, or {@code null} if the name has none of that type
+         * @throws NameNotFoundException if the name does not exist
+         */
+        Attribute lookup(String name, String type) throws NamingException;
+    }
+
+    private final RecordLookup records;
+
+    @Autowired
+    public DnsDomainResolver(@Value("${mail.recipients.dns.timeout-ms:2000}") int timeoutMs,
+                             @Value("${mail.recipients.dns.retries:1}") int retries) {
+        Hashtable<String, String> environment = new Hashtable<>();
+        environment.put(DirContext.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        environment.put("com.sun.jndi.dns.timeout.initial", String.valueOf(timeoutMs));
+        environment.put("com.sun.jndi.dns.timeout.retries", String.valueOf(retries));
+        this.records = (name, type) -> lookup(environment, name, type);
+    }
+
+    DnsDomainResolver(RecordLookup records) {
+        this.records = records;
+    }
+
+    @Override
+    public Route resolve(String domain) throws IOException {
+        // The trailing dot keeps the system's search domains out of the lookup
+        String name = domain + ".";
+        try {
+            Attribute mx = records.lookup(name, "MX");
+            if (isPresent(mx)) {
+                if (mx.size() == 1 && isNullMx(String.valueOf(mx.get()))) {
+                    return Route.NULL_MX;
+                }
+                return Route.MX;
+            }
+            if (isPresent(records.lookup(name, "A")) || isPresent(records.lookup(name, "AAAA"))) {
+                return Route.IMPLICIT_MX;
+            }
+            return Route.NO_DOMAIN;
+        } catch (NameNotFoundException e) {
+            return Route.NO_DOMAIN;
+        } catch (NamingException e) {
+            throw new IOException("DNS lookup of " + domain + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static Attribute lookup(Hashtable<String, String> environment, String name, String type) throws NamingException {
+        DirContext context = new InitialDirContext(environment);
+        try {
+            return context.getAttributes(name, new String[]{type}).get(type);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static boolean isPresent(Attribute records) {
+        return records != null && records.size() > 0;
+    }
+
+    /**
+     * @param record MX record as {@code <preference> <exchange>}
+     */
+    private static boolean isNullMx(String record) {
+        String[] parts = record.trim().split("\\s+");
+        return parts.length == 2 && parts[1].equals(".");
+    }
+}
@@ -0,0 +1,429 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shards deliveries by recipient domain in front of the {@link PriorityDispatcher}.
+ * <p>
+ * Each domain has its own backlog, a token bucket for its send rate and a cap on concurrent
+ * deliveries. A delivery only reaches a dispatch worker once its domain has both a token and a free
+ * slot, so a throttled domain waits in its own backlog and a slow domain holds at most its
+ * concurrency cap of workers. Within a domain, higher priorities go first.
+ * <p>
+ * A throttled domain can hold an email for longer than a claim lease runs, so the emails in the
+ * backlogs are exposed for {@link QueuedLeaseRenewer}, and {@link #estimatedWaitMillis(Email)} feeds
+ * the domain's wait into {@link AdmissionControl}.
+ * <p>
+ * Limits are configured per domain as {@code domain=ratePerSecond/maxConcurrent}. Domains without
+ * an entry share the default limits individually. Metrics are tagged with the configured domains;
+ * all other domains are reported together as {@code other}.
+ */
+@Component
+@Slf4j
+public class DomainDispatcher {
+
+    static final String OTHER = "other";
+    private static final long RETRY_FULL_LANE_MS = 100;
+
+    record Limit(double ratePerSecond, int maxConcurrent) {
+    }
+
+    private final PriorityDispatcher dispatcher;
+    private final Limit defaultLimit;
+    private final Map<String, Limit> limits;
+    private final int maxQueuedPerDomain;
+    private final Map<String, Shard> shards = new HashMap<>();
+    private final Map<String, AtomicLong> delivered = new HashMap<>();
+    private boolean stopped;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "domain-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DomainDispatcher(PriorityDispatcher dispatcher,
+                            @Value("${mail.throttle.default-rate-per-second:50}") double defaultRatePerSecond,
+                            @Value("${mail.throttle.default-max-concurrent:8}") int defaultMaxConcurrent,
+                            @Value("${mail.throttle.domains:}") String domainLimits,
+                            @Value("${mail.throttle.max-queued-per-domain:5000}") int maxQueuedPerDomain,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.dispatcher = dispatcher;
+        this.defaultLimit = new Limit(defaultRatePerSecond, defaultMaxConcurrent);
+        this.limits = parseLimits(domainLimits);
+        this.maxQueuedPerDomain = maxQueuedPerDomain;
+        for (String domain : limits.keySet()) {
+            delivered.put(domain, new AtomicLong());
+        }
+        delivered.put(OTHER, new AtomicLong());
+        meterRegistry.ifAvailable(this::bindTo);
+    }
+
+    /**
+     * Queue a delivery in the shard of the email's recipient domain.
+     *
+     * @throws RejectedExecutionException if the domain backlog is full, the delivery could be
+     *                                    dispatched right away and its dispatch lane is full, or the
+     *                                    dispatcher is shut down
+     */
+    public <T> CompletableFuture<T> submit(Email email, Callable<T> task) {
+        String domain = domainOf(email.getToEmail());
+        Email.Priority priority = priorityOf(email);
+        Job<T> job = new Job<>(email, priority, task, new CompletableFuture<>());
+        synchronized (this) {
+            if (stopped) {
+                throw new RejectedExecutionException("Dispatcher is shut down");
+            }
+            Shard shard = shards.computeIfAbsent(domain, this::newShard);
+            if (shard.queued() == 0 && shard.canStart(System.nanoTime())) {
+                // Nothing ahead of it: dispatch now so a full lane is reported to the caller
+                shard.start();
+                try {
+                    dispatch(shard, job);
+                } catch (RejectedExecutionException e) {
+                    shard.cancelStart();
+                    throw e;
+                }
+                return job.future;
+            }
+            if (shard.queued() >= maxQueuedPerDomain) {
+                throw new RejectedExecutionException("Backlog for domain " + domain + " is full");
+            }
+            shard.backlog.get(priority).addLast(job);
+            pump(shard);
+        }
+        return job.future;
+    }
+
+    /**
+     * @return The number of deliveries waiting in domain backlogs or dispatch lanes
+     */
+    public int queued() {
+        return backlog() + dispatcher.queued();
+    }
+
+    /**
+     * @return How long a delivery of the email submitted now would wait for a send token of its
+     *         domain, counting the deliveries of its priority or higher that are queued ahead of it
+     */
+    public synchronized long estimatedWaitMillis(Email email) {
+        Shard shard = shards.get(domainOf(email.getToEmail()));
+        if (shard == null || !shard.isRateLimited()) {
+            return 0;
+        }
+        shard.refill(System.nanoTime());
+        double missingTokens = shard.queuedAhead(priorityOf(email)) + 1 - shard.tokens;
+        return missingTokens <= 0 ? 0 : (long) Math.ceil(missingTokens / shard.limit.ratePerSecond() * 1000);
+    }
+
+    /**
+     * @return The emails waiting in the domain backlogs, i.e. not yet handed to a dispatch lane
+     */
+    public synchronized List<Email> waiting() {
+        List<Email> waiting = new ArrayList<>();
+        for (Shard shard : shards.values()) {
+            for (ArrayDeque<Job<?>> jobs : shard.backlog.values()) {
+                for (Job<?> job : jobs) {
+                    waiting.add(job.email);
+                }
+            }
+        }
+        return waiting;
+    }
+
+    public synchronized int backlog() {
+        return shards.values().stream().mapToInt(Shard::queued).sum();
+    }
+
+    synchronized int backlog(String domain) {
+        return shards.values().stream()
+                .filter(shard -> metricDomain(shard.domain).equals(domain))
+                .mapToInt(Shard::queued)
+                .sum();
+    }
+
+    synchronized int inFlight(String domain) {
+        return shards.values().stream()
+                .filter(shard -> metricDomain(shard.domain).equals(domain))
+                .mapToInt(shard -> shard.running)
+                .sum();
+    }
+
+    long delivered(String domain) {
+        return delivered.get(domain).get();
+    }
+
+    /**
+     * Stop dispatching and fail the deliveries still in the backlogs. Their emails keep their lease
+     * and are picked up by lease recovery.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Job<?>> dropped = new ArrayList<>();
+        synchronized (this) {
+            stopped = true;
+            for (Shard shard : shards.values()) {
+                shard.backlog.values().forEach(dropped::addAll);
+                shard.backlog.values().forEach(ArrayDeque::clear);
+            }
+        }
+        timer.shutdownNow();
+        RejectedExecutionException shutDown = new RejectedExecutionException("Dispatcher shut down before the delivery started");
+        dropped.forEach(job -> job.future.completeExceptionally(shutDown));
+        if (!dropped.isEmpty()) {
+            log.warn("Dropped {} queued deliveries on shutdown, lease recovery will pick up their emails", dropped.size());
+        }
+    }
+
+    static String domainOf(String address) {
+        if (address == null) {
+            return "";
+        }
+        int at = address.lastIndexOf('@');
+        return address.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+    }
+
+    static Map<String, Limit> parseLimits(String value) {
+        Map<String, Limit> limits = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return limits;
+        }
+        for (String entry : value.split(",")) {
+            String[] domainAndLimit = entry.trim().split("=");
+            String[] rateAndConcurrency = domainAndLimit.length == 2 ? domainAndLimit[1].split("/") : new String[0];
+            if (rateAndConcurrency.length != 2) {
+                throw new IllegalArgumentException("Expected domain=ratePerSecond/maxConcurrent but got '" + entry + "'");
+            }
+            limits.put(domainAndLimit[0].trim().toLowerCase(Locale.ROOT), new Limit(
+                    Double.parseDouble(rateAndConcurrency[0].trim()),
+                    Integer.parseInt(rateAndConcurrency[1].trim())));
+        }
+        return limits;
+    }
+
+    private static Email.Priority priorityOf(Email email) {
+        return email.getPriority() != null ? email.getPriority() : Email.Priority.TRANSACTIONAL;
+    }
+
+    private Shard newShard(String domain) {
+        return new Shard(domain, limits.getOrDefault(domain, defaultLimit), System.nanoTime());
+    }
+
+    /**
+     * Move queued deliveries of the shard to the dispatcher while it has tokens and free slots. Must be
+     * called with the monitor held.
+     */
+    private void pump(Shard shard) {
+        if (stopped) {
+            return;
+        }
+        while (shard.queued() > 0) {
+            long now = System.nanoTime();
+            if (shard.running >= shard.limit.maxConcurrent()) {
+                return;
+            }
+            if (!shard.canStart(now)) {
+                wakeLater(shard, shard.nanosUntilToken(now));
+                return;
+            }
+            Job<?> job = shard.poll();
+            shard.start();
+            try {
+                dispatch(shard, job);
+            } catch (RejectedExecutionException e) {
+                shard.cancelStart();
+                shard.backlog.get(job.priority).addFirst(job);
+                wakeLater(shard, TimeUnit.MILLISECONDS.toNanos(RETRY_FULL_LANE_MS));
+                return;
+            }
+        }
+        if (shard.running == 0) {
+            long now = System.nanoTime();
+            if (shard.isRefilled(now)) {
+                // A new shard starts with a full bucket, so an idle one can go
+                shards.remove(shard.domain, shard);
+            } else {
+                wakeLater(shard, shard.nanosUntilRefilled(now));
+            }
+        }
+    }
+
+    private <T> void dispatch(Shard shard, Job<T> job) {
+        dispatcher.submit(job.priority, () -> {
+            try {
+                return job.task.call();
+            } finally {
+                finished(shard);
+            }
+        }).whenComplete((result, error) -> {
+            if (error != null) {
+                job.future.completeExceptionally(error);
+            } else {
+                job.future.complete(result);
+            }
+        });
+    }
+
+    private synchronized void finished(Shard shard) {
+        shard.running--;
+        delivered.get(metricDomain(shard.domain)).incrementAndGet();
+        pump(shard);
+    }
+
+    private void wakeLater(Shard shard, long delayNanos) {
+        if (shard.wakeScheduled) {
+            return;
+        }
+        shard.wakeScheduled = true;
+        timer.schedule(() -> {
+            synchronized (this) {
+                shard.wakeScheduled = false;
+                pump(shard);
+            }
+        }, Math.max(delayNanos, 1), TimeUnit.NANOSECONDS);
+    }
+
+    private String metricDomain(String domain) {
+        return limits.containsKey(domain) ? domain : OTHER;
+    }
+
+    private void bindTo(MeterRegistry registry) {
+        for (String domain : delivered.keySet()) {
+            Gauge.builder("mail.domain.backlog", this, dispatcher -> dispatcher.backlog(domain))
+                    .tag("domain", domain)
+                    .register(registry);
+            Gauge.builder("mail.domain.in.flight", this, dispatcher -> dispatcher.inFlight(domain))
+                    .tag("domain", domain)
+                    .register(registry);
+            FunctionCounter.builder("mail.domain.delivered", this, dispatcher -> dispatcher.delivered(domain))
+                    .tag("domain", domain)
+                    .register(registry);
+        }
+    }
+
+    private record Job<T>(Email email, Email.Priority priority, Callable<T> task, CompletableFuture<T> future) {
+    }
+
+    /**
+     * Backlog, token bucket and running count of one domain. Guarded by the dispatcher's monitor.
+     */
+    private static final class Shard {
+        private final String domain;
+        private final Limit limit;
+        private final Map<Email.Priority, ArrayDeque<Job<?>>> backlog = new EnumMap<>(Email.Priority.class);
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+        private int running;
+        private boolean wakeScheduled;
+
+        private Shard(String domain, Limit limit, long now) {
+            this.domain = domain;
+            this.limit = limit;
+            // Allow a burst of one second worth of sends
+            this.capacity = Math.max(1, limit.ratePerSecond());
+            this.tokens = capacity;
+            this.refilledAt = now;
+            for (Email.Priority priority : Email.Priority.values()) {
+                backlog.put(priority, new ArrayDeque<>());
+            }
+        }
+
+        private int queued() {
+            int queued = 0;
+            for (ArrayDeque<Job<?>> jobs : backlog.values()) {
+                queued += jobs.size();
+            }
+            return queued;
+        }
+
+        private int queuedAhead(Email.Priority priority) {
+            int queued = 0;
+            for (Map.Entry<Email.Priority, ArrayDeque<Job<?>>> jobs : backlog.entrySet()) {
+                if (jobs.getKey().compareTo(priority) <= 0) {
+                    queued += jobs.getValue().size();
+                }
+            }
+            return queued;
+        }
+
+        private Job<?> poll() {
+            for (ArrayDeque<Job<?>> jobs : backlog.values()) {
+                if (!jobs.isEmpty()) {
+                    return jobs.pollFirst();
+                }
+            }
+            return null;
+        }
+
+        private boolean canStart(long now) {
+            if (running >= limit.maxConcurrent()) {
+                return false;
+            }
+            refill(now);
+            return !isRateLimited() || tokens >= 1;
+        }
+
+        private void start() {
+            running++;
+            if (isRateLimited()) {
+                tokens -= 1;
+            }
+        }
+
+        private void cancelStart() {
+            running--;
+            if (isRateLimited()) {
+                tokens += 1;
+            }
+        }
+
+        private long nanosUntilToken(long now) {
+            refill(now);
+            return (long) ((1 - tokens) / limit.ratePerSecond() * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private boolean isRefilled(long now) {
+            refill(now);
+            return !isRateLimited() || tokens >= capacity;
+        }
+
+        private long nanosUntilRefilled(long now) {
+            refill(now);
+            return (long) ((capacity - tokens) / limit.ratePerSecond() * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private boolean isRateLimited() {
+            return limit.ratePerSecond() > 0;
+        }
+
+        private void refill(long now) {
+            if (isRateLimited()) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) / 1e9 * limit.ratePerSecond());
+            }
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.kitly.mail.service;
+
+import java.io.IOException;
+
+/**
+ * Looks up whether a domain accepts mail. The default implementation asks DNS; tests plug in a stub.
+ */
+public interface DomainResolver {
+
+    enum Route {
+        /** The domain publishes MX records */
+        MX,
+        /** No MX records, but the domain has an address, which receives its mail (RFC 5321 5.1) */
+        IMPLICIT_MX,
+        /** The domain publishes a null MX and accepts no mail (RFC 7505) */
+        NULL_MX,
+        /** The domain does not exist, or has neither MX records nor an address */
+        NO_DOMAIN;
+
+        public boolean acceptsMail() {
+            return this == MX || this == IMPLICIT_MX;
+        }
+    }
+
+    /**
+     * @param domain ASCII (punycode) domain name, lower case
+     * @throws IOException if the lookup could not be completed, e.g. it timed out
+     */
+    Route resolve(String domain) throws IOException;
+}
@@ -0,0 +1,122 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.EmailRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hands out leases on PENDING emails so that several instances can share the {@code emails} table
+ * without an external coordinator.
+ * <p>
+ * An email is owned by the instance named in {@code lease_owner} until {@code lease_expires_at}.
+ * Batches are claimed with {@code SELECT ... FOR UPDATE SKIP LOCKED}: concurrent claimers skip each
+ * other's locked rows instead of blocking on them, so each gets a disjoint batch.
+ */
+@Service
+@Slf4j
+public class EmailClaimService {
+
+    private final EmailRepository emailRepository;
+    private final String owner;
+    private final long leaseSeconds;
+
+    public EmailClaimService(EmailRepository emailRepository,
+                             @Value("${mail.instance-id:}") String instanceId,
+                             @Value("${mail.claim.lease-seconds:300}") long leaseSeconds) {
+        this.emailRepository = emailRepository;
+        this.owner = instanceId.isBlank() ? defaultInstanceId() : instanceId;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * @return The lease owner name of this instance
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return The expiry of a lease taken now
+     */
+    public LocalDateTime newLeaseExpiry() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds);
+    }
+
+    /**
+     * Claim up to {@code limit} PENDING emails that nobody holds a lease on.
+     *
+     * @return The claimed emails, detached and carrying this instance's lease
+     */
+    @Transactional
+    public List<Email> claimBatch(int limit) {
+        return lease(emailRepository.lockClaimableBatch(limit));
+    }
+
+    /**
+     * Claim up to {@code limit} PENDING emails whose lease has expired. Their previous owner may have
+     * handed them to the provider before it died, so they must be reconciled before being sent again.
+     *
+     * @return The claimed emails, detached and carrying this instance's lease
+     */
+    @Transactional
+    public List<Email> claimExpiredBatch(int limit) {
+        return lease(emailRepository.lockExpiredLeaseBatch(LocalDateTime.now(), limit));
+    }
+
+    /**
+     * Extend this instance's lease on an email it is about to deliver or still holds in a queue.
+     * Fails once the lease has run out and the email was claimed again, even by this instance, since
+     * every claim bumps the row version.
+     *
+     * @return true if the lease is still held and now runs for another lease period
+     */
+    public boolean renew(Email email) {
+        synchronized (email) {
+            LocalDateTime leaseExpiresAt = newLeaseExpiry();
+            if (emailRepository.renewLease(email.getId(), owner, email.getVersion(), leaseExpiresAt) == 0) {
+                return false;
+            }
+            email.setLeaseExpiresAt(leaseExpiresAt);
+            email.setVersion(email.getVersion() + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Give up this instance's lease so that any instance can claim the email again.
+     */
+    public void release(Email email) {
+        if (emailRepository.releaseLease(email.getId(), owner) == 1) {
+            email.setVersion(email.getVersion() + 1);
+        }
+        email.setLeaseOwner(null);
+        email.setLeaseExpiresAt(null);
+    }
+
+    private List<Email> lease(List<Email> batch) {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        LocalDateTime leaseExpiresAt = newLeaseExpiry();
+        emailRepository.assignLease(batch.stream().map(Email::getId).toList(), owner, leaseExpiresAt);
+        for (Email email : batch) {
+            email.setLeaseOwner(owner);
+            email.setLeaseExpiresAt(leaseExpiresAt);
+            email.setVersion(email.getVersion() + 1);
+        }
+        log.debug("Leased {} pending emails to {}", batch.size(), owner);
+        return batch;
+    }
+
+    private static String defaultInstanceId() {
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
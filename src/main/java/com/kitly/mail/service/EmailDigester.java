@@ -0,0 +1,346 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces notifications from the same sender to the same recipient and category into one email.
+ * <p>
+ * The first email for a sender, recipient and category opens a digest window; emails arriving while it is
+ * open are added to it. When the window closes, or the digest reaches {@code mail.digest.max-items},
+ * the collected emails are merged into one message and queued for delivery. Open windows are held in
+ * memory on a {@link TimingWheel}; at most {@code mail.digest.max-open} are open at a time, beyond
+ * which emails are not digested.
+ * <p>
+ * Every email is written to a local journal, an {@link EmailSpool} in {@code mail.digest.journal-dir},
+ * before it is acknowledged, and dropped from it once its digest is queued. A digest that can be
+ * neither queued nor spooled goes back on the wheel and is retried with a doubling back-off, from
+ * {@code mail.digest.retry-backoff-ms} up to {@code mail.digest.max-retry-backoff-ms}. Digests that
+ * were still open or unsent when the process died are sent on the next start.
+ */
+@Component
+@Slf4j
+public class EmailDigester {
+
+    static final String SEPARATOR_HTML = "\n<hr>\n";
+    static final String SEPARATOR_TEXT = "\n\n----------\n\n";
+
+    private final EmailService emailService;
+    private final Duration defaultWindow;
+    private final Duration maxWindow;
+    private final int maxItems;
+    private final int maxOpen;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final EmailSpool journal;
+
+    private final Map<Key, Digest> open = new HashMap<>();
+    private final Set<Digest> retrying = new HashSet<>();
+    private final TimingWheel<Digest> wheel;
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "email-digester");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EmailDigester(EmailService emailService,
+                         @Value("${mail.digest.default-window-seconds:60}") long defaultWindowSeconds,
+                         @Value("${mail.digest.max-window-seconds:900}") long maxWindowSeconds,
+                         @Value("${mail.digest.max-items:20}") int maxItems,
+                         @Value("${mail.digest.max-open:100000}") int maxOpen,
+                         @Value("${mail.digest.tick-ms:100}") long tickMs,
+                         @Value("${mail.digest.retry-backoff-ms:5000}") long retryBackoffMs,
+                         @Value("${mail.digest.max-retry-backoff-ms:300000}") long maxRetryBackoffMs,
+                         @Value("${mail.digest.journal-dir:${mail.spool.dir:${java.io.tmpdir}/kitly-mail/spool}/digests}") String journalDir,
+                         @Value("${mail.spool.segment-size-bytes:16777216}") int journalSegmentSize,
+                         @Value("${mail.spool.fsync:always}") String fsync,
+                         ObjectProvider<MeterRegistry> meterRegistry) {
+        this.emailService = emailService;
+        this.defaultWindow = Duration.ofSeconds(defaultWindowSeconds);
+        this.maxWindow = Duration.ofSeconds(maxWindowSeconds);
+        this.maxItems = maxItems;
+        this.maxOpen = maxOpen;
+        // At least two ticks, so a retry always lands on the wheel
+        this.retryBackoffMs = Math.max(retryBackoffMs, 2 * tickMs);
+        this.maxRetryBackoffMs = Math.max(maxRetryBackoffMs, this.retryBackoffMs);
+        this.journal = new EmailSpool(journalDir, journalSegmentSize, fsync);
+        this.wheel = new TimingWheel<>(tickMs, 512, System.currentTimeMillis());
+        // Read the previous run's digests before new emails reach the journal
+        List<EmailSpool.Entry> leftOver = journal.readPending(Integer.MAX_VALUE);
+        ticker.execute(() -> recover(leftOver));
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        meterRegistry.ifAvailable(this::bindTo);
+    }
+
+    /**
+     * Add the email to the open digest of its sender, recipient and category, opening one if needed.
+     *
+     * @param window How long a new digest stays open, or {@code null} for the default. Capped at
+     *               {@code mail.digest.max-window-seconds}.
+     * @return The email as accepted, carrying the message id of the digest it went into, or
+     * {@code null} if too many digests are open or the journal cannot take the email, and it should
+     * be sent on its own
+     */
+    public Email add(Email email, String category, Duration window) {
+        Key key = new Key(email.getFromEmail().trim().toLowerCase(Locale.ROOT), email.getFromName(),
+                email.getToEmail().trim().toLowerCase(Locale.ROOT), category);
+        Digest full = null;
+        Digest digest;
+        synchronized (this) {
+            digest = open.get(key);
+            boolean opening = digest == null;
+            if (opening) {
+                if (open.size() >= maxOpen) {
+                    return null;
+                }
+                digest = new Digest(key, UUID.randomUUID().toString());
+            }
+            String messageId = email.getMessageId();
+            email.setMessageId(digest.messageId);
+            try {
+                digest.entries.add(journal.append(new EmailSpool.SpooledEmail(email, List.of())));
+            } catch (IOException e) {
+                log.warn("Cannot journal digested email to {}, sending it on its own", email.getToEmail(), e);
+                email.setMessageId(messageId);
+                return null;
+            }
+            if (opening) {
+                Duration length = window == null ? defaultWindow : window.compareTo(maxWindow) > 0 ? maxWindow : window;
+                open.put(key, digest);
+                if (!wheel.schedule(digest, System.currentTimeMillis() + length.toMillis())) {
+                    full = digest;
+                }
+            }
+            digest.parts.add(email);
+            if (digest.parts.size() >= maxItems) {
+                full = digest;
+            }
+            if (full != null) {
+                open.remove(key, full);
+            }
+        }
+        if (full != null) {
+            // The wheel still holds the timer; it finds the digest gone from the open map and skips it
+            flush(full);
+        }
+        email.setStatus(Email.EmailStatus.PENDING);
+        return email;
+    }
+
+    /**
+     * @return The number of open digests
+     */
+    public synchronized int openDigests() {
+        return open.size();
+    }
+
+    /**
+     * Close every open digest now, and try the ones waiting for a retry once more. Called on shutdown
+     * so collected emails are not lost; digests that still fail are sent on the next start.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Digest> remaining;
+        synchronized (this) {
+            // Not shutdownNow: an interrupt would close the journal's channels under a flush in progress
+            ticker.shutdown();
+            remaining = new ArrayList<>(open.values());
+            remaining.addAll(retrying);
+            open.clear();
+            retrying.clear();
+        }
+        try {
+            // Let a flush in progress on the ticker finish with the journal before it is closed
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        remaining.forEach(this::flush);
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Could not close the digest journal", e);
+        }
+    }
+
+    /**
+     * Merge the emails of a digest into one message: the subject of the first with a count of the
+     * others, and the bodies in order of arrival. The text body is only kept if every email has one.
+     */
+    static Email merge(List<Email> parts, String messageId) {
+        Email first = parts.get(0);
+        Email last = parts.get(parts.size() - 1);
+        Email.Priority priority = parts.stream()
+                .map(Email::getPriority)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        String subject = parts.size() == 1
+                ? first.getSubject()
+                : first.getSubject() + " (+" + (parts.size() - 1) + " more)";
+
+        boolean anyHtml = parts.stream().anyMatch(part -> part.getHtmlContent() != null);
+        boolean allText = parts.stream().allMatch(part -> part.getTextContent() != null);
+        List<String> html = new ArrayList<>();
+        List<String> text = new ArrayList<>();
+        for (Email part : parts) {
+            if (anyHtml) {
+                html.add(part.getHtmlContent() != null
+                        ? part.getHtmlContent()
+                        : "<p>" + HtmlUtils.htmlEscape(part.getTextContent() != null ? part.getTextContent() : part.getSubject())
+                                .replace("\n", "<br>") + "</p>");
+            }
+            if (allText) {
+                text.add(part.getTextContent());
+            }
+        }
+
+        return Email.builder()
+                .fromEmail(first.getFromEmail())
+                .fromName(first.getFromName())
+                .toEmail(last.getToEmail())
+                .toName(last.getToName())
+                .subject(subject)
+                .htmlContent(anyHtml ? String.join(SEPARATOR_HTML, html) : null)
+                .textContent(allText ? String.join(SEPARATOR_TEXT, text) : null)
+                .priority(priority)
+                .messageId(messageId)
+                .build();
+    }
+
+    private void tick() {
+        try {
+            for (Digest digest : wheel.advance(System.currentTimeMillis())) {
+                boolean due;
+                synchronized (this) {
+                    due = retrying.remove(digest) || open.remove(digest.key, digest);
+                }
+                if (due) {
+                    flush(digest);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Digest tick failed", e);
+        }
+    }
+
+    /**
+     * Send the digests that were open when the previous process stopped without closing them.
+     */
+    private void recover(List<EmailSpool.Entry> leftOver) {
+        Map<String, Digest> recovered = new LinkedHashMap<>();
+        for (EmailSpool.Entry entry : leftOver) {
+            Email part = entry.email().email();
+            Digest digest = recovered.computeIfAbsent(part.getMessageId(), messageId -> new Digest(null, messageId));
+            digest.parts.add(part);
+            digest.entries.add(entry);
+        }
+        if (!recovered.isEmpty()) {
+            log.warn("Sending {} digests left open by the previous run", recovered.size());
+            recovered.values().forEach(this::flush);
+        }
+    }
+
+    private void flush(Digest digest) {
+        Email merged = merge(digest.parts, digest.messageId);
+        try {
+            try {
+                emailService.queueEmail(merged);
+            } catch (DatabaseUnavailableException e) {
+                emailService.spoolEmail(merged, List.of());
+            } catch (DataIntegrityViolationException e) {
+                // Queued by a run that died before it could clear the journal
+                log.info("Digest already queued. Message ID: {}", digest.messageId);
+            }
+            digest.entries.forEach(journal::markReplayed);
+            journal.deleteReplayedSegments();
+            flushed.incrementAndGet();
+            coalesced.addAndGet(digest.parts.size() - 1);
+            log.info("Digest of {} emails queued for {}. Message ID: {}",
+                    digest.parts.size(), merged.getToEmail(), digest.messageId);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to queue digest of {} emails for {}, keeping it in the journal. Message ID: {}",
+                    digest.parts.size(), merged.getToEmail(), digest.messageId, e);
+            retryLater(digest);
+        }
+    }
+
+    /**
+     * Put a digest that could not be queued back on the wheel. Once the digester is shut down it is
+     * left to the journal.
+     */
+    private void retryLater(Digest digest) {
+        long backoff = Math.min(retryBackoffMs << Math.min(digest.attempts, 20), maxRetryBackoffMs);
+        digest.attempts++;
+        synchronized (this) {
+            if (ticker.isShutdown()) {
+                return;
+            }
+            retrying.add(digest);
+            wheel.schedule(digest, System.currentTimeMillis() + backoff);
+        }
+        log.info("Retrying digest in {} ms. Message ID: {}", backoff, digest.messageId);
+    }
+
+    private void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.digest.open", this, EmailDigester::openDigests)
+                .register(registry);
+        FunctionCounter.builder("mail.digest.sent", flushed, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("mail.digest.coalesced", coalesced, AtomicLong::get)
+                .register(registry);
+    }
+
+    /**
+     * The merged email carries the sender of its first part, so parts from different senders, or
+     * under a different display name, never share a digest.
+     */
+    private record Key(String sender, String senderName, String recipient, String category) {
+    }
+
+    /**
+     * Emails collected in one window. Parts are guarded by the digester's monitor until the digest
+     * has been removed from the open map; after that only the thread flushing it touches it.
+     */
+    private static final class Digest {
+        private final Key key;
+        private final String messageId;
+        private final List<Email> parts = new ArrayList<>();
+        private final List<EmailSpool.Entry> entries = new ArrayList<>();
+        private int attempts;
+
+        private Digest(Key key, String messageId) {
+            this.key = key;
+            this.messageId = messageId;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Search criteria for emails. All criteria are optional and combined with AND.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailFilter {
+
+    private Email.EmailStatus status;
+    private String recipient;
+    private String sender;
+    private String provider;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+    private Integer limit;
+}
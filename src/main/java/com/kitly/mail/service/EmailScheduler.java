@@ -0,0 +1,161 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.repository.EmailRepository;
+import com.kitly.mail.repository.ScheduledEmail;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Fires scheduled emails when their send time is reached.
+ * <p>
+ * Only the near-term window ({@code mail.scheduler.horizon-ms}) is held in memory, on a
+ * {@link TimingWheel} keyed by email id. Emails due later stay in the database and are loaded in
+ * keyset-paginated batches through the partial {@code send_at} index as they come into the window,
+ * so the table is never polled as a whole.
+ */
+@Component
+@Slf4j
+public class EmailScheduler {
+
+    private final EmailRepository emailRepository;
+    private final long horizonMs;
+    private final int batchSize;
+    private final int maxInMemory;
+    private final long tickMs;
+
+    private final TimingWheel<Long> wheel;
+    private final Set<Long> tracked = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "email-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile LongConsumer dueHandler;
+
+    public EmailScheduler(EmailRepository emailRepository,
+                          @Value("${mail.scheduler.horizon-ms:300000}") long horizonMs,
+                          @Value("${mail.scheduler.batch-size:500}") int batchSize,
+                          @Value("${mail.scheduler.max-in-memory:100000}") int maxInMemory,
+                          @Value("${mail.scheduler.tick-ms:100}") long tickMs) {
+        this.emailRepository = emailRepository;
+        this.horizonMs = horizonMs;
+        this.batchSize = batchSize;
+        this.maxInMemory = maxInMemory;
+        this.tickMs = tickMs;
+        this.wheel = new TimingWheel<>(tickMs, 512, System.currentTimeMillis());
+    }
+
+    /**
+     * Start firing timers. Each due email id is passed to the handler on the scheduler thread.
+     */
+    public void start(LongConsumer handler) {
+        this.dueHandler = handler;
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Put a freshly scheduled email on a timer if it is due within the in-memory window.
+     * Later emails are picked up by {@link #loadDueEmails()}.
+     */
+    public void track(Long emailId, LocalDateTime sendAt) {
+        long deadline = toEpochMillis(sendAt);
+        if (deadline < System.currentTimeMillis() + horizonMs && tracked.size() < maxInMemory) {
+            schedule(emailId, deadline);
+        }
+    }
+
+    /**
+     * Load scheduled emails that have entered the in-memory window.
+     */
+    @Scheduled(fixedDelayString = "${mail.scheduler.load-interval-ms:30000}")
+    public void loadDueEmails() {
+        LocalDateTime until = LocalDateTime.now().plusNanos(horizonMs * 1_000_000);
+        LocalDateTime afterSendAt = LocalDateTime.of(1970, 1, 1, 0, 0);
+        long afterId = 0;
+        int loaded = 0;
+
+        while (tracked.size() < maxInMemory) {
+            List<ScheduledEmail> batch = emailRepository.findScheduledBefore(until, afterSendAt, afterId,
+                    Limit.of(batchSize));
+            for (ScheduledEmail email : batch) {
+                if (!tracked.contains(email.getId())) {
+                    schedule(email.getId(), toEpochMillis(email.getSendAt()));
+                    loaded++;
+                }
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+            ScheduledEmail last = batch.get(batch.size() - 1);
+            afterSendAt = last.getSendAt();
+            afterId = last.getId();
+        }
+
+        if (loaded > 0) {
+            log.info("Loaded {} scheduled emails due before {}", loaded, until);
+        }
+    }
+
+    /**
+     * @return The number of emails currently on a timer
+     */
+    public int pending() {
+        return tracked.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void schedule(Long emailId, long deadline) {
+        if (!tracked.add(emailId)) {
+            return;
+        }
+        if (!wheel.schedule(emailId, deadline)) {
+            fire(emailId);
+        }
+    }
+
+    private void tick() {
+        try {
+            for (Long emailId : wheel.advance(System.currentTimeMillis())) {
+                fire(emailId);
+            }
+        } catch (RuntimeException e) {
+            log.error("Scheduler tick failed", e);
+        }
+    }
+
+    private void fire(Long emailId) {
+        tracked.remove(emailId);
+        LongConsumer handler = dueHandler;
+        if (handler == null) {
+            return;
+        }
+        try {
+            handler.accept(emailId);
+        } catch (RuntimeException e) {
+            // The email stays SCHEDULED and is loaded again on the next pass
+            log.error("Failed to release scheduled email {}", emailId, e);
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -2,13 +2,32 @@ package com.kitly.mail.service;
 
 import com.kitly.mail.model.Email;
 import com.kitly.mail.repository.EmailRepository;
+import com.kitly.mail.repository.EmailSpecifications;
+import com.kitly.mail.repository.EmailStatusView;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionException;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -17,37 +36,402 @@ public class EmailService {
 
     private final EmailRepository emailRepository;
     private final MailProvider mailProvider;
+    private final DomainDispatcher dispatcher;
+    private final EmailScheduler emailScheduler;
+    private final EmailClaimService claimService;
+    private final AttachmentService attachmentService;
+    private final EmailStatusWriter statusWriter;
+    private final EmailSpool spool;
+    private final DatabaseHealth databaseHealth;
+    private final List<EmailStatusListener> statusListeners;
+    private final ObservationRegistry observationRegistry;
+    private final HtmlPreprocessor htmlPreprocessor;
 
-    @Transactional
+    @PostConstruct
+    void startScheduler() {
+        emailScheduler.start(this::releaseScheduled);
+    }
+
+    /**
+     * Persist the email as PENDING and deliver it through the dispatch lane of its priority.
+     * Blocks until the provider call has completed.
+     *
+     * @throws RejectedExecutionException if the dispatch lane is full
+     */
     public Email sendEmail(Email email) throws MailProviderException {
+        return sendEmail(email, List.of());
+    }
+
+    /**
+     * Send the email with previously uploaded attachments. Blocks until the provider call has completed.
+     *
+     * @throws IllegalArgumentException if an attachment id is unknown or already used by another email
+     * @throws RejectedExecutionException if the dispatch lane is full
+     */
+    public Email sendEmail(Email email, List<Long> attachmentIds) throws MailProviderException {
+        CompletableFuture<Email> delivery = sendEmailAsync(email, attachmentIds);
+        try {
+            return delivery.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MailProviderException providerException) {
+                throw providerException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Persist the email as PENDING and queue it in its recipient domain's shard without waiting for
+     * the provider. The future completes with the SENT email, or exceptionally with a
+     * {@link MailProviderException} once the email has been marked FAILED.
+     *
+     * @throws IllegalArgumentException if an attachment id is unknown or already used by another email
+     * @throws RejectedExecutionException if the domain backlog or the dispatch lane is full
+     */
+    public CompletableFuture<Email> sendEmailAsync(Email email, List<Long> attachmentIds) {
+        MailEvents.EmailAccepted accepted = new MailEvents.EmailAccepted();
+        htmlPreprocessor.prepare(email);
         email.setStatus(Email.EmailStatus.PENDING);
-        email = emailRepository.save(email);
+        email.setProvider(mailProvider.getProviderName());
+        if (email.getPriority() == null) {
+            email.setPriority(Email.Priority.TRANSACTIONAL);
+        }
+        // Take the lease up front so background claimers on other instances leave this email alone
+        email.setLeaseOwner(claimService.getOwner());
+        email.setLeaseExpiresAt(claimService.newLeaseExpiry());
+        Email pending = saveWithAttachments(email, attachmentIds);
+        notifyStatusChange(pending, null);
 
+        // Carry the caller's observation over to the dispatch worker
+        Observation parent = observationRegistry.getCurrentObservation();
+        Observation queued = Observation.createNotStarted(MailObservations.DISPATCH_QUEUE, observationRegistry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(MailObservations.PRIORITY, pending.getPriority().name())
+                .highCardinalityKeyValue(MailObservations.EMAIL_ID, String.valueOf(pending.getId()))
+                .start();
         try {
-            String externalId = mailProvider.sendEmail(email);
-            email.setExternalId(externalId);
-            email.setStatus(Email.EmailStatus.SENT);
-            email.setSentAt(LocalDateTime.now());
-            log.info("Email sent successfully. ID: {}, External ID: {}", email.getId(), externalId);
-            return emailRepository.save(email);
+            CompletableFuture<Email> delivery = dispatcher.submit(pending, () -> {
+                queued.stop();
+                return parent != null ? parent.scopedChecked(() -> deliver(pending)) : deliver(pending);
+            });
+            accepted.finish(pending);
+            return delivery;
+        } catch (RejectedExecutionException e) {
+            queued.error(e);
+            queued.stop();
+            pending.setStatus(Email.EmailStatus.FAILED);
+            pending.setErrorMessage(e.getMessage());
+            pending.setLeaseOwner(null);
+            pending.setLeaseExpiresAt(null);
+            notifyStatusChange(emailRepository.save(pending), Email.EmailStatus.PENDING);
+            throw e;
+        }
+    }
+
+    /**
+     * Persist the email as PENDING without a lease, so the claim poller picks it up for delivery.
+     *
+     * @throws DatabaseUnavailableException if the database cannot take it
+     */
+    public Email queueEmail(Email email) {
+        MailEvents.EmailAccepted accepted = new MailEvents.EmailAccepted();
+        htmlPreprocessor.prepare(email);
+        email.setStatus(Email.EmailStatus.PENDING);
+        email.setProvider(mailProvider.getProviderName());
+        if (email.getPriority() == null) {
+            email.setPriority(Email.Priority.TRANSACTIONAL);
+        }
+        if (email.getMessageId() == null) {
+            email.setMessageId(UUID.randomUUID().toString());
+        }
+        Email pending = insert(email);
+        notifyStatusChange(pending, null);
+        accepted.finish(pending);
+        return pending;
+    }
+
+    /**
+     * Persist the email as SCHEDULED for delivery at {@link Email#getSendAt()}.
+     */
+    public Email scheduleEmail(Email email) {
+        return scheduleEmail(email, List.of());
+    }
+
+    /**
+     * Schedule the email with previously uploaded attachments.
+     *
+     * @throws IllegalArgumentException if an attachment id is unknown or already used by another email
+     */
+    public Email scheduleEmail(Email email, List<Long> attachmentIds) {
+        MailEvents.EmailAccepted accepted = new MailEvents.EmailAccepted();
+        htmlPreprocessor.prepare(email);
+        email.setStatus(Email.EmailStatus.SCHEDULED);
+        email.setProvider(mailProvider.getProviderName());
+        if (email.getPriority() == null) {
+            email.setPriority(Email.Priority.TRANSACTIONAL);
+        }
+        Email scheduled = saveWithAttachments(email, attachmentIds);
+        notifyStatusChange(scheduled, null);
+        emailScheduler.track(scheduled.getId(), scheduled.getSendAt());
+        accepted.finish(scheduled);
+        log.info("Email scheduled. ID: {}, Send at: {}", scheduled.getId(), scheduled.getSendAt());
+        return scheduled;
+    }
+
+    /**
+     * Move a due scheduled email to PENDING under this instance's lease and queue it for delivery
+     * without waiting for the outcome. The conditional status update guarantees a single release even
+     * if several instances fire the same timer.
+     */
+    void releaseScheduled(long emailId) {
+        if (emailRepository.claimScheduled(emailId, claimService.getOwner(), claimService.newLeaseExpiry()) == 0) {
+            return;
+        }
+        Email pending = getEmailById(emailId);
+        notifyStatusChange(pending, Email.EmailStatus.SCHEDULED);
+        try {
+            dispatcher.submit(pending, () -> deliver(pending));
+        } catch (RejectedExecutionException e) {
+            // Put it back so the next scheduler pass retries it
+            if (emailRepository.transitionStatus(emailId, Email.EmailStatus.PENDING, Email.EmailStatus.SCHEDULED) == 1) {
+                pending.setVersion(pending.getVersion() + 1);
+            }
+            pending.setStatus(Email.EmailStatus.SCHEDULED);
+            notifyStatusChange(pending, Email.EmailStatus.PENDING);
+            log.warn("Dispatch lane full, deferring scheduled email {}", emailId);
+        }
+    }
+
+    /**
+     * Hand a PENDING email to the provider and record the outcome. The caller must hold the lease;
+     * it is taken again right before the send, and the email is left alone if it was lost while the
+     * email waited in a queue, since the new owner delivers or reconciles it.
+     */
+    Email deliver(Email email) throws MailProviderException {
+        if (!claimService.renew(email)) {
+            log.warn("Lease on email {} was lost while it was queued, skipping delivery", email.getId());
+            return email;
+        }
+        if (email.getAttachmentCount() > 0 && email.getAttachments() == null) {
+            email.setAttachments(attachmentService.loadForDelivery(email.getId()));
+        }
+        Observation observation = Observation.createNotStarted(MailObservations.PROVIDER_SEND, observationRegistry)
+                .lowCardinalityKeyValue(MailObservations.PROVIDER, mailProvider.getProviderName())
+                .highCardinalityKeyValue(MailObservations.EMAIL_ID, String.valueOf(email.getId()))
+                .start();
+        String externalId;
+        try (Observation.Scope scope = observation.openScope()) {
+            externalId = mailProvider.sendEmail(email);
+            observation.lowCardinalityKeyValue(MailObservations.OUTCOME, "success");
         } catch (MailProviderException e) {
+            observation.lowCardinalityKeyValue(MailObservations.OUTCOME, "failure");
+            observation.error(e);
+            observation.stop();
+            markFailed(email, e.getMessage());
+            log.error("Failed to send email. ID: {}", email.getId(), e);
+            throw e;
+        }
+        observation.stop();
+        log.info("Email sent successfully. ID: {}, External ID: {}", email.getId(), externalId);
+        return markSent(email, externalId);
+    }
+
+    /**
+     * Accept the email into the local spool because the database cannot take it. It is inserted, and
+     * then delivered or scheduled, when the spool is replayed.
+     *
+     * @throws IOException if the spool cannot take the email either
+     */
+    public Email spoolEmail(Email email, List<Long> attachmentIds) throws IOException {
+        htmlPreprocessor.prepare(email);
+        email.setStatus(email.getSendAt() != null ? Email.EmailStatus.SCHEDULED : Email.EmailStatus.PENDING);
+        email.setProvider(mailProvider.getProviderName());
+        if (email.getPriority() == null) {
+            email.setPriority(Email.Priority.TRANSACTIONAL);
+        }
+        if (email.getMessageId() == null) {
+            email.setMessageId(UUID.randomUUID().toString());
+        }
+        email.setCreatedAt(LocalDateTime.now());
+        email.setAttachmentCount(attachmentIds.size());
+        spool.append(new EmailSpool.SpooledEmail(email, attachmentIds));
+        log.warn("Database unavailable, spooled email to {}. Message ID: {}", email.getToEmail(), email.getMessageId());
+        return email;
+    }
+
+    /**
+     * Insert an email replayed from the spool. PENDING emails are stored without a lease, so the
+     * claim poller picks them up for delivery.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException if the email was already inserted
+     * @throws DatabaseUnavailableException if the database still cannot take it
+     */
+    void acceptSpooled(EmailSpool.SpooledEmail spooled) {
+        Email email = spooled.email();
+        Email saved;
+        try {
+            saved = saveWithAttachments(email, spooled.attachmentIds());
+        } catch (IllegalArgumentException e) {
+            if (email.getId() != null) {
+                throw e;
+            }
+            // The attachments are gone, keep a record of the email anyway
             email.setStatus(Email.EmailStatus.FAILED);
             email.setErrorMessage(e.getMessage());
-            emailRepository.save(email);
-            log.error("Failed to send email. ID: {}", email.getId(), e);
+            email.setAttachmentCount(0);
+            saved = insert(email);
+        }
+        notifyStatusChange(saved, null);
+        if (saved.getStatus() == Email.EmailStatus.SCHEDULED) {
+            emailScheduler.track(saved.getId(), saved.getSendAt());
+        }
+    }
+
+    private Email saveWithAttachments(Email email, List<Long> attachmentIds) {
+        if (attachmentIds.isEmpty()) {
+            return insert(email);
+        }
+        attachmentService.verifyUnlinked(attachmentIds);
+        email.setAttachmentCount(attachmentIds.size());
+        Email saved = insert(email);
+        try {
+            attachmentService.link(saved.getId(), attachmentIds);
+        } catch (IllegalArgumentException e) {
+            // Another request took one of the attachments between the check and the link
+            saved.setStatus(Email.EmailStatus.FAILED);
+            saved.setErrorMessage(e.getMessage());
+            saved.setLeaseOwner(null);
+            saved.setLeaseExpiresAt(null);
+            emailRepository.save(saved);
             throw e;
         }
+        return saved;
+    }
+
+    /**
+     * Insert a new email and track how the database copes. Fails fast while the database is degraded.
+     *
+     * @throws DatabaseUnavailableException if the database is degraded or the insert failed for a
+     *                                      reason other than the data itself
+     */
+    private Email insert(Email email) {
+        if (databaseHealth.isDegraded()) {
+            throw new DatabaseUnavailableException("Database is degraded");
+        }
+        MailEvents.EmailPersisted persisted = new MailEvents.EmailPersisted("insert");
+        long start = System.nanoTime();
+        try {
+            Email saved = observeDb("insert", null, () -> emailRepository.save(email));
+            databaseHealth.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            persisted.finish(saved, true);
+            return saved;
+        } catch (DataAccessException | TransactionException e) {
+            persisted.finish(email, false);
+            if (e instanceof DataIntegrityViolationException) {
+                throw e;
+            }
+            databaseHealth.recordFailure(e);
+            throw new DatabaseUnavailableException("Could not store email: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record that a PENDING email was accepted by the provider and release its lease. The update goes
+     * through the write-behind journal.
+     */
+    Email markSent(Email email, String externalId) {
+        email.setExternalId(externalId);
+        email.setStatus(Email.EmailStatus.SENT);
+        email.setSentAt(LocalDateTime.now());
+        email.setLeaseOwner(null);
+        email.setLeaseExpiresAt(null);
+        writeStatus(email);
+        notifyStatusChange(email, Email.EmailStatus.PENDING);
+        return email;
+    }
+
+    /**
+     * Record that a PENDING email could not be delivered and release its lease. The update goes
+     * through the write-behind journal.
+     */
+    Email markFailed(Email email, String errorMessage) {
+        email.setStatus(Email.EmailStatus.FAILED);
+        email.setErrorMessage(errorMessage);
+        email.setLeaseOwner(null);
+        email.setLeaseExpiresAt(null);
+        writeStatus(email);
+        notifyStatusChange(email, Email.EmailStatus.PENDING);
+        return email;
+    }
+
+    private void writeStatus(Email email) {
+        // The journal's update bumps the row version; keep the copy handed to listeners in step
+        email.setVersion(email.getVersion() + 1);
+        MailEvents.EmailPersisted persisted = new MailEvents.EmailPersisted("status");
+        boolean written = false;
+        try {
+            observeDb("status", email.getId(), () -> {
+                statusWriter.write(email);
+                return email;
+            });
+            written = true;
+        } finally {
+            persisted.finish(email, written);
+        }
     }
 
     public Email getEmailById(Long id) {
-        return emailRepository.findById(id)
+        return observeDb("find", id, () -> emailRepository.findById(id))
+                .orElseThrow(() -> new IllegalArgumentException("Email not found with id: " + id));
+    }
+
+    /**
+     * @return The row version of the email, read without loading it
+     */
+    public Optional<Long> findEmailVersion(Long id) {
+        return observeDb("version", id, () -> emailRepository.findVersionById(id));
+    }
+
+    /**
+     * Read only the given attributes of an email.
+     *
+     * @return The values by attribute name, in the given order
+     */
+    public Map<String, Object> getEmailAttributes(Long id, Collection<String> attributes) {
+        return observeDb("find", id, () -> emailRepository.findAttributesById(id, attributes))
                 .orElseThrow(() -> new IllegalArgumentException("Email not found with id: " + id));
     }
 
+    /**
+     * Look up the status of many emails at once, with one query for the ids and one for the
+     * external ids.
+     */
+    public List<EmailStatusView> findStatuses(Collection<Long> ids, Collection<String> externalIds) {
+        List<EmailStatusView> statuses = new ArrayList<>();
+        if (!ids.isEmpty()) {
+            statuses.addAll(observeDb("statuses", null, () -> emailRepository.findStatusesByIdIn(ids)));
+        }
+        if (!externalIds.isEmpty()) {
+            statuses.addAll(observeDb("statuses", null, () -> emailRepository.findStatusesByExternalIdIn(externalIds)));
+        }
+        return statuses;
+    }
+
     public List<Email> getAllEmails() {
         return emailRepository.findAll();
     }
 
+    public List<Email> findEmails(EmailFilter filter) {
+        Sort newestFirst = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+        return emailRepository.findBy(EmailSpecifications.matching(filter), query -> {
+            var sorted = query.sortBy(newestFirst);
+            return filter.getLimit() != null ? sorted.limit(filter.getLimit()).all() : sorted.all();
+        });
+    }
+
     public List<Email> getEmailsByStatus(Email.EmailStatus status) {
         return emailRepository.findByStatus(status);
     }
@@ -55,4 +439,26 @@ public class EmailService {
     public List<Email> getEmailsByRecipient(String toEmail) {
         return emailRepository.findByToEmail(toEmail);
     }
+
+    /**
+     * Run a database call of the send path as a {@link MailObservations#DB} observation.
+     */
+    private <T> T observeDb(String operation, Long emailId, Supplier<T> call) {
+        Observation observation = Observation.createNotStarted(MailObservations.DB, observationRegistry)
+                .lowCardinalityKeyValue(MailObservations.DB_OPERATION, operation);
+        if (emailId != null) {
+            observation.highCardinalityKeyValue(MailObservations.EMAIL_ID, String.valueOf(emailId));
+        }
+        return observation.observe(call);
+    }
+
+    private void notifyStatusChange(Email email, Email.EmailStatus previousStatus) {
+        for (EmailStatusListener listener : statusListeners) {
+            try {
+                listener.onStatusChange(email, previousStatus);
+            } catch (RuntimeException e) {
+                log.warn("Status listener {} failed for email {}", listener.getClass().getSimpleName(), email.getId(), e);
+            }
+        }
+    }
 }
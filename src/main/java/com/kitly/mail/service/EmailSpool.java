@@ -0,0 +1,364 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal that accepts emails while the database is unavailable.
+ * <p>
+ * Records are appended to memory-mapped segment files as {@code [length][crc32][state][payload]}.
+ * The payload and checksum are written before the length, and with {@code mail.spool.fsync=always}
+ * each is forced to disk in that order, so a record is either complete or invisible after a crash.
+ * Recovery scans each segment up to the first empty or corrupt record and discards the torn tail.
+ * Replayed records are flagged in place; a segment is deleted once it has no pending records left.
+ */
+@Component
+@Slf4j
+public class EmailSpool implements Closeable {
+
+    private static final int HEADER_SIZE = 9;
+    private static final int STATE_OFFSET = 8;
+    private static final byte PENDING = 0;
+    private static final byte REPLAYED = 1;
+    private static final byte FORMAT_VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private Segment active;
+
+    public EmailSpool(@Value("${mail.spool.dir:${java.io.tmpdir}/kitly-mail/spool}") String directory,
+                      @Value("${mail.spool.segment-size-bytes:16777216}") int segmentSize,
+                      @Value("${mail.spool.fsync:always}") String fsync) {
+        this.directory = Path.of(directory).toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.fsync = !"never".equalsIgnoreCase(fsync);
+        try {
+            Files.createDirectories(this.directory);
+            this.lockChannel = FileChannel.open(this.directory.resolve("spool.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.lock = tryLock(lockChannel);
+            if (lock == null) {
+                throw new IllegalStateException("Spool directory " + this.directory + " is used by another process");
+            }
+            try (Stream<Path> files = Files.list(this.directory)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                    Segment segment = openSegment(sequenceOf(file));
+                    segments.put(segment.sequence, segment);
+                    pending.addAndGet(segment.pendingRecords);
+                }
+            }
+            active = segments.isEmpty() ? newSegment(0) : segments.lastEntry().getValue();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open email spool in " + this.directory, e);
+        }
+        if (pending.get() > 0) {
+            log.warn("Email spool has {} emails waiting to be replayed", pending.get());
+        }
+    }
+
+    /**
+     * Append the email. Once this returns, the email survives a process crash (and, with fsync
+     * enabled, a power loss).
+     *
+     * @return The record, to be marked replayed once the email is stored elsewhere
+     */
+    public synchronized Entry append(SpooledEmail email) throws IOException {
+        byte[] payload = encode(email);
+        int size = HEADER_SIZE + payload.length;
+        if (size > segmentSize) {
+            throw new IOException("Email of " + payload.length + " bytes does not fit in a spool segment");
+        }
+        if (active.writePosition + size > active.buffer.capacity()) {
+            active = newSegment(active.sequence + 1);
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.writePosition;
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.put(position + STATE_OFFSET, PENDING);
+        buffer.putInt(position + 4, crc(payload));
+        if (fsync) {
+            buffer.force(position + 4, size - 4);
+        }
+        // The length makes the record visible, so it goes last
+        buffer.putInt(position, payload.length);
+        if (fsync) {
+            buffer.force(position, 4);
+        }
+        active.writePosition += size;
+        active.pendingRecords++;
+        pending.incrementAndGet();
+        return new Entry(active.sequence, position, email);
+    }
+
+    /**
+     * Oldest records not yet replayed, in append order.
+     */
+    public synchronized List<Entry> readPending(int max) {
+        List<Entry> entries = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.pendingRecords == 0) {
+                continue;
+            }
+            int position = 0;
+            while (position < segment.writePosition && entries.size() < max) {
+                int length = segment.buffer.getInt(position);
+                if (segment.buffer.get(position + STATE_OFFSET) == PENDING) {
+                    byte[] payload = new byte[length];
+                    segment.buffer.get(position + HEADER_SIZE, payload);
+                    entries.add(new Entry(segment.sequence, position, decode(payload)));
+                }
+                position += HEADER_SIZE + length;
+            }
+            if (entries.size() >= max) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    public synchronized void markReplayed(Entry entry) {
+        Segment segment = segments.get(entry.segment());
+        if (segment == null || segment.buffer.get(entry.offset() + STATE_OFFSET) == REPLAYED) {
+            return;
+        }
+        segment.buffer.put(entry.offset() + STATE_OFFSET, REPLAYED);
+        if (fsync) {
+            segment.buffer.force(entry.offset() + STATE_OFFSET, 1);
+        }
+        segment.pendingRecords--;
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Delete full segments whose records have all been replayed.
+     */
+    public synchronized void deleteReplayedSegments() {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment != active && segment.pendingRecords == 0) {
+                iterator.remove();
+                try {
+                    segment.channel.close();
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    log.warn("Could not delete spool segment {}", segment.path, e);
+                }
+            }
+        }
+    }
+
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    @PreDestroy
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+        lock.release();
+        lockChannel.close();
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private Segment newSegment(long sequence) throws IOException {
+        Segment segment = openSegment(sequence);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentSize);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        Segment segment = new Segment(sequence, path, channel, buffer);
+        recover(segment);
+        return segment;
+    }
+
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        boolean torn = false;
+        while (position + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.capacity() - position - HEADER_SIZE) {
+                torn = true;
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_SIZE, payload);
+            if (crc(payload) != buffer.getInt(position + 4)) {
+                torn = true;
+                break;
+            }
+            if (buffer.get(position + STATE_OFFSET) == PENDING) {
+                segment.pendingRecords++;
+            }
+            position += HEADER_SIZE + length;
+        }
+        segment.writePosition = position;
+        if (torn) {
+            log.warn("Discarding torn record at offset {} of spool segment {}", position, segment.path);
+            for (int i = position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static byte[] encode(SpooledEmail spooled) {
+        Email email = spooled.email();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            writeString(out, email.getMessageId());
+            writeString(out, email.getFromEmail());
+            writeString(out, email.getFromName());
+            writeString(out, email.getToEmail());
+            writeString(out, email.getToName());
+            writeString(out, email.getSubject());
+            writeString(out, email.getHtmlContent());
+            writeString(out, email.getTextContent());
+            writeString(out, email.getProvider());
+            writeString(out, email.getStatus() != null ? email.getStatus().name() : null);
+            writeString(out, email.getPriority() != null ? email.getPriority().name() : null);
+            writeString(out, email.getCreatedAt() != null ? email.getCreatedAt().toString() : null);
+            writeString(out, email.getSendAt() != null ? email.getSendAt().toString() : null);
+            out.writeInt(spooled.attachmentIds().size());
+            for (Long attachmentId : spooled.attachmentIds()) {
+                out.writeLong(attachmentId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static SpooledEmail decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unknown spool record format " + version);
+            }
+            Email email = Email.builder()
+                    .messageId(readString(in))
+                    .fromEmail(readString(in))
+                    .fromName(readString(in))
+                    .toEmail(readString(in))
+                    .toName(readString(in))
+                    .subject(readString(in))
+                    .htmlContent(readString(in))
+                    .textContent(readString(in))
+                    .provider(readString(in))
+                    .build();
+            String status = readString(in);
+            email.setStatus(status != null ? Email.EmailStatus.valueOf(status) : null);
+            String priority = readString(in);
+            email.setPriority(priority != null ? Email.Priority.valueOf(priority) : null);
+            String createdAt = readString(in);
+            email.setCreatedAt(createdAt != null ? LocalDateTime.parse(createdAt) : null);
+            String sendAt = readString(in);
+            email.setSendAt(sendAt != null ? LocalDateTime.parse(sendAt) : null);
+            int attachments = in.readInt();
+            List<Long> attachmentIds = new ArrayList<>(attachments);
+            for (int i = 0; i < attachments; i++) {
+                attachmentIds.add(in.readLong());
+            }
+            return new SpooledEmail(email, attachmentIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    public record SpooledEmail(Email email, List<Long> attachmentIds) {
+    }
+
+    public record Entry(long segment, int offset, SpooledEmail email) {
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int pendingRecords;
+
+        private Segment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
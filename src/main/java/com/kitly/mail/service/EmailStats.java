@@ -0,0 +1,33 @@
+package com.kitly.mail.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailStats {
+
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private EmailStatsService.Granularity granularity;
+    private Map<String, Long> totals;
+    private Map<String, Map<String, Long>> byProvider;
+    private List<Bucket> buckets;
+    private double failureRate;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Bucket {
+        private LocalDateTime start;
+        private Map<String, Long> counts;
+    }
+}
@@ -0,0 +1,140 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.model.EmailStatsRollup;
+import com.kitly.mail.repository.EmailStatsRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maintains hourly send counters per status and provider.
+ * <p>
+ * Every status transition moves one email from its previous status counter to the new one in the
+ * hour bucket of its creation time. Deltas are accumulated in memory and periodically added to the
+ * {@code email_stats_rollup} table, so queries only touch rollup rows and never scan {@code emails}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailStatsService implements EmailStatusListener {
+
+    static final String UNKNOWN_PROVIDER = "UNKNOWN";
+
+    private final EmailStatsRollupRepository rollupRepository;
+
+    private final ConcurrentMap<EmailStatsRollup.Key, Long> pendingDeltas = new ConcurrentHashMap<>();
+
+    public enum Granularity {
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    @Override
+    public void onStatusChange(Email email, Email.EmailStatus previousStatus) {
+        LocalDateTime bucket = bucketOf(email);
+        String provider = email.getProvider() != null ? email.getProvider() : UNKNOWN_PROVIDER;
+
+        if (previousStatus != null) {
+            pendingDeltas.merge(new EmailStatsRollup.Key(bucket, previousStatus.name(), provider), -1L, Long::sum);
+        }
+        pendingDeltas.merge(new EmailStatsRollup.Key(bucket, email.getStatus().name(), provider), 1L, Long::sum);
+    }
+
+    @Scheduled(fixedDelayString = "${mail.stats.flush-interval-ms:10000}")
+    public void flush() {
+        for (EmailStatsRollup.Key key : new ArrayList<>(pendingDeltas.keySet())) {
+            Long delta = pendingDeltas.remove(key);
+            if (delta == null || delta == 0) {
+                continue;
+            }
+            try {
+                addToRollup(key, delta);
+            } catch (RuntimeException e) {
+                // Keep the delta for the next flush rather than losing it
+                pendingDeltas.merge(key, delta, Long::sum);
+                log.warn("Failed to flush email stats rollup for {}", key, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    public EmailStats getStats(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        Map<EmailStatsRollup.Key, Long> counts = new HashMap<>();
+        for (EmailStatsRollup rollup : rollupRepository
+                .findByIdBucketStartGreaterThanEqualAndIdBucketStartLessThan(from, to)) {
+            counts.merge(rollup.getId(), rollup.getEmailCount(), Long::sum);
+        }
+        pendingDeltas.forEach((key, delta) -> {
+            if (!key.getBucketStart().isBefore(from) && key.getBucketStart().isBefore(to)) {
+                counts.merge(key, delta, Long::sum);
+            }
+        });
+
+        Map<String, Long> totals = new TreeMap<>();
+        Map<String, Map<String, Long>> byProvider = new TreeMap<>();
+        Map<LocalDateTime, Map<String, Long>> buckets = new TreeMap<>();
+
+        counts.forEach((key, count) -> {
+            if (count == 0) {
+                return;
+            }
+            totals.merge(key.getStatus(), count, Long::sum);
+            byProvider.computeIfAbsent(key.getProvider(), p -> new TreeMap<>())
+                    .merge(key.getStatus(), count, Long::sum);
+            buckets.computeIfAbsent(key.getBucketStart().truncatedTo(granularity.unit), b -> new TreeMap<>())
+                    .merge(key.getStatus(), count, Long::sum);
+        });
+
+        long sent = totals.getOrDefault(Email.EmailStatus.SENT.name(), 0L);
+        long failed = totals.getOrDefault(Email.EmailStatus.FAILED.name(), 0L);
+
+        return EmailStats.builder()
+                .from(from)
+                .to(to)
+                .granularity(granularity)
+                .totals(totals)
+                .byProvider(byProvider)
+                .buckets(buckets.entrySet().stream()
+                        .map(e -> new EmailStats.Bucket(e.getKey(), e.getValue()))
+                        .toList())
+                .failureRate(sent + failed == 0 ? 0.0 : (double) failed / (sent + failed))
+                .build();
+    }
+
+    private void addToRollup(EmailStatsRollup.Key key, long delta) {
+        if (rollupRepository.increment(key, delta) > 0) {
+            return;
+        }
+        try {
+            rollupRepository.insert(key.getBucketStart(), key.getStatus(), key.getProvider(), delta);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created the row concurrently
+            rollupRepository.increment(key, delta);
+        }
+    }
+
+    private static LocalDateTime bucketOf(Email email) {
+        LocalDateTime createdAt = email.getCreatedAt() != null ? email.getCreatedAt() : LocalDateTime.now();
+        return createdAt.truncatedTo(ChronoUnit.HOURS);
+    }
+}
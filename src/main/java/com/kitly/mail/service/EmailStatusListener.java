@@ -0,0 +1,18 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+
+/**
+ * Callback for components that need to observe email status transitions,
+ * such as statistics counters or caches.
+ */
+public interface EmailStatusListener {
+
+    /**
+     * Called after an email has been persisted with a new status.
+     *
+     * @param email          The email in its new state
+     * @param previousStatus The status before the transition, or {@code null} for newly created emails
+     */
+    void onStatusChange(Email email, Email.EmailStatus previousStatus);
+}
@@ -0,0 +1,179 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind journal for the final status of PENDING emails. Updates are buffered in a bounded
+ * queue and written as one JDBC batch every few milliseconds or every batch-size records, with
+ * repeated updates of the same email coalesced into one.
+ * <p>
+ * Buffered updates are lost if the process dies before a flush; the emails then stay PENDING until
+ * their lease expires and {@link PendingEmailRecovery} resolves them. Emails whose priority is listed
+ * in {@code mail.status-writer.durable-priorities} are flushed right away, together with whatever is
+ * already buffered, and the send is acknowledged only once they are committed.
+ */
+@Component
+@Slf4j
+public class EmailStatusWriter {
+
+    static final String UPDATE_SQL = "UPDATE emails SET status = ?, external_id = ?, error_message = ?, sent_at = ?, "
+            + "lease_owner = NULL, lease_expires_at = NULL, version = version + 1 WHERE id = ? AND status = 'PENDING'";
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Entry> journal;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Set<Email.Priority> durablePriorities = EnumSet.noneOf(Email.Priority.class);
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public EmailStatusWriter(JdbcTemplate jdbcTemplate,
+                             @Value("${mail.status-writer.capacity:10000}") int capacity,
+                             @Value("${mail.status-writer.batch-size:100}") int batchSize,
+                             @Value("${mail.status-writer.flush-interval-ms:5}") long flushIntervalMs,
+                             @Value("${mail.status-writer.durable-priorities:CRITICAL}") String durablePriorities) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.journal = new LinkedBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        for (String priority : durablePriorities.split(",")) {
+            if (!priority.isBlank()) {
+                this.durablePriorities.add(Email.Priority.valueOf(priority.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        this.flusher = new Thread(this::runFlusher, "status-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Record the final status of a PENDING email. Returns immediately unless the email's priority is
+     * durable, in which case it returns once the update is committed.
+     *
+     * @throws IllegalStateException if a durable update could not be written
+     */
+    public void write(Email email) {
+        boolean durable = durablePriorities.contains(email.getPriority());
+        Entry entry = new Entry(email.getId(), email.getStatus(), email.getExternalId(), email.getErrorMessage(),
+                email.getSentAt() != null ? Timestamp.valueOf(email.getSentAt()) : null, durable,
+                new CompletableFuture<>());
+        if (!running || !journal.offer(entry)) {
+            // Journal full or shutting down: write through on the caller's thread
+            flush(List.of(entry));
+        }
+        if (durable) {
+            try {
+                entry.written().join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Could not write status of email " + email.getId(), e.getCause());
+            }
+        }
+    }
+
+    public int pending() {
+        return journal.size();
+    }
+
+    private void runFlusher() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !journal.isEmpty()) {
+            try {
+                Entry first = journal.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                // A durable update has a caller waiting, so it cuts the wait short
+                boolean flushNow = first.durable();
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Entry next = remaining > 0 && !flushNow ? journal.poll(remaining, TimeUnit.NANOSECONDS) : journal.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    flushNow |= next.durable();
+                }
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // Shutdown: drain what is left
+                journal.drainTo(batch);
+                flush(batch);
+                batch.clear();
+                return;
+            }
+        }
+    }
+
+    private void flush(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Later updates of the same email replace earlier ones
+        Map<Long, Entry> latest = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            latest.put(entry.emailId(), entry);
+        }
+        List<Entry> rows = new ArrayList<>(latest.values());
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, rows, rows.size(), (statement, entry) -> {
+                    statement.setString(1, entry.status().name());
+                    statement.setString(2, entry.externalId());
+                    statement.setString(3, entry.errorMessage());
+                    statement.setTimestamp(4, entry.sentAt());
+                    statement.setLong(5, entry.emailId());
+                });
+                entries.forEach(entry -> entry.written().complete(null));
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    log.error("Dropping {} status updates after {} attempts; lease recovery will resolve them",
+                            rows.size(), attempt, e);
+                    entries.forEach(entry -> entry.written().completeExceptionally(e));
+                    return;
+                }
+                log.warn("Status update batch failed, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        // Anything written after the flusher stopped
+        List<Entry> rest = new ArrayList<>();
+        journal.drainTo(rest);
+        flush(rest);
+    }
+
+    private record Entry(Long emailId, Email.EmailStatus status, String externalId, String errorMessage,
+                         Timestamp sentAt, boolean durable, CompletableFuture<Void> written) {
+    }
+}
@@ -0,0 +1,460 @@
+package com.kitly.mail.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import org.jsoup.select.Selector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks HTML bodies before they are stored and sent: {@code <style>} rules are inlined into the
+ * elements they match, comments and redundant whitespace are removed, and a plain text alternative
+ * is derived for emails that have none.
+ * <p>
+ * Rules that cannot be inlined, such as {@code @media} queries and {@code :hover}, stay in one
+ * {@code <style>} element, as do Outlook's conditional comments. Results are cached by a hash of
+ * the input, so a template body sent over and over is processed once. Off unless
+ * {@code mail.html.preprocess} is set.
+ */
+@Component
+public class HtmlPreprocessor {
+
+    private static final Pattern DOCUMENT = Pattern.compile("<(!doctype|html|head|body)[\\s>]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern DYNAMIC_PSEUDO = Pattern.compile(
+            "::|:(hover|active|focus|focus-within|focus-visible|visited|link|target)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMBINATOR = Pattern.compile("\\s*[>+~]\\s*|\\s+");
+
+    private static final Set<String> PRESERVE_WHITESPACE = Set.of("pre", "textarea", "script", "style");
+    // Whitespace between the children of these elements is never rendered
+    private static final Set<String> STRUCTURAL = Set.of(
+            "html", "head", "table", "thead", "tbody", "tfoot", "tr", "ul", "ol", "select", "colgroup");
+    private static final Set<String> BLOCK = Set.of(
+            "address", "article", "aside", "center", "div", "dl", "dt", "dd", "fieldset", "figure", "footer",
+            "form", "header", "li", "main", "nav", "section", "tr");
+    private static final Set<String> PARAGRAPH = Set.of(
+            "blockquote", "h1", "h2", "h3", "h4", "h5", "h6", "ol", "p", "pre", "table", "ul");
+
+    private final boolean enabled;
+    private final Cache<String, Result> cache;
+
+    public HtmlPreprocessor(@Value("${mail.html.preprocess:false}") boolean enabled,
+                            @Value("${mail.html.cache.max-size-mb:32}") long maxSizeMb,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                // Two bytes per char, plus the key and entry overhead
+                .weigher((String key, Result result) -> 2 * (result.html().length() + result.text().length()) + 256)
+                .recordStats()
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "htmlPreprocessor"));
+    }
+
+    /**
+     * Replace the HTML body of the email with its processed form, and fill in the text body from it
+     * if the email has none. Does nothing if preprocessing is off or the email has no HTML.
+     */
+    public void prepare(Email email) {
+        if (!enabled || email.getHtmlContent() == null || email.getHtmlContent().isBlank()) {
+            return;
+        }
+        Result result = process(email.getHtmlContent());
+        email.setHtmlContent(result.html());
+        if ((email.getTextContent() == null || email.getTextContent().isBlank()) && !result.text().isEmpty()) {
+            email.setTextContent(result.text());
+        }
+    }
+
+    public Result process(String html) {
+        return cache.get(sha256(html), key -> transform(html));
+    }
+
+    static Result transform(String html) {
+        Document document = Jsoup.parse(html);
+        document.outputSettings()
+                .prettyPrint(false)
+                .charset(StandardCharsets.UTF_8);
+
+        String retainedCss = inlineStyles(document);
+        removeComments(document);
+        collapseWhitespace(document);
+        String text = toText(document.body());
+
+        String minified;
+        if (DOCUMENT.matcher(html).find()) {
+            if (!retainedCss.isEmpty()) {
+                document.head().appendElement("style").appendChild(new DataNode(retainedCss));
+            }
+            minified = document.outerHtml();
+        } else {
+            minified = (retainedCss.isEmpty() ? "" : "<style>" + retainedCss + "</style>") + document.body().html().strip();
+        }
+        return new Result(minified, text);
+    }
+
+    /**
+     * Move the declarations of every {@code <style>} rule into the style attribute of the elements it
+     * matches, by specificity and then source order. Declarations already in a style attribute win
+     * over the stylesheet unless those are {@code !important}.
+     *
+     * @return The rules that could not be inlined
+     */
+    private static String inlineStyles(Document document) {
+        Elements styles = document.select("style");
+        StringBuilder css = new StringBuilder();
+        for (Element style : styles) {
+            css.append(style.data()).append('\n');
+        }
+        styles.remove();
+        if (css.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder retained = new StringBuilder();
+        List<Match> matches = new ArrayList<>();
+        int order = 0;
+        for (Rule rule : parseRules(CSS_COMMENT.matcher(css).replaceAll(""))) {
+            if (rule.selectors().startsWith("@")) {
+                retained.append(rule.selectors()).append('{').append(rule.body()).append('}');
+                continue;
+            }
+            List<Declaration> declarations = parseDeclarations(rule.body());
+            for (String selector : splitTopLevel(rule.selectors(), ',')) {
+                Elements elements = null;
+                if (!DYNAMIC_PSEUDO.matcher(selector).find()) {
+                    try {
+                        elements = document.select(selector);
+                    } catch (Selector.SelectorParseException e) {
+                        // Not a selector jsoup understands, leave it to the mail client
+                    }
+                }
+                if (elements == null) {
+                    retained.append(selector).append('{').append(rule.body().strip()).append('}');
+                    continue;
+                }
+                int specificity = specificity(selector);
+                for (Element element : elements) {
+                    matches.add(new Match(element, specificity, order++, declarations));
+                }
+            }
+        }
+
+        Map<Element, List<Match>> byElement = new IdentityHashMap<>();
+        for (Match match : matches) {
+            byElement.computeIfAbsent(match.element(), element -> new ArrayList<>()).add(match);
+        }
+        byElement.forEach((element, elementMatches) -> {
+            elementMatches.sort(Comparator.comparingInt(Match::specificity).thenComparingInt(Match::order));
+            Map<String, Declaration> normal = new LinkedHashMap<>();
+            Map<String, Declaration> important = new LinkedHashMap<>();
+            for (Match match : elementMatches) {
+                for (Declaration declaration : match.declarations()) {
+                    (declaration.important() ? important : normal).put(declaration.property(), declaration);
+                }
+            }
+            for (Declaration declaration : parseDeclarations(element.attr("style"))) {
+                if (!important.containsKey(declaration.property())) {
+                    normal.put(declaration.property(), declaration);
+                }
+            }
+            normal.putAll(important);
+            StringBuilder style = new StringBuilder();
+            for (Declaration declaration : normal.values()) {
+                if (!style.isEmpty()) {
+                    style.append(';');
+                }
+                style.append(declaration.property()).append(':').append(declaration.value());
+            }
+            element.attr("style", style.toString());
+        });
+        return retained.toString();
+    }
+
+    /**
+     * Split a stylesheet into its top level rules; an at-rule keeps its nested block as its body.
+     */
+    static List<Rule> parseRules(String css) {
+        List<Rule> rules = new ArrayList<>();
+        int start = 0;
+        while (start < css.length()) {
+            int open = css.indexOf('{', start);
+            if (open < 0) {
+                break;
+            }
+            int depth = 1;
+            int close = open + 1;
+            while (close < css.length() && depth > 0) {
+                char c = css.charAt(close);
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+                close++;
+            }
+            String selectors = css.substring(start, open).strip();
+            // A statement at-rule such as @import ends at its semicolon, before the next rule
+            int statement = selectors.lastIndexOf(';');
+            if (statement >= 0) {
+                selectors = selectors.substring(statement + 1).strip();
+            }
+            if (!selectors.isEmpty()) {
+                rules.add(new Rule(selectors, css.substring(open + 1, depth == 0 ? close - 1 : close)));
+            }
+            start = close;
+        }
+        return rules;
+    }
+
+    static List<Declaration> parseDeclarations(String body) {
+        List<Declaration> declarations = new ArrayList<>();
+        for (String part : splitTopLevel(body, ';')) {
+            int colon = part.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String property = part.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = WHITESPACE.matcher(part.substring(colon + 1).strip()).replaceAll(" ");
+            if (!property.isEmpty() && !value.isEmpty()) {
+                declarations.add(new Declaration(property, value,
+                        value.toLowerCase(Locale.ROOT).replace(" ", "").endsWith("!important")));
+            }
+        }
+        return declarations;
+    }
+
+    /**
+     * CSS specificity folded into one number: ids, then classes, attributes and pseudo-classes,
+     * then element names.
+     */
+    static int specificity(String selector) {
+        int ids = 0;
+        int classes = 0;
+        int elements = 0;
+        for (String compound : COMBINATOR.split(selector.strip())) {
+            if (compound.isEmpty()) {
+                continue;
+            }
+            if (Character.isLetter(compound.charAt(0))) {
+                elements++;
+            }
+            for (int i = 0; i < compound.length(); i++) {
+                switch (compound.charAt(i)) {
+                    case '#' -> ids++;
+                    case '.', '[', ':' -> classes++;
+                    default -> {
+                    }
+                }
+            }
+        }
+        return ids * 10_000 + classes * 100 + elements;
+    }
+
+    /**
+     * Split on the separator wherever it is outside parentheses and quotes, so that
+     * {@code url(data:...;base64,...)} and {@code :not(a, b)} stay whole.
+     */
+    private static List<String> splitTopLevel(String value, char separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (c == separator && depth == 0) {
+                addPart(parts, value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        addPart(parts, value.substring(start));
+        return parts;
+    }
+
+    private static void addPart(List<String> parts, String part) {
+        String stripped = part.strip();
+        if (!stripped.isEmpty()) {
+            parts.add(stripped);
+        }
+    }
+
+    /**
+     * Remove comments, except Outlook's conditional comments.
+     */
+    private static void removeComments(Document document) {
+        List<Node> comments = new ArrayList<>();
+        NodeTraversor.traverse((node, depth) -> {
+            if (node instanceof Comment comment) {
+                String data = comment.getData().strip();
+                if (!data.startsWith("[if") && !data.startsWith("<![endif]") && !data.startsWith("[endif]")) {
+                    comments.add(node);
+                }
+            }
+        }, document);
+        comments.forEach(Node::remove);
+    }
+
+    private static void collapseWhitespace(Document document) {
+        List<TextNode> blank = new ArrayList<>();
+        NodeTraversor.traverse((node, depth) -> {
+            if (!(node instanceof TextNode text) || preservesWhitespace(text)) {
+                return;
+            }
+            if (text.isBlank() && text.parent() != null && STRUCTURAL.contains(text.parent().normalName())) {
+                blank.add(text);
+            } else {
+                String collapsed = WHITESPACE.matcher(text.getWholeText()).replaceAll(" ");
+                // Removed comments can leave two text nodes side by side
+                if (collapsed.startsWith(" ") && text.previousSibling() instanceof TextNode previous
+                        && previous.getWholeText().endsWith(" ")) {
+                    collapsed = collapsed.substring(1);
+                }
+                text.text(collapsed);
+            }
+        }, document);
+        blank.forEach(Node::remove);
+    }
+
+    private static boolean preservesWhitespace(Node node) {
+        for (Node parent = node.parentNode(); parent != null; parent = parent.parentNode()) {
+            if (parent instanceof Element element && PRESERVE_WHITESPACE.contains(element.normalName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Render the body as plain text: blocks on their own lines, paragraphs separated by a blank line,
+     * list items with a dash, and links followed by their address.
+     */
+    static String toText(Element body) {
+        StringBuilder out = new StringBuilder();
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode text) {
+                    String value = preservesWhitespace(text) ? text.getWholeText() : WHITESPACE.matcher(text.text()).replaceAll(" ");
+                    if (value.startsWith(" ") && (out.isEmpty() || Character.isWhitespace(out.charAt(out.length() - 1)))) {
+                        value = value.substring(1);
+                    }
+                    out.append(value);
+                } else if (node instanceof Element element) {
+                    String name = element.normalName();
+                    if (name.equals("br")) {
+                        out.append('\n');
+                    } else if (name.equals("li")) {
+                        newLines(out, 1);
+                        out.append("- ");
+                    } else if (name.equals("hr")) {
+                        newLines(out, 2);
+                    } else if ((name.equals("td") || name.equals("th")) && element.elementSiblingIndex() > 0) {
+                        out.append(' ');
+                    } else if (PARAGRAPH.contains(name)) {
+                        newLines(out, 2);
+                    } else if (BLOCK.contains(name)) {
+                        newLines(out, 1);
+                    }
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (!(node instanceof Element element)) {
+                    return;
+                }
+                String name = element.normalName();
+                if (name.equals("a")) {
+                    String href = element.attr("href");
+                    if ((href.startsWith("http:") || href.startsWith("https:")) && !element.text().strip().equals(href)) {
+                        out.append(" (").append(href).append(')');
+                    }
+                } else if (PARAGRAPH.contains(name)) {
+                    newLines(out, 2);
+                } else if (BLOCK.contains(name)) {
+                    newLines(out, 1);
+                }
+            }
+        }, body);
+
+        StringBuilder text = new StringBuilder();
+        for (String line : out.toString().split("\n", -1)) {
+            text.append(line.strip()).append('\n');
+        }
+        return text.toString().replaceAll("\n{3,}", "\n\n").strip();
+    }
+
+    private static void newLines(StringBuilder out, int count) {
+        if (out.isEmpty()) {
+            return;
+        }
+        int trailing = 0;
+        for (int i = out.length() - 1; i >= 0 && out.charAt(i) == '\n'; i--) {
+            trailing++;
+        }
+        out.append("\n".repeat(Math.max(0, count - trailing)));
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Processed HTML body and the plain text derived from it.
+     */
+    public record Result(String html, String text) {
+    }
+
+    record Rule(String selectors, String body) {
+    }
+
+    record Declaration(String property, String value, boolean important) {
+    }
+
+    private record Match(Element element, int specificity, int order, List<Declaration> declarations) {
+    }
+}
@@ -0,0 +1,203 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the send pipeline. Every event carries the email id and message id,
+ * so a recording filtered on either gives the timeline of one message next to the GC, thread park
+ * and socket events of the same period.
+ * <p>
+ * The events are disabled until a recording enables them, e.g. with the bundled settings:
+ * {@code jcmd <pid> JFR.start settings=default,/app/kitly-mail.jfc}. While disabled, emitting one
+ * costs little more than a field check.
+ */
+public final class MailEvents {
+
+    static final String CATEGORY = "Kitly Mail";
+
+    private MailEvents() {
+    }
+
+    /**
+     * The service took a new email: from entry until it was stored and handed to dispatch, the
+     * scheduler or the claim poller.
+     */
+    @Name("com.kitly.mail.EmailAccepted")
+    @Label("Email Accepted")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class EmailAccepted extends Event {
+
+        @Label("Email ID")
+        long emailId;
+
+        @Label("Message ID")
+        String messageId;
+
+        @Label("Status")
+        @Description("Status the email was accepted with")
+        String status;
+
+        @Label("Priority")
+        String priority;
+
+        EmailAccepted() {
+            begin();
+        }
+
+        void finish(Email email) {
+            if (shouldCommit()) {
+                emailId = id(email);
+                messageId = email.getMessageId();
+                status = name(email.getStatus());
+                priority = name(email.getPriority());
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A write of an email to the database: its insert, or a status update through the write-behind
+     * journal.
+     */
+    @Name("com.kitly.mail.EmailPersisted")
+    @Label("Email Persisted")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class EmailPersisted extends Event {
+
+        @Label("Email ID")
+        long emailId;
+
+        @Label("Message ID")
+        String messageId;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        EmailPersisted(String operation) {
+            this.operation = operation;
+            begin();
+        }
+
+        void finish(Email email, boolean succeeded) {
+            if (shouldCommit()) {
+                emailId = id(email);
+                messageId = email.getMessageId();
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One request to the mail provider, from the start of the request until its response.
+     */
+    @Name("com.kitly.mail.ProviderRequest")
+    @Label("Provider Request")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class ProviderRequest extends Event {
+
+        @Label("Provider")
+        String provider;
+
+        @Label("Email ID")
+        long emailId;
+
+        @Label("Message ID")
+        String messageId;
+
+        @Label("Status Code")
+        @Description("HTTP status of the provider's response, or the SMTP reply code; 0 if there was none")
+        int statusCode;
+
+        @Label("Payload Size")
+        @DataAmount
+        long payloadSize;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        private ProviderRequest(String provider, Email email) {
+            this.provider = provider;
+            this.emailId = id(email);
+            this.messageId = email.getMessageId();
+            begin();
+        }
+
+        public static ProviderRequest start(String provider, Email email) {
+            return new ProviderRequest(provider, email);
+        }
+
+        public void payloadSize(long bytes) {
+            this.payloadSize = bytes;
+        }
+
+        public void statusCode(int code) {
+            this.statusCode = code;
+        }
+
+        public void finish(boolean succeeded) {
+            if (shouldCommit()) {
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * An email moved from one status to another, or was created with its first status.
+     */
+    @Name("com.kitly.mail.StatusTransition")
+    @Label("Email Status Transition")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class StatusTransition extends Event {
+
+        @Label("Email ID")
+        long emailId;
+
+        @Label("Message ID")
+        String messageId;
+
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Provider")
+        String provider;
+
+        static void emit(Email email, Email.EmailStatus previousStatus) {
+            StatusTransition event = new StatusTransition();
+            if (event.shouldCommit()) {
+                event.emailId = id(email);
+                event.messageId = email.getMessageId();
+                event.from = name(previousStatus);
+                event.to = name(email.getStatus());
+                event.provider = email.getProvider();
+                event.commit();
+            }
+        }
+    }
+
+    private static long id(Email email) {
+        return email.getId() != null ? email.getId() : 0;
+    }
+
+    private static String name(Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.kitly.mail.service;
+
+/**
+ * Names of the observations recorded around a send, and of their key values. With tracing enabled,
+ * each observation becomes a span; the low cardinality keys also tag the matching timers.
+ */
+public final class MailObservations {
+
+    /**
+     * A send request, from the controller until the response is ready.
+     */
+    public static final String SEND = "mail.send";
+
+    /**
+     * A database call on the send path, tagged with {@link #DB_OPERATION}.
+     */
+    public static final String DB = "mail.db";
+
+    /**
+     * Time a delivery waited for its domain shard and dispatch lane.
+     */
+    public static final String DISPATCH_QUEUE = "mail.dispatch.queue";
+
+    /**
+     * The provider call of a delivery.
+     */
+    public static final String PROVIDER_SEND = "mail.provider.send";
+
+    public static final String EMAIL_ID = "email.id";
+    public static final String PROVIDER = "mail.provider";
+    public static final String PRIORITY = "mail.priority";
+    public static final String OUTCOME = "outcome";
+    public static final String DB_OPERATION = "db.operation";
+
+    private MailObservations() {
+    }
+}
@@ -17,6 +17,27 @@ public interface MailProvider {
      */
     String sendEmail(Email email) throws MailProviderException;
 
+    /**
+     * Look up whether an earlier attempt to send this email reached the provider, using the
+     * external id or the client-generated {@link Email#getMessageId()} sent with the request.
+     *
+     * @param email The email whose delivery outcome was lost
+     * @return The delivery state, {@link DeliveryLookup.State#UNKNOWN} if the provider cannot tell
+     */
+    default DeliveryLookup lookupDelivery(Email email) {
+        return DeliveryLookup.unknown();
+    }
+
+    /**
+     * Whether sending the same email again is deduplicated by the provider based on
+     * {@link Email#getMessageId()}, making a retry of an unknown outcome safe.
+     *
+     * @return {@code true} if retries are idempotent
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
+
     /**
      * Get the name of this provider.
      *
@@ -0,0 +1,65 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Background dispatch of PENDING emails that no instance is working on, e.g. emails released by
+ * other components without a lease or whose lease has expired. Claims batches through
+ * {@link EmailClaimService} while the domain backlogs and dispatch lanes have room for them.
+ */
+@Component
+@ConditionalOnProperty(name = "mail.claim.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class PendingEmailPoller {
+
+    private final EmailClaimService claimService;
+    private final EmailService emailService;
+    private final DomainDispatcher dispatcher;
+    private final int batchSize;
+    private final int maxQueued;
+
+    public PendingEmailPoller(EmailClaimService claimService,
+                              EmailService emailService,
+                              DomainDispatcher dispatcher,
+                              @Value("${mail.claim.batch-size:100}") int batchSize,
+                              @Value("${mail.claim.max-queued:1000}") int maxQueued) {
+        this.claimService = claimService;
+        this.emailService = emailService;
+        this.dispatcher = dispatcher;
+        this.batchSize = batchSize;
+        this.maxQueued = maxQueued;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.claim.poll-interval-ms:1000}")
+    public void poll() {
+        int claimed;
+        boolean rejected = false;
+        do {
+            int room = Math.min(batchSize, maxQueued - dispatcher.queued());
+            if (room <= 0) {
+                return;
+            }
+            List<Email> batch = claimService.claimBatch(room);
+            for (Email email : batch) {
+                try {
+                    dispatcher.submit(email, () -> emailService.deliver(email));
+                } catch (RejectedExecutionException e) {
+                    // Hand the email back, claimBatch only takes emails without a lease
+                    claimService.release(email);
+                    rejected = true;
+                    log.warn("Dispatch backlog full, released claimed email {} for a later pass", email.getId());
+                }
+            }
+            claimed = batch.size();
+            // Stop the pass on a full backlog, the next claim would only take the released emails again
+        } while (claimed == batchSize && !rejected);
+    }
+}
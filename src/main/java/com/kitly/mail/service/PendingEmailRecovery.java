@@ -0,0 +1,87 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Resolves PENDING emails whose lease expired, typically because the owning instance died between
+ * persisting the email and recording the provider's answer.
+ * <p>
+ * Expired rows are claimed in batches through the partial lease index (never a full scan) and
+ * reconciled with the provider: emails the provider accepted are marked SENT, emails it has no
+ * record of are released to be claimed and sent again. When the provider cannot tell, the email is
+ * only re-sent if the provider deduplicates by message id; otherwise it is marked FAILED rather than
+ * risking a duplicate.
+ */
+@Component
+@ConditionalOnProperty(name = "mail.recovery.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class PendingEmailRecovery {
+
+    static final String UNKNOWN_OUTCOME = "Delivery outcome unknown after lease expiry";
+
+    private final EmailClaimService claimService;
+    private final EmailService emailService;
+    private final MailProvider mailProvider;
+    private final int batchSize;
+    private final int maxPerRun;
+
+    public PendingEmailRecovery(EmailClaimService claimService,
+                                EmailService emailService,
+                                MailProvider mailProvider,
+                                @Value("${mail.recovery.batch-size:100}") int batchSize,
+                                @Value("${mail.recovery.max-per-run:10000}") int maxPerRun) {
+        this.claimService = claimService;
+        this.emailService = emailService;
+        this.mailProvider = mailProvider;
+        this.batchSize = batchSize;
+        this.maxPerRun = maxPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.recovery.interval-ms:60000}")
+    public void sweep() {
+        int recovered = 0;
+        List<Email> batch;
+        do {
+            batch = claimService.claimExpiredBatch(batchSize);
+            for (Email email : batch) {
+                try {
+                    recover(email);
+                } catch (RuntimeException e) {
+                    // Our lease expires and the email is picked up by a later sweep
+                    log.error("Failed to recover pending email {}", email.getId(), e);
+                }
+            }
+            recovered += batch.size();
+        } while (batch.size() == batchSize && recovered < maxPerRun);
+
+        if (recovered > 0) {
+            log.info("Recovered {} pending emails with expired leases", recovered);
+        }
+    }
+
+    void recover(Email email) {
+        DeliveryLookup lookup = mailProvider.lookupDelivery(email);
+        switch (lookup.getState()) {
+            case DELIVERED -> {
+                emailService.markSent(email, lookup.getExternalId());
+                log.info("Email {} was already delivered, marked as sent", email.getId());
+            }
+            case NOT_FOUND -> claimService.release(email);
+            case UNKNOWN -> {
+                if (mailProvider.isIdempotent()) {
+                    claimService.release(email);
+                } else {
+                    emailService.markFailed(email, UNKNOWN_OUTCOME);
+                    log.warn("Delivery outcome of email {} is unknown, marked as failed", email.getId());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs delivery tasks on a fixed worker pool with one bounded lane per {@link Email.Priority}.
+ * <p>
+ * Workers drain the lanes with smooth weighted round-robin, so a lane with weight 16 gets 16 of
+ * every 21 dispatch slots against weights 4 and 1 while all lanes are busy, and an idle lane never
+ * holds back the others. A configurable number of workers only serve the CRITICAL lane, so
+ * critical mail never waits for a slow bulk delivery to finish.
+ * <p>
+ * On shutdown, running tasks get up to {@code mail.dispatch.shutdown-timeout-ms} to finish, so a
+ * provider call in flight is not cut off into a false failure. Tasks still waiting in a lane fail
+ * with a {@link RejectedExecutionException}; their emails keep their lease and are picked up by
+ * lease recovery.
+ */
+@Component
+@Slf4j
+public class PriorityDispatcher {
+
+    private final Map<Email.Priority, Lane> lanes = new EnumMap<>(Email.Priority.class);
+    private final int laneCapacity;
+    private final long shutdownTimeoutMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final AtomicLong averageTaskNanos = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition anyAvailable = lock.newCondition();
+    private final Condition criticalAvailable = lock.newCondition();
+    private volatile boolean running = true;
+
+    public PriorityDispatcher(@Value("${mail.dispatch.workers:16}") int workerCount,
+                              @Value("${mail.dispatch.reserved-critical-workers:2}") int reservedCriticalWorkers,
+                              @Value("${mail.dispatch.lane-capacity:10000}") int laneCapacity,
+                              @Value("${mail.dispatch.weights.critical:16}") int criticalWeight,
+                              @Value("${mail.dispatch.weights.transactional:4}") int transactionalWeight,
+                              @Value("${mail.dispatch.weights.bulk:1}") int bulkWeight,
+                              @Value("${mail.dispatch.shutdown-timeout-ms:30000}") long shutdownTimeoutMs) {
+        if (reservedCriticalWorkers >= workerCount) {
+            throw new IllegalArgumentException("At least one worker must serve all lanes");
+        }
+        this.laneCapacity = laneCapacity;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        lanes.put(Email.Priority.CRITICAL, new Lane(criticalWeight));
+        lanes.put(Email.Priority.TRANSACTIONAL, new Lane(transactionalWeight));
+        lanes.put(Email.Priority.BULK, new Lane(bulkWeight));
+
+        for (int i = 0; i < workerCount; i++) {
+            boolean criticalOnly = i < reservedCriticalWorkers;
+            Thread worker = new Thread(() -> runWorker(criticalOnly),
+                    (criticalOnly ? "dispatch-critical-" : "dispatch-") + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Queue a task on the lane for the given priority.
+     *
+     * @throws RejectedExecutionException if the lane is full or the dispatcher is shut down
+     */
+    public <T> CompletableFuture<T> submit(Email.Priority priority, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Job job = new Job(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, future);
+
+        lock.lock();
+        try {
+            Lane lane = lanes.get(priority);
+            if (!running) {
+                throw new RejectedExecutionException("Dispatcher is shut down");
+            }
+            if (lane.queue.size() >= laneCapacity) {
+                throw new RejectedExecutionException("Dispatch lane " + priority + " is full");
+            }
+            lane.queue.addLast(job);
+            if (priority == Email.Priority.CRITICAL) {
+                criticalAvailable.signal();
+            }
+            anyAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * @return The number of tasks waiting in the lane for the given priority
+     */
+    public int queued(Email.Priority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority).queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting across all lanes
+     */
+    public int queued() {
+        lock.lock();
+        try {
+            return lanes.values().stream().mapToInt(lane -> lane.queue.size()).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of workers currently running a task
+     */
+    public int busy() {
+        return busyWorkers.get();
+    }
+
+    public int workerCount() {
+        return workers.size();
+    }
+
+    /**
+     * @return Moving average of task run time in milliseconds, i.e. recent provider latency, or
+     * {@code 0} before the first task has finished
+     */
+    public double averageTaskMillis() {
+        return averageTaskNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Stop taking tasks, fail the queued ones and wait for the running ones to finish. Workers still
+     * busy after the timeout are interrupted.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Job> dropped = new ArrayList<>();
+        lock.lock();
+        try {
+            running = false;
+            lanes.values().forEach(lane -> {
+                dropped.addAll(lane.queue);
+                lane.queue.clear();
+            });
+            // Only idle workers wait on these; busy ones exit after their task
+            anyAvailable.signalAll();
+            criticalAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        RejectedExecutionException shutDown = new RejectedExecutionException("Dispatcher shut down before the task started");
+        dropped.forEach(job -> job.future.completeExceptionally(shutDown));
+        if (!dropped.isEmpty()) {
+            log.warn("Dropped {} queued dispatch tasks on shutdown, lease recovery will pick up their emails", dropped.size());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        try {
+            for (Thread worker : workers) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs > 0) {
+                    worker.join(remainingMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long stillBusy = workers.stream().filter(Thread::isAlive).count();
+        if (stillBusy > 0) {
+            log.warn("{} dispatch workers still busy after {} ms, interrupting them", stillBusy, shutdownTimeoutMs);
+            workers.forEach(Thread::interrupt);
+        }
+    }
+
+    private void runWorker(boolean criticalOnly) {
+        while (true) {
+            Job job;
+            try {
+                job = take(criticalOnly);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (job == null) {
+                return;
+            }
+            busyWorkers.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                job.body.run();
+            } catch (RuntimeException e) {
+                log.error("Dispatch task failed", e);
+            } finally {
+                busyWorkers.decrementAndGet();
+                recordTaskTime(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average with a weight of 1/8 for the newest sample.
+     */
+    private void recordTaskTime(long nanos) {
+        averageTaskNanos.updateAndGet(average -> average == 0 ? nanos : average + (nanos - average) / 8);
+    }
+
+    /**
+     * @return The next task, or {@code null} once the dispatcher is shut down
+     */
+    private Job take(boolean criticalOnly) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (!running) {
+                    return null;
+                }
+                if (criticalOnly) {
+                    Lane critical = lanes.get(Email.Priority.CRITICAL);
+                    if (!critical.queue.isEmpty()) {
+                        return critical.queue.pollFirst();
+                    }
+                    criticalAvailable.await();
+                } else {
+                    Lane lane = selectLane();
+                    if (lane != null) {
+                        return lane.queue.pollFirst();
+                    }
+                    anyAvailable.await();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Smooth weighted round-robin over the non-empty lanes. Must be called with the lock held.
+     */
+    private Lane selectLane() {
+        Lane selected = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.queue.isEmpty()) {
+                lane.currentWeight = 0;
+                continue;
+            }
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight) {
+                selected = lane;
+            }
+        }
+        if (selected != null) {
+            selected.currentWeight -= totalWeight;
+        }
+        return selected;
+    }
+
+    private static final class Lane {
+        private final int weight;
+        private final ArrayDeque<Job> queue = new ArrayDeque<>();
+        private int currentWeight;
+
+        private Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private record Job(Runnable body, CompletableFuture<?> future) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keeps the leases of emails waiting in the domain backlogs alive. A throttled domain can hold an
+ * email far longer than a lease runs, e.g. 5000 emails at 5 per second take over 15 minutes, and an
+ * expired lease would hand the email to recovery while it is still queued here.
+ * <p>
+ * Each pass renews the leases that would otherwise run out before the next pass but one, so every
+ * waiting email costs one update per few passes.
+ */
+@Component
+@Slf4j
+public class QueuedLeaseRenewer {
+
+    private final EmailClaimService claimService;
+    private final DomainDispatcher dispatcher;
+    private final long renewIntervalMs;
+
+    public QueuedLeaseRenewer(EmailClaimService claimService,
+                              DomainDispatcher dispatcher,
+                              @Value("${mail.claim.renew-interval-ms:60000}") long renewIntervalMs,
+                              @Value("${mail.claim.lease-seconds:300}") long leaseSeconds) {
+        if (renewIntervalMs * 2 >= leaseSeconds * 1000) {
+            throw new IllegalArgumentException("mail.claim.renew-interval-ms must be less than half the lease");
+        }
+        this.claimService = claimService;
+        this.dispatcher = dispatcher;
+        this.renewIntervalMs = renewIntervalMs;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.claim.renew-interval-ms:60000}",
+            initialDelayString = "${mail.claim.renew-interval-ms:60000}")
+    public void renew() {
+        List<Email> waiting = dispatcher.waiting();
+        LocalDateTime renewBefore = LocalDateTime.now().plusNanos(renewIntervalMs * 2 * 1_000_000);
+        int renewed = 0;
+        int lost = 0;
+        for (Email email : waiting) {
+            LocalDateTime leaseExpiresAt = email.getLeaseExpiresAt();
+            if (leaseExpiresAt != null && leaseExpiresAt.isAfter(renewBefore)) {
+                continue;
+            }
+            if (claimService.renew(email)) {
+                renewed++;
+            } else {
+                // Delivery skips it, the new owner takes care of the email
+                lost++;
+            }
+        }
+        if (lost > 0) {
+            log.warn("Lost the lease on {} queued emails", lost);
+        }
+        log.debug("Renewed the lease on {} of {} queued emails", renewed, waiting.size());
+    }
+}
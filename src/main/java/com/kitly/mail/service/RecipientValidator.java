@@ -0,0 +1,242 @@
+package com.kitly.mail.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks recipient addresses before anything is stored or sent, in three stages: the syntax of the
+ * address, which is normalised on the way; a list of disposable mailbox domains; and whether the
+ * domain accepts mail at all, asked of the {@link DomainResolver}.
+ * <p>
+ * Domain lookups are cached per domain: domains that accept mail for {@code mail.recipients.cache.ttl-minutes},
+ * domains that do not for {@code mail.recipients.cache.negative-ttl-minutes}. Lookups that fail
+ * are not cached, and the address is accepted; the provider remains the final judge.
+ */
+@Component
+@Slf4j
+public class RecipientValidator {
+
+    static final String DISPOSABLE_DOMAINS = "/disposable-domains.txt";
+
+    // RFC 5322 atext, plus any non-ASCII character for internationalised local parts
+    private static final Pattern LOCAL_PART = Pattern.compile("[A-Za-z0-9!#$%&'*+/=?^_`{|}~\\-\\P{ASCII}]+(\\.[A-Za-z0-9!#$%&'*+/=?^_`{|}~\\-\\P{ASCII}]+)*");
+    private static final Pattern LABEL = Pattern.compile("[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?");
+
+    public enum Reason {
+        SYNTAX, DISPOSABLE_DOMAIN, NO_MAIL_DOMAIN
+    }
+
+    private final DomainResolver resolver;
+    private final boolean rejectDisposable;
+    private final boolean checkDomain;
+    private final Set<String> disposableDomains;
+    private final Cache<String, DomainResolver.Route> routes;
+    private final Map<Reason, Counter> rejections = new EnumMap<>(Reason.class);
+
+    @Autowired
+    public RecipientValidator(DomainResolver resolver,
+                              @Value("${mail.recipients.reject-disposable:true}") boolean rejectDisposable,
+                              @Value("${mail.recipients.check-domain:true}") boolean checkDomain,
+                              @Value("${mail.recipients.disposable-domains:}") List<String> extraDisposableDomains,
+                              @Value("${mail.recipients.cache.ttl-minutes:60}") long ttlMinutes,
+                              @Value("${mail.recipients.cache.negative-ttl-minutes:10}") long negativeTtlMinutes,
+                              @Value("${mail.recipients.cache.max-size:100000}") long maxSize,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this(resolver, rejectDisposable, checkDomain, extraDisposableDomains,
+                Duration.ofMinutes(ttlMinutes), Duration.ofMinutes(negativeTtlMinutes), maxSize, Ticker.systemTicker());
+        meterRegistry.ifAvailable(this::bindTo);
+    }
+
+    RecipientValidator(DomainResolver resolver, boolean rejectDisposable, boolean checkDomain,
+                       List<String> extraDisposableDomains, Duration ttl, Duration negativeTtl, long maxSize,
+                       Ticker ticker) {
+        this.resolver = resolver;
+        this.rejectDisposable = rejectDisposable;
+        this.checkDomain = checkDomain;
+        this.disposableDomains = loadDisposableDomains();
+        extraDisposableDomains.stream()
+                .map(domain -> domain.trim().toLowerCase(Locale.ROOT))
+                .filter(domain -> !domain.isEmpty())
+                .forEach(disposableDomains::add);
+        this.routes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<String, DomainResolver.Route>creating((domain, route) ->
+                        route.acceptsMail() ? ttl : negativeTtl))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return The verdict, carrying the normalised address if it was accepted
+     */
+    public Verdict validate(String address) {
+        String normalized = normalize(address);
+        if (normalized == null) {
+            return reject(Reason.SYNTAX, "Invalid recipient address");
+        }
+        String domain = normalized.substring(normalized.lastIndexOf('@') + 1);
+        if (rejectDisposable && isDisposable(domain)) {
+            return reject(Reason.DISPOSABLE_DOMAIN, "Disposable recipient domain: " + domain);
+        }
+        if (checkDomain) {
+            DomainResolver.Route route = route(domain);
+            if (route != null && !route.acceptsMail()) {
+                return reject(Reason.NO_MAIL_DOMAIN, route == DomainResolver.Route.NULL_MX
+                        ? "Recipient domain accepts no mail: " + domain
+                        : "Recipient domain does not exist: " + domain);
+            }
+        }
+        return new Verdict(normalized, null, null);
+    }
+
+    /**
+     * Trim the address, lower-case its domain and convert an internationalised domain to its ASCII
+     * form. The local part is kept as given, since mailboxes may be case sensitive.
+     *
+     * @return The normalised address, or {@code null} if it is not a valid address
+     */
+    static String normalize(String address) {
+        if (address == null) {
+            return null;
+        }
+        String trimmed = address.strip();
+        int at = trimmed.lastIndexOf('@');
+        if (at < 1 || at == trimmed.length() - 1) {
+            return null;
+        }
+        String local = trimmed.substring(0, at);
+        String domain = trimmed.substring(at + 1);
+        if (local.length() > 64 || !LOCAL_PART.matcher(local).matches()) {
+            return null;
+        }
+        if (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        try {
+            domain = IDN.toASCII(domain, IDN.USE_STD3_ASCII_RULES).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (domain.length() > 253) {
+            return null;
+        }
+        String[] labels = domain.split("\\.", -1);
+        if (labels.length < 2) {
+            return null;
+        }
+        for (String label : labels) {
+            if (!LABEL.matcher(label).matches()) {
+                return null;
+            }
+        }
+        if (labels[labels.length - 1].chars().allMatch(Character::isDigit)) {
+            // An IP address, not a domain
+            return null;
+        }
+        return local + "@" + domain;
+    }
+
+    private boolean isDisposable(String domain) {
+        // Subdomains of a disposable domain are disposable too
+        for (String candidate = domain; candidate.indexOf('.') > 0; candidate = candidate.substring(candidate.indexOf('.') + 1)) {
+            if (disposableDomains.contains(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return How the domain receives mail, or {@code null} if that could not be found out
+     */
+    private DomainResolver.Route route(String domain) {
+        try {
+            return routes.get(domain, key -> {
+                try {
+                    return resolver.resolve(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            log.warn("Could not check recipient domain {}, accepting it: {}", domain, e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private Verdict reject(Reason reason, String message) {
+        Counter counter = rejections.get(reason);
+        if (counter != null) {
+            counter.increment();
+        }
+        return new Verdict(null, reason, message);
+    }
+
+    private static Set<String> loadDisposableDomains() {
+        Set<String> domains = new HashSet<>();
+        try (InputStream in = RecipientValidator.class.getResourceAsStream(DISPOSABLE_DOMAINS)) {
+            if (in == null) {
+                return domains;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip().toLowerCase(Locale.ROOT);
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    domains.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + DISPOSABLE_DOMAINS, e);
+        }
+        return domains;
+    }
+
+    private void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, routes, "recipientDomains");
+        for (Reason reason : Reason.values()) {
+            rejections.put(reason, Counter.builder("mail.recipients.rejected")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * @param address   The normalised address, if it was accepted
+     * @param reason    Why it was rejected, or {@code null} if it was accepted
+     * @param rejection Message describing the rejection
+     */
+    public record Verdict(String address, Reason reason, String rejection) {
+
+        public boolean valid() {
+            return reason == null;
+        }
+    }
+}
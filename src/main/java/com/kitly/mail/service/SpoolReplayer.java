@@ -0,0 +1,63 @@
+package com.kitly.mail.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves spooled emails into the database once it accepts writes again. Replayed PENDING emails are
+ * inserted without a lease and delivered by {@link PendingEmailPoller}. A record that was inserted
+ * before a crash is rejected by the unique message id and only marked replayed.
+ */
+@Component
+@Slf4j
+public class SpoolReplayer {
+
+    private final EmailSpool spool;
+    private final EmailService emailService;
+    private final DatabaseHealth databaseHealth;
+    private final int batchSize;
+
+    public SpoolReplayer(EmailSpool spool,
+                         EmailService emailService,
+                         DatabaseHealth databaseHealth,
+                         @Value("${mail.spool.replay-batch-size:100}") int batchSize) {
+        this.spool = spool;
+        this.emailService = emailService;
+        this.databaseHealth = databaseHealth;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.spool.replay-interval-ms:1000}")
+    public void replay() {
+        int replayed = 0;
+        try {
+            while (spool.pendingCount() > 0 && !databaseHealth.isDegraded()) {
+                List<EmailSpool.Entry> batch = spool.readPending(batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (EmailSpool.Entry entry : batch) {
+                    try {
+                        emailService.acceptSpooled(entry.email());
+                    } catch (DataIntegrityViolationException e) {
+                        log.info("Spooled email {} is already stored", entry.email().email().getMessageId());
+                    }
+                    spool.markReplayed(entry);
+                    replayed++;
+                }
+            }
+        } catch (DatabaseUnavailableException e) {
+            log.warn("Database still unavailable, {} spooled emails left: {}", spool.pendingCount(), e.getMessage());
+        } finally {
+            spool.deleteReplayedSegments();
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} spooled emails, {} left", replayed, spool.pendingCount());
+        }
+    }
+}
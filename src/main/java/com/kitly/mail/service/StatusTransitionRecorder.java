@@ -0,0 +1,17 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records every status transition as a {@link MailEvents.StatusTransition} flight recorder event,
+ * whichever component made it.
+ */
+@Component
+public class StatusTransitionRecorder implements EmailStatusListener {
+
+    @Override
+    public void onStatusChange(Email email, Email.EmailStatus previousStatus) {
+        MailEvents.StatusTransition.emit(email, previousStatus);
+    }
+}
@@ -0,0 +1,120 @@
+package com.kitly.mail.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for timers with millisecond deadlines.
+ * <p>
+ * The lowest wheel has {@code wheelSize} buckets of {@code tickMs}; timers beyond its span go to an
+ * overflow wheel whose tick is the full span of the wheel below, created on demand. Scheduling is
+ * O(1), and advancing the clock only visits the buckets that have been passed, cascading timers from
+ * coarse to fine wheels as their deadline comes into range. Timers fire with a precision of one tick.
+ * <p>
+ * Not ordered within a tick; all methods are thread-safe.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<List<Timer<T>>> buckets;
+    private long currentTime;
+    private TimingWheel<T> overflowWheel;
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    /**
+     * Schedule an item.
+     *
+     * @return {@code false} if the deadline is within the current tick, in which case the item was not
+     * added and should be handled right away
+     */
+    public synchronized boolean schedule(T item, long deadlineMs) {
+        if (!add(new Timer<>(item, deadlineMs))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Advance the clock and collect every item whose deadline has been reached.
+     */
+    public synchronized List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        while (currentTime + tickMs <= nowMs) {
+            currentTime += tickMs;
+            if (overflowWheel != null) {
+                overflowWheel.advanceTo(currentTime, this, expired);
+            }
+            drainBucket(currentTime, this, expired);
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return The number of items waiting in the wheel
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean add(Timer<T> timer) {
+        if (timer.deadlineMs < currentTime + tickMs) {
+            return false;
+        }
+        if (timer.deadlineMs < currentTime + interval) {
+            buckets.get(bucketIndex(timer.deadlineMs)).add(timer);
+        } else {
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime);
+            }
+            overflowWheel.add(timer);
+        }
+        return true;
+    }
+
+    private void advanceTo(long timeMs, TimingWheel<T> root, List<T> expired) {
+        while (currentTime + tickMs <= timeMs) {
+            currentTime += tickMs;
+            if (overflowWheel != null) {
+                overflowWheel.advanceTo(currentTime, root, expired);
+            }
+            drainBucket(currentTime, root, expired);
+        }
+    }
+
+    private void drainBucket(long bucketTime, TimingWheel<T> root, List<T> expired) {
+        List<Timer<T>> bucket = buckets.get(bucketIndex(bucketTime));
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timer<T>> timers = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timer<T> timer : timers) {
+            // Cascade into a finer wheel, or expire if the deadline is within the current tick
+            if (!root.add(timer)) {
+                expired.add(timer.item);
+            }
+        }
+    }
+
+    private int bucketIndex(long timeMs) {
+        return (int) ((timeMs / tickMs) % wheelSize);
+    }
+
+    private record Timer<T>(T item, long deadlineMs) {
+    }
+}
@@ -0,0 +1,15 @@
+CREATE TABLE attachments (
+    id BIGSERIAL PRIMARY KEY,
+    email_id BIGINT REFERENCES emails(id),
+    filename VARCHAR(255) NOT NULL,
+    content_type VARCHAR(255) NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    storage_key VARCHAR(255) NOT NULL,
+    sha256 VARCHAR(64) NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_attachments_email_id ON attachments(email_id);
+CREATE INDEX idx_attachments_created_at ON attachments(created_at);
+
+ALTER TABLE emails ADD COLUMN attachment_count INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,27 @@
+CREATE TABLE campaigns (
+    id BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    from_email VARCHAR(255) NOT NULL,
+    from_name VARCHAR(255) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    html_content TEXT,
+    text_content TEXT,
+    priority VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    window_seconds BIGINT NOT NULL,
+    recipients_key VARCHAR(255),
+    total_recipients BIGINT NOT NULL,
+    rejected_recipients BIGINT NOT NULL,
+    expanded_recipients BIGINT NOT NULL,
+    recipients_offset BIGINT NOT NULL,
+    paced_from TIMESTAMP,
+    paced_base BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    completed_at TIMESTAMP
+);
+
+CREATE INDEX idx_campaigns_status ON campaigns(status);
+
+ALTER TABLE emails ADD COLUMN campaign_id BIGINT REFERENCES campaigns(id);
+CREATE INDEX idx_emails_campaign_id_status ON emails(campaign_id, status);
@@ -0,0 +1,3 @@
+-- Row version, bumped by every update of an email. Serves optimistic locking and the ETag of the
+-- email resource.
+ALTER TABLE emails ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,2 @@
+-- Bulk status lookups resolve provider ids as well as email ids
+CREATE INDEX idx_emails_external_id ON emails (external_id);
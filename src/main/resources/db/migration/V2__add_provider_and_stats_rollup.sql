@@ -0,0 +1,15 @@
+ALTER TABLE emails ADD COLUMN provider VARCHAR(50);
+
+CREATE TABLE email_stats_rollup (
+    bucket_start TIMESTAMP NOT NULL,
+    status VARCHAR(50) NOT NULL,
+    provider VARCHAR(50) NOT NULL,
+    email_count BIGINT NOT NULL,
+    PRIMARY KEY (bucket_start, status, provider)
+);
+
+-- Seed the hourly rollup from the rows that existed before counters were maintained
+INSERT INTO email_stats_rollup (bucket_start, status, provider, email_count)
+SELECT DATE_TRUNC('hour', created_at), status, 'UNKNOWN', COUNT(*)
+FROM emails
+GROUP BY DATE_TRUNC('hour', created_at), status;
@@ -0,0 +1 @@
+ALTER TABLE emails ADD COLUMN priority VARCHAR(20) DEFAULT 'TRANSACTIONAL' NOT NULL;
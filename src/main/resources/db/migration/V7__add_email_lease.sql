@@ -0,0 +1,2 @@
+ALTER TABLE emails ADD COLUMN lease_owner VARCHAR(255);
+ALTER TABLE emails ADD COLUMN lease_expires_at TIMESTAMP;
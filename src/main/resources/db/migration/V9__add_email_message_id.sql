@@ -0,0 +1,9 @@
+-- Client-generated id sent along with every provider request, used to reconcile
+-- emails whose delivery outcome was lost
+ALTER TABLE emails ADD COLUMN message_id VARCHAR(255);
+CREATE UNIQUE INDEX idx_emails_message_id ON emails (message_id);
+
+-- PENDING rows from before leases existed may already have gone out. Give them an expired lease so
+-- they are reconciled by the recovery sweeper instead of being claimed and sent again.
+UPDATE emails SET lease_owner = 'legacy', lease_expires_at = created_at
+WHERE status = 'PENDING' AND lease_expires_at IS NULL;
@@ -4,6 +4,8 @@ import com.kitly.mail.controller.EmailRequest;
 import com.kitly.mail.controller.EmailResponse;
 import com.kitly.mail.model.Email;
 import com.kitly.mail.repository.EmailRepository;
+import com.kitly.mail.service.DomainResolver;
+import com.kitly.mail.service.StubDomainResolver;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -16,6 +18,7 @@ import org.springframework.boot.resttestclient.TestRestTemplate;
 import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.*;
 import org.springframework.test.context.ActiveProfiles;
 
@@ -35,6 +38,13 @@ class KitlyMailApplicationIntegrationTest {
         public ObjectMapper objectMapper() {
             return new ObjectMapper();
         }
+
+        @Bean
+        @Primary
+        public DomainResolver domainResolver() {
+            // The test recipients are at example.com, which publishes a null MX
+            return new StubDomainResolver();
+        }
     }
 
     @Autowired
@@ -79,6 +89,7 @@ class KitlyMailApplicationIntegrationTest {
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
         HttpEntity<EmailRequest> entity = new HttpEntity<>(request, headers);
 
         ResponseEntity<EmailResponse> response = restTemplate
@@ -89,6 +100,12 @@ class KitlyMailApplicationIntegrationTest {
         assertThat(response.getBody()).isNotNull();
         assertThat(response.getBody().getStatus()).isEqualTo("SENT");
         assertThat(response.getBody().getExternalId()).isEqualTo("msg-123");
+        assertThat(response.getHeaders().getFirst("Server-Timing"))
+                .contains("bind;dur=", "db;dur=", "provider;dur=", "queue;dur=", "total;dur=");
+        // The provider call runs on a dispatch worker but stays in the caller's trace
+        assertThat(mockWebServer.takeRequest().getHeader("traceparent"))
+                .startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-")
+                .doesNotContain("00f067aa0ba902b7");
 
         // Verify data in database
         List<Email> emails = emailRepository.findAll();
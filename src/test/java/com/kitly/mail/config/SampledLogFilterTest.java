@@ -0,0 +1,88 @@
+package com.kitly.mail.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SampledLogFilterTest {
+
+    private LoggerContext context;
+    private ListAppender<ILoggingEvent> appender;
+
+    @BeforeEach
+    void setUp() {
+        context = new LoggerContext();
+        SampledLogFilter filter = new SampledLogFilter();
+        filter.setContext(context);
+        filter.addCategory("com.kitly.mail.provider=10");
+        filter.addCategory("com.kitly.mail.provider.smtp=1");
+        filter.start();
+        context.addTurboFilter(filter);
+
+        appender = new ListAppender<>();
+        appender.setContext(context);
+        appender.start();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+    }
+
+    @Test
+    void testKeepsOneInNSuccessLogsOfACategory() {
+        Logger logger = context.getLogger("com.kitly.mail.provider.brevo.BrevoMailProvider");
+        for (int i = 0; i < 100; i++) {
+            logger.info("Email sent successfully via BREVO. Message ID: {}", i);
+        }
+
+        assertThat(appender.list).hasSize(10);
+        assertThat(appender.list.get(1).getArgumentArray()).containsExactly(10);
+    }
+
+    @Test
+    void testAlwaysKeepsWarningsAndErrors() {
+        Logger logger = context.getLogger("com.kitly.mail.provider.brevo.BrevoMailProvider");
+        for (int i = 0; i < 20; i++) {
+            logger.warn("Could not look up delivery {}", i);
+            logger.error("Error sending email {}", i);
+        }
+
+        assertThat(appender.list).hasSize(40);
+    }
+
+    @Test
+    void testMostSpecificCategoryWinsAndOthersAreNotSampled() {
+        Logger smtp = context.getLogger("com.kitly.mail.provider.smtp.SmtpMailProvider");
+        Logger service = context.getLogger("com.kitly.mail.service.EmailService");
+        Logger sibling = context.getLogger("com.kitly.mail.providers");
+        for (int i = 0; i < 10; i++) {
+            assertThat(smtp.isInfoEnabled()).isTrue();
+            smtp.info("Sending email via SMTP");
+            service.info("Email sent successfully");
+            sibling.info("Not a child of the provider category");
+        }
+
+        assertThat(appender.list).hasSize(30);
+    }
+
+    @Test
+    void testDroppedEventsAreCounted() {
+        Logger logger = context.getLogger("com.kitly.mail.provider.brevo.BrevoMailProvider");
+        for (int i = 0; i < 25; i++) {
+            logger.info("Sending email via BREVO");
+        }
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        LoggingMetrics.bindTo(context, registry);
+
+        assertThat(registry.get(LoggingMetrics.DROPPED)
+                .tags("reason", "sampled", "source", "com.kitly.mail.provider")
+                .functionCounter().count()).isEqualTo(22);
+        assertThat(registry.get(LoggingMetrics.DROPPED)
+                .tags("reason", "sampled", "source", "com.kitly.mail.provider.smtp")
+                .functionCounter().count()).isZero();
+    }
+}
@@ -0,0 +1,86 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.config.TestSecurityConfig;
+import com.kitly.mail.model.Attachment;
+import com.kitly.mail.service.AttachmentService;
+import com.kitly.mail.service.AttachmentTooLargeException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = AttachmentController.class)
+@Import(TestSecurityConfig.class)
+@ActiveProfiles("test")
+class AttachmentControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private AttachmentService attachmentService;
+
+    @Test
+    void testUploadMultipart() throws Exception {
+        when(attachmentService.upload(eq("invoice.pdf"), eq("application/pdf"), any(InputStream.class)))
+                .thenReturn(attachment(7L, "invoice.pdf"));
+
+        mockMvc.perform(multipart("/api/attachments")
+                        .file(new MockMultipartFile("file", "invoice.pdf", "application/pdf", new byte[]{1, 2, 3})))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(7))
+                .andExpect(jsonPath("$.filename").value("invoice.pdf"));
+    }
+
+    @Test
+    void testUploadRawStream() throws Exception {
+        when(attachmentService.upload(eq("data.csv"), eq("text/csv"), any(InputStream.class)))
+                .thenReturn(attachment(8L, "data.csv"));
+
+        mockMvc.perform(post("/api/attachments")
+                        .param("filename", "data.csv")
+                        .param("contentType", "text/csv")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("a,b\n1,2\n"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(8));
+    }
+
+    @Test
+    void testUploadTooLarge() throws Exception {
+        when(attachmentService.upload(eq("big.bin"), any(), any(InputStream.class)))
+                .thenThrow(new AttachmentTooLargeException(4));
+
+        mockMvc.perform(post("/api/attachments")
+                        .param("filename", "big.bin")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[5]))
+                .andExpect(status().isContentTooLarge());
+    }
+
+    private Attachment attachment(Long id, String filename) {
+        return Attachment.builder()
+                .id(id)
+                .filename(filename)
+                .contentType("application/octet-stream")
+                .sizeBytes(3)
+                .storageKey("key")
+                .sha256("abc")
+                .build();
+    }
+}
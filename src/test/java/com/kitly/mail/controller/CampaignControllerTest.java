@@ -0,0 +1,93 @@
+package com.kitly.mail.controller;
+
+import com.kitly.mail.config.TestSecurityConfig;
+import com.kitly.mail.model.Campaign;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.service.CampaignService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = CampaignController.class)
+@Import(TestSecurityConfig.class)
+@ActiveProfiles("test")
+class CampaignControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private CampaignService campaignService;
+
+    @Test
+    void testCreateCampaign() throws Exception {
+        when(campaignService.create(any(Campaign.class))).thenAnswer(invocation -> {
+            Campaign campaign = invocation.getArgument(0);
+            campaign.setId(3L);
+            campaign.setStatus(Campaign.Status.DRAFT);
+            campaign.setPriority(Email.Priority.BULK);
+            return campaign;
+        });
+
+        mockMvc.perform(post("/api/campaigns")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"name":"Launch","fromEmail":"news@example.com","fromName":"News",
+                                 "subject":"Hello {{name}}","htmlContent":"<p>Hi</p>","windowMinutes":360}
+                                """))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(3))
+                .andExpect(jsonPath("$.status").value("DRAFT"))
+                .andExpect(jsonPath("$.windowMinutes").value(360));
+    }
+
+    @Test
+    void testGetCampaignProgress() throws Exception {
+        when(campaignService.getCampaign(3L)).thenReturn(Campaign.builder()
+                .id(3L).name("Launch").status(Campaign.Status.RUNNING).priority(Email.Priority.BULK)
+                .totalRecipients(10).expandedRecipients(6).build());
+        when(campaignService.countByStatus(3L)).thenReturn(Map.of(
+                Email.EmailStatus.SENT, 4L, Email.EmailStatus.FAILED, 1L, Email.EmailStatus.PENDING, 1L));
+
+        mockMvc.perform(get("/api/campaigns/3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queuedRecipients").value(6))
+                .andExpect(jsonPath("$.sent").value(4))
+                .andExpect(jsonPath("$.failed").value(1));
+    }
+
+    @Test
+    void testUploadToUnknownCampaign() throws Exception {
+        when(campaignService.getCampaign(9L)).thenThrow(new IllegalArgumentException("Campaign not found with id: 9"));
+
+        mockMvc.perform(put("/api/campaigns/9/recipients")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("ann@example.com\n"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testPauseCampaignThatIsNotRunning() throws Exception {
+        when(campaignService.getCampaign(eq(3L))).thenReturn(Campaign.builder().id(3L).build());
+        when(campaignService.pause(3L)).thenThrow(new IllegalStateException("Campaign 3 is not running"));
+
+        mockMvc.perform(post("/api/campaigns/3/pause"))
+                .andExpect(status().isConflict());
+    }
+}
@@ -2,10 +2,20 @@ package com.kitly.mail.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kitly.mail.config.TestSecurityConfig;
-import com.kitly.mail.filter.ApiKeyAuthFilter;
+import com.kitly.mail.filter.ServerTimingObservationHandler;
 import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.EmailStatusView;
+import com.kitly.mail.service.AdmissionControl;
+import com.kitly.mail.service.DatabaseUnavailableException;
+import com.kitly.mail.service.DomainResolver;
+import com.kitly.mail.service.EmailDigester;
+import com.kitly.mail.service.EmailFilter;
 import com.kitly.mail.service.EmailService;
 import com.kitly.mail.service.MailProviderException;
+import com.kitly.mail.service.RecipientValidator;
+import com.kitly.mail.service.StubDomainResolver;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
@@ -16,19 +26,39 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.LongStream;
 
+import static org.hamcrest.Matchers.matchesRegex;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(controllers = EmailController.class)
-@Import(TestSecurityConfig.class)
+@WebMvcTest(controllers = EmailController.class, properties = "mail.send.response-timeout-ms=500")
+@Import({TestSecurityConfig.class, EmailResponseCache.class, RecipientValidator.class})
 @ActiveProfiles("test")
 class EmailControllerTest {
 
@@ -38,6 +68,19 @@ class EmailControllerTest {
         public ObjectMapper objectMapper() {
             return new ObjectMapper();
         }
+
+        @Bean
+        public ObservationRegistry observationRegistry() {
+            ObservationRegistry registry = ObservationRegistry.create();
+            registry.observationConfig().observationHandler(new ServerTimingObservationHandler());
+            return registry;
+        }
+
+        @Bean
+        public DomainResolver domainResolver() {
+            return new StubDomainResolver()
+                    .route("nomail.example", DomainResolver.Route.NULL_MX);
+        }
     }
 
 
@@ -47,11 +90,23 @@ class EmailControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private EmailResponseCache responseCache;
+
     @MockitoBean
     private EmailService emailService;
 
     @MockitoBean
-    private ApiKeyAuthFilter apiKeyAuthFilter;
+    private AdmissionControl admissionControl;
+
+    @MockitoBean
+    private EmailDigester digester;
+
+    @BeforeEach
+    void setUp() {
+        responseCache.cache().invalidateAll();
+        when(admissionControl.tryAdmit(any())).thenReturn(new AdmissionControl.Decision(true, 0));
+    }
 
     @Test
     void testSendEmail() throws Exception {
@@ -68,15 +123,79 @@ class EmailControllerTest {
         savedEmail.setId(1L);
         savedEmail.setStatus(Email.EmailStatus.SENT);
 
-        when(emailService.sendEmail(any(Email.class))).thenReturn(savedEmail);
+        when(emailService.sendEmailAsync(any(Email.class), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(savedEmail));
 
-        mockMvc.perform(post("/api/emails")
+        MvcResult result = mockMvc.perform(post("/api/emails")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isCreated())
                 .andExpect(jsonPath("$.id").value(1))
                 .andExpect(jsonPath("$.status").value("SENT"))
-                .andExpect(jsonPath("$.fromEmail").value("sender@example.com"));
+                .andExpect(jsonPath("$.fromEmail").value("sender@example.com"))
+                .andExpect(header().string("Server-Timing", matchesRegex(
+                        "bind;dur=\\d+\\.\\d, total;dur=\\d+\\.\\d")));
+        verify(admissionControl).release();
+    }
+
+    @Test
+    void testSendEmailNormalizesRecipient() throws Exception {
+        EmailRequest request = EmailRequest.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("Recipient@Example.COM")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .textContent("Test")
+                .build();
+
+        Email savedEmail = createTestEmail();
+        savedEmail.setId(1L);
+        savedEmail.setStatus(Email.EmailStatus.SENT);
+        when(emailService.sendEmailAsync(any(Email.class), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(savedEmail));
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isCreated());
+
+        verify(emailService).sendEmailAsync(argThat(email -> "Recipient@example.com".equals(email.getToEmail())), anyList());
+    }
+
+    @Test
+    void testSendEmailToUndeliverableRecipientIsRejected() throws Exception {
+        for (String recipient : List.of("someone@mailinator.com", "someone@nomail.example")) {
+            EmailRequest request = EmailRequest.builder()
+                    .fromEmail("sender@example.com")
+                    .fromName("Sender")
+                    .toEmail(recipient)
+                    .toName("Recipient")
+                    .subject("Test Subject")
+                    .textContent("Test")
+                    .build();
+
+            MvcResult result = mockMvc.perform(post("/api/emails")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isUnprocessableContent())
+                    .andExpect(jsonPath("$.status").value("REJECTED"))
+                    .andExpect(jsonPath("$.toEmail").value(recipient));
+        }
+
+        verify(emailService, never()).sendEmailAsync(any(Email.class), anyList());
+        verify(emailService, never()).queueEmail(any(Email.class));
     }
 
     @Test
@@ -107,16 +226,228 @@ class EmailControllerTest {
                 .htmlContent("<h1>Test</h1>")
                 .build();
 
-        when(emailService.sendEmail(any(Email.class)))
-                .thenThrow(new MailProviderException("Provider error"));
+        when(emailService.sendEmailAsync(any(Email.class), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new MailProviderException("Provider error")));
 
-        mockMvc.perform(post("/api/emails")
+        MvcResult result = mockMvc.perform(post("/api/emails")
                         .header("X-API-Key", "test-api-key")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void testSendEmailDroppedOnShutdownIsAccepted() throws Exception {
+        EmailRequest request = EmailRequest.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .htmlContent("<h1>Test</h1>")
+                .build();
+
+        when(emailService.sendEmailAsync(any(Email.class), anyList())).thenAnswer(invocation -> {
+            Email pending = invocation.getArgument(0);
+            pending.setId(42L);
+            pending.setStatus(Email.EmailStatus.PENDING);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Dispatcher shut down before the task started"));
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .header("X-API-Key", "test-api-key")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").value(42));
+    }
+
+    @Test
+    void testSlowSendIsAcceptedWithItsId() throws Exception {
+        EmailRequest request = EmailRequest.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .htmlContent("<h1>Test</h1>")
+                .build();
+
+        CompletableFuture<Email> sending = new CompletableFuture<>();
+        when(emailService.sendEmailAsync(any(Email.class), anyList())).thenAnswer(invocation -> {
+            Email pending = invocation.getArgument(0);
+            pending.setId(43L);
+            pending.setStatus(Email.EmailStatus.PENDING);
+            return sending;
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").value(43))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+        // The admission slot is held until the send itself finishes
+        verify(admissionControl, never()).release();
+        sending.complete(createTestEmail());
+        verify(admissionControl).release();
+    }
+
+    @Test
+    void testSendEmailIsShedWhenOverloaded() throws Exception {
+        when(admissionControl.tryAdmit(argThat(email -> email.getPriority() == Email.Priority.BULK))).thenReturn(new AdmissionControl.Decision(false, 4));
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"fromEmail":"sender@example.com","fromName":"Sender",
+                                 "toEmail":"recipient@example.com","toName":"Recipient",
+                                 "subject":"Newsletter","htmlContent":"<h1>News</h1>",
+                                 "priority":"BULK"}
+                                """))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "4"));
+
+        verify(emailService, never()).sendEmailAsync(any(Email.class), anyList());
+        verify(admissionControl, never()).release();
+    }
+
+    @Test
+    void testSendEmailWithUnknownAttachment() throws Exception {
+        EmailRequest request = EmailRequest.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .htmlContent("<h1>Test</h1>")
+                .attachmentIds(List.of(42L))
+                .build();
+
+        when(emailService.sendEmailAsync(any(Email.class), eq(List.of(42L))))
+                .thenThrow(new IllegalArgumentException("Unknown or already used attachment ids: [42]"));
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .header("X-API-Key", "test-api-key")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSendEmailIsSpooledWhenDatabaseIsUnavailable() throws Exception {
+        EmailRequest request = EmailRequest.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .htmlContent("<h1>Test</h1>")
+                .build();
+
+        when(emailService.sendEmailAsync(any(Email.class), anyList()))
+                .thenThrow(new DatabaseUnavailableException("Database is degraded"));
+        when(emailService.spoolEmail(any(Email.class), anyList())).thenAnswer(i -> {
+            Email spooled = i.getArgument(0);
+            spooled.setMessageId("message-1");
+            spooled.setStatus(Email.EmailStatus.PENDING);
+            return spooled;
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").doesNotExist())
+                .andExpect(jsonPath("$.messageId").value("message-1"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    void testSendEmailWithDigestCategoryIsDigested() throws Exception {
+        when(digester.add(any(Email.class), eq("comments"), eq(Duration.ofSeconds(30)))).thenAnswer(i -> {
+            Email digested = i.getArgument(0);
+            digested.setMessageId("digest-1");
+            digested.setStatus(Email.EmailStatus.PENDING);
+            return digested;
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"fromEmail":"sender@example.com","fromName":"Sender",
+                                 "toEmail":"recipient@example.com","toName":"Recipient",
+                                 "subject":"New comment","htmlContent":"<p>Nice!</p>",
+                                 "digestCategory":"comments","digestWindowSeconds":30}
+                                """))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.messageId").value("digest-1"));
+
+        verify(emailService, never()).sendEmailAsync(any(Email.class), anyList());
+        verify(admissionControl, never()).tryAdmit(any());
+    }
+
+    @Test
+    void testScheduleEmail() throws Exception {
+        Email scheduledEmail = createTestEmail();
+        scheduledEmail.setId(1L);
+        scheduledEmail.setStatus(Email.EmailStatus.SCHEDULED);
+
+        when(emailService.scheduleEmail(any(Email.class), anyList())).thenReturn(scheduledEmail);
+
+        MvcResult result = mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"fromEmail":"sender@example.com","fromName":"Sender",
+                                 "toEmail":"recipient@example.com","toName":"Recipient",
+                                 "subject":"Digest","htmlContent":"<h1>Digest</h1>",
+                                 "sendAt":"2999-01-01T08:00:00+01:00"}
+                                """))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("SCHEDULED"));
+
+        verify(emailService, never()).sendEmailAsync(any(Email.class), anyList());
+    }
+
+    @Test
+    void testScheduleEmailInThePastIsRejected() throws Exception {
+        mockMvc.perform(post("/api/emails")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"fromEmail":"sender@example.com","fromName":"Sender",
+                                 "toEmail":"recipient@example.com","toName":"Recipient",
+                                 "subject":"Digest","sendAt":"2000-01-01T08:00:00Z"}
+                                """))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testGetEmailById() throws Exception {
         Email email = createTestEmail();
@@ -130,6 +461,133 @@ class EmailControllerTest {
                 .andExpect(jsonPath("$.fromEmail").value("sender@example.com"));
     }
 
+    @Test
+    void testGetEmailByIdIsServedFromCacheAndRefreshedOnStatusChange() throws Exception {
+        Email email = createTestEmail();
+        email.setId(1L);
+        email.setStatus(Email.EmailStatus.PENDING);
+        when(emailService.getEmailById(1L)).thenReturn(email);
+
+        mockMvc.perform(get("/api/emails/1")).andExpect(jsonPath("$.status").value("PENDING"));
+        mockMvc.perform(get("/api/emails/1")).andExpect(jsonPath("$.status").value("PENDING"));
+        verify(emailService, times(1)).getEmailById(1L);
+
+        email.setStatus(Email.EmailStatus.SENT);
+        responseCache.onStatusChange(email, Email.EmailStatus.PENDING);
+
+        mockMvc.perform(get("/api/emails/1")).andExpect(jsonPath("$.status").value("SENT"));
+        verify(emailService, times(1)).getEmailById(1L);
+    }
+
+    @Test
+    void testGetEmailByIdCarriesVersionAsETag() throws Exception {
+        Email email = createTestEmail();
+        email.setId(1L);
+        email.setVersion(3);
+        when(emailService.getEmailById(1L)).thenReturn(email);
+
+        mockMvc.perform(get("/api/emails/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(jsonPath("$.version").value(3));
+    }
+
+    @Test
+    void testGetEmailByIdIsNotModifiedWithoutLoadingTheEmail() throws Exception {
+        when(emailService.findEmailVersion(1L)).thenReturn(Optional.of(3L));
+
+        mockMvc.perform(get("/api/emails/1").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3\""));
+        mockMvc.perform(get("/api/emails/1").param("fields", "status").header("If-None-Match", "\"3;status\""))
+                .andExpect(status().isNotModified());
+
+        verify(emailService, never()).getEmailById(any());
+        verify(emailService, never()).getEmailAttributes(any(), any());
+    }
+
+    @Test
+    void testGetEmailByIdWithFieldsSelectsOnlyThoseFields() throws Exception {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("status", Email.EmailStatus.SENT);
+        attributes.put("sentAt", null);
+        attributes.put("version", 4L);
+        when(emailService.getEmailAttributes(1L, List.of("status", "sentAt", "version"))).thenReturn(attributes);
+
+        mockMvc.perform(get("/api/emails/1").param("fields", "sentAt,status"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4;status,sentAt\""))
+                .andExpect(jsonPath("$.status").value("SENT"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$.version").doesNotExist())
+                .andExpect(jsonPath("$.fromEmail").doesNotExist());
+        // A changed version no longer matches
+        when(emailService.findEmailVersion(1L)).thenReturn(Optional.of(4L));
+        mockMvc.perform(get("/api/emails/1").param("fields", "status,sentAt").header("If-None-Match", "\"3;status,sentAt\""))
+                .andExpect(status().isOk());
+        verify(emailService, never()).getEmailById(any());
+    }
+
+    @Test
+    void testGetEmailByIdWithFieldsIsServedFromCache() throws Exception {
+        Email email = createTestEmail();
+        email.setId(1L);
+        email.setVersion(2);
+        responseCache.onStatusChange(email, null);
+
+        mockMvc.perform(get("/api/emails/1").param("fields", "status"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2;status\""))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+        verify(emailService, never()).getEmailAttributes(any(), any());
+    }
+
+    @Test
+    void testGetEmailByIdWithUnknownFieldIsRejected() throws Exception {
+        mockMvc.perform(get("/api/emails/1").param("fields", "status,htmlContent"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testLookupStatuses() throws Exception {
+        Email cached = createTestEmail();
+        cached.setId(1L);
+        cached.setStatus(Email.EmailStatus.SENT);
+        responseCache.onStatusChange(cached, Email.EmailStatus.PENDING);
+
+        EmailStatusView failed = statusView(2L, "ext-2", Email.EmailStatus.FAILED);
+        EmailStatusView sent = statusView(3L, "ext-3", Email.EmailStatus.SENT);
+        when(emailService.findStatuses(Set.of(2L, 4L), Set.of("ext-3", "ext-9"))).thenReturn(List.of(failed, sent));
+
+        EmailStatusLookupRequest request = EmailStatusLookupRequest.builder()
+                .ids(List.of(1L, 2L, 4L))
+                .externalIds(List.of("ext-3", "ext-9"))
+                .build();
+
+        mockMvc.perform(post("/api/emails/status:lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.byId.length()").value(2))
+                .andExpect(jsonPath("$.byId.1").value("SENT"))
+                .andExpect(jsonPath("$.byId.2").value("FAILED"))
+                .andExpect(jsonPath("$.byExternalId.length()").value(1))
+                .andExpect(jsonPath("$.byExternalId.ext-3").value("SENT"));
+    }
+
+    @Test
+    void testLookupStatusesRejectsTooManyIds() throws Exception {
+        EmailStatusLookupRequest request = EmailStatusLookupRequest.builder()
+                .ids(LongStream.rangeClosed(1, 5001).boxed().toList())
+                .build();
+
+        mockMvc.perform(post("/api/emails/status:lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+        verify(emailService, never()).findStatuses(any(), any());
+    }
+
     @Test
     void testGetAllEmails() throws Exception {
         Email email1 = createTestEmail();
@@ -137,7 +595,7 @@ class EmailControllerTest {
         Email email2 = createTestEmail();
         email2.setId(2L);
         List<Email> emails = Arrays.asList(email1, email2);
-        when(emailService.getAllEmails()).thenReturn(emails);
+        when(emailService.findEmails(new EmailFilter())).thenReturn(emails);
 
         mockMvc.perform(get("/api/emails"))
                 .andExpect(status().isOk())
@@ -151,7 +609,7 @@ class EmailControllerTest {
         email.setId(1L);
         email.setStatus(Email.EmailStatus.SENT);
         List<Email> emails = Arrays.asList(email);
-        when(emailService.getEmailsByStatus(Email.EmailStatus.SENT)).thenReturn(emails);
+        when(emailService.findEmails(EmailFilter.builder().status(Email.EmailStatus.SENT).build())).thenReturn(emails);
 
         mockMvc.perform(get("/api/emails")
                         .param("status", "SENT"))
@@ -165,7 +623,7 @@ class EmailControllerTest {
         Email email = createTestEmail();
         email.setId(1L);
         List<Email> emails = Arrays.asList(email);
-        when(emailService.getEmailsByRecipient("test@example.com")).thenReturn(emails);
+        when(emailService.findEmails(EmailFilter.builder().recipient("test@example.com").build())).thenReturn(emails);
 
         mockMvc.perform(get("/api/emails")
                         .param("recipient", "test@example.com"))
@@ -174,9 +632,55 @@ class EmailControllerTest {
                 .andExpect(jsonPath("$.length()").value(1));
     }
 
+    @Test
+    void testGetEmailsWithCombinedFilters() throws Exception {
+        Email email = createTestEmail();
+        email.setId(1L);
+        EmailFilter expected = EmailFilter.builder()
+                .status(Email.EmailStatus.FAILED)
+                .recipient("Test@Example.com")
+                .sender("sender@example.com")
+                .provider("brevo")
+                .createdFrom(LocalDateTime.of(2026, 1, 1, 0, 0))
+                .createdTo(LocalDateTime.of(2026, 1, 2, 0, 0))
+                .limit(50)
+                .build();
+        when(emailService.findEmails(expected)).thenReturn(List.of(email));
+
+        mockMvc.perform(get("/api/emails")
+                        .param("status", "failed")
+                        .param("recipient", "Test@Example.com")
+                        .param("sender", "sender@example.com")
+                        .param("provider", "brevo")
+                        .param("createdFrom", "2026-01-01T00:00:00")
+                        .param("createdTo", "2026-01-02T00:00:00")
+                        .param("limit", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
     // Note: Unauthorized access should be tested in integration tests
     // since we've disabled security filters for unit tests
 
+    private static EmailStatusView statusView(Long id, String externalId, Email.EmailStatus status) {
+        return new EmailStatusView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getExternalId() {
+                return externalId;
+            }
+
+            @Override
+            public Email.EmailStatus getStatus() {
+                return status;
+            }
+        };
+    }
+
     private Email createTestEmail() {
         return Email.builder()
                 .fromEmail("sender@example.com")
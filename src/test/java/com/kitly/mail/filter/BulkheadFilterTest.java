@@ -0,0 +1,99 @@
+package com.kitly.mail.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BulkheadFilterTest {
+
+    @Test
+    void testClassifiesTraffic() {
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("POST", "/api/emails")))
+                .isEqualTo(BulkheadFilter.TrafficClass.SEND);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("POST", "/api/attachments")))
+                .isEqualTo(BulkheadFilter.TrafficClass.SEND);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("GET", "/api/emails/7")))
+                .isEqualTo(BulkheadFilter.TrafficClass.READ);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("POST", "/api/emails/status:lookup")))
+                .isEqualTo(BulkheadFilter.TrafficClass.READ);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("GET", "/api/emails/stats")))
+                .isEqualTo(BulkheadFilter.TrafficClass.ADMIN);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("GET", "/actuator/health")))
+                .isEqualTo(BulkheadFilter.TrafficClass.ADMIN);
+        assertThat(BulkheadFilter.classify(new MockHttpServletRequest("GET", "/favicon.ico"))).isNull();
+    }
+
+    @Test
+    void testFullSendBulkheadRejectsSendsButNotReads() throws Exception {
+        BulkheadFilter filter = new BulkheadFilter(1, 0, 1, 0, 1, 0, 10,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        CountDownLatch providerAnswer = new CountDownLatch(1);
+        FilterChain slowSend = (request, response) -> {
+            sendStarted.countDown();
+            try {
+                providerAnswer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> firstSend = executor.submit(() -> {
+                filter.doFilter(new MockHttpServletRequest("POST", "/api/emails"), new MockHttpServletResponse(), slowSend);
+                return null;
+            });
+            assertThat(sendStarted.await(2, TimeUnit.SECONDS)).isTrue();
+
+            MockHttpServletResponse secondSend = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("POST", "/api/emails"), secondSend, (request, response) -> { });
+            MockHttpServletResponse read = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest("GET", "/api/emails/1"), read, (request, response) -> { });
+
+            assertThat(secondSend.getStatus()).isEqualTo(503);
+            assertThat(secondSend.getHeader("Retry-After")).isEqualTo("1");
+            assertThat(read.getStatus()).isEqualTo(200);
+            assertThat(filter.bulkhead(BulkheadFilter.TrafficClass.SEND).rejected()).isEqualTo(1);
+
+            providerAnswer.countDown();
+            firstSend.get(2, TimeUnit.SECONDS);
+            assertThat(filter.bulkhead(BulkheadFilter.TrafficClass.SEND).inFlight()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testQueuedRequestGetsTheNextFreeSlot() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("send", 1, 1, 2000);
+        assertThat(bulkhead.tryEnter()).isTrue();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiting = executor.submit(bulkhead::tryEnter);
+            while (bulkhead.queued() == 0) {
+                Thread.onSpinWait();
+            }
+            // The queue holds one waiter, so the next caller is rejected straight away
+            assertThat(bulkhead.tryEnter()).isFalse();
+
+            bulkhead.exit();
+            assertThat(waiting.get(2, TimeUnit.SECONDS)).isTrue();
+            assertThat(bulkhead.rejected()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
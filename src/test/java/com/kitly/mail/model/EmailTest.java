@@ -39,6 +39,8 @@ class EmailTest {
         assertThat(email.getCreatedAt()).isNotNull();
         assertThat(email.getCreatedAt()).isBefore(LocalDateTime.now().plusSeconds(1));
         assertThat(email.getStatus()).isEqualTo(Email.EmailStatus.PENDING);
+        assertThat(email.getPriority()).isEqualTo(Email.Priority.TRANSACTIONAL);
+        assertThat(email.getMessageId()).isNotBlank();
     }
 
     @Test
@@ -0,0 +1,141 @@
+package com.kitly.mail.provider;
+
+import com.kitly.mail.service.MailProviderException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ApiKeyPoolTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Map<WebClient, String> keyOf = new HashMap<>();
+
+    private ApiKeyPool pool(String... keys) {
+        return new ApiKeyPool("TEST", List.of(keys), key -> {
+            WebClient client = WebClient.create();
+            keyOf.put(client, key);
+            return client;
+        }, Duration.ofSeconds(60), Duration.ofSeconds(300), now::get);
+    }
+
+    @Test
+    void testRequestsGoToTheLeastLoadedKey() throws Exception {
+        ApiKeyPool pool = pool("a", "b", "c");
+
+        ApiKeyPool.Lease first = pool.acquire();
+        ApiKeyPool.Lease second = pool.acquire();
+        ApiKeyPool.Lease third = pool.acquire();
+        assertThat(List.of(key(first), key(second), key(third))).containsExactlyInAnyOrder("a", "b", "c");
+
+        second.close();
+        assertThat(key(pool.acquire())).isEqualTo(key(second));
+    }
+
+    @Test
+    void testKeyWithMoreQuotaLeftIsPreferred() throws Exception {
+        ApiKeyPool pool = pool("a", "b");
+        for (int i = 0; i < 2; i++) {
+            try (ApiKeyPool.Lease lease = pool.acquire()) {
+                lease.succeeded(quota(key(lease).equals("a") ? 10 : 500));
+            }
+        }
+
+        for (int i = 0; i < 5; i++) {
+            try (ApiKeyPool.Lease lease = pool.acquire()) {
+                assertThat(key(lease)).isEqualTo("b");
+            }
+        }
+    }
+
+    @Test
+    void testExhaustedQuotaTakesKeyOutUntilReset() throws Exception {
+        ApiKeyPool pool = pool("a", "b");
+        try (ApiKeyPool.Lease lease = pool.acquire()) {
+            HttpHeaders headers = quota(0);
+            headers.add("x-sib-ratelimit-reset", "30");
+            lease.succeeded(headers);
+        }
+        assertThat(pool.available()).isEqualTo(1);
+
+        now.addAndGet(30_000);
+        assertThat(pool.available()).isEqualTo(2);
+    }
+
+    @Test
+    void testEpochResetTakesKeyOutUntilThatTime() throws Exception {
+        ApiKeyPool pool = pool("a", "b");
+        try (ApiKeyPool.Lease lease = pool.acquire()) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("X-RateLimit-Reset", String.valueOf(now.get() / 1000 + 45));
+            assertThat(lease.failed(error(HttpStatus.TOO_MANY_REQUESTS, headers))).isTrue();
+        }
+        assertThat(pool.available()).isEqualTo(1);
+
+        now.addAndGet(45_000);
+        assertThat(pool.available()).isEqualTo(2);
+    }
+
+    @Test
+    void testThrottledAndRejectedKeysLeaveRotationForAWhile() throws Exception {
+        ApiKeyPool pool = pool("a", "b");
+        try (ApiKeyPool.Lease lease = pool.acquire()) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.RETRY_AFTER, "10");
+            lease.failed(error(HttpStatus.TOO_MANY_REQUESTS, headers));
+        }
+        try (ApiKeyPool.Lease lease = pool.acquire()) {
+            lease.failed(error(HttpStatus.UNAUTHORIZED, new HttpHeaders()));
+        }
+        assertThat(pool.available()).isZero();
+        assertThatThrownBy(pool::acquire)
+                .isInstanceOf(MailProviderException.class)
+                .hasMessageContaining("All 2 TEST API keys are out of rotation");
+
+        // The throttled key is back after its Retry-After, the rejected one after the auth cool-down
+        now.addAndGet(10_000);
+        assertThat(pool.available()).isEqualTo(1);
+        now.addAndGet(290_000);
+        assertThat(pool.available()).isEqualTo(2);
+    }
+
+    @Test
+    void testOtherErrorsKeepKeyInRotation() throws Exception {
+        ApiKeyPool pool = pool("a");
+        try (ApiKeyPool.Lease lease = pool.acquire()) {
+            assertThat(lease.failed(error(HttpStatus.BAD_REQUEST, new HttpHeaders()))).isFalse();
+        }
+        assertThat(pool.available()).isEqualTo(1);
+    }
+
+    @Test
+    void testBlankKeysAreIgnored() {
+        assertThat(pool("a", " ", "").size()).isEqualTo(1);
+        assertThatThrownBy(() -> pool(" "))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String key(ApiKeyPool.Lease lease) {
+        return keyOf.get(lease.client());
+    }
+
+    private static HttpHeaders quota(long remaining) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-sib-ratelimit-remaining", String.valueOf(remaining));
+        return headers;
+    }
+
+    private static WebClientResponseException error(HttpStatus status, HttpHeaders headers) {
+        return WebClientResponseException.create(status, status.getReasonPhrase(), headers, new byte[0], null, null);
+    }
+}
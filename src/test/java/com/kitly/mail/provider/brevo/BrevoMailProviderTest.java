@@ -1,15 +1,33 @@
 package com.kitly.mail.provider.brevo;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kitly.mail.model.Attachment;
 import com.kitly.mail.model.Email;
+import com.kitly.mail.provider.ApiKeyPool;
+import com.kitly.mail.service.DeliveryLookup;
 import com.kitly.mail.service.MailProviderException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -25,7 +43,8 @@ class BrevoMailProviderTest {
         mockWebServer.start();
 
         String baseUrl = mockWebServer.url("/").toString();
-        brevoMailProvider = new BrevoMailProvider("test-api-key", baseUrl);
+        brevoMailProvider = new BrevoMailProvider(List.of("test-api-key"), baseUrl, 60, 300,
+                ObservationRegistry.NOOP, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
     }
 
     @AfterEach
@@ -64,6 +83,93 @@ class BrevoMailProviderTest {
                 .hasMessageContaining("BREVO API error");
     }
 
+    @Test
+    void testSendEmailRecordsProviderRequestEvent() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(400)
+                .setBody("{\"code\":\"invalid_parameter\"}")
+                .addHeader("Content-Type", "application/json"));
+        Email email = createTestEmail();
+        email.setId(42L);
+        email.setMessageId("kitly-42");
+
+        Path dump = Files.createTempFile("brevo", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.kitly.mail.ProviderRequest");
+            recording.start();
+            assertThatThrownBy(() -> brevoMailProvider.sendEmail(email)).isInstanceOf(MailProviderException.class);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("provider")).isEqualTo("BREVO");
+        assertThat(event.getLong("emailId")).isEqualTo(42L);
+        assertThat(event.getString("messageId")).isEqualTo("kitly-42");
+        assertThat(event.getInt("statusCode")).isEqualTo(400);
+        assertThat(event.getLong("payloadSize")).isEqualTo(mockWebServer.takeRequest().getBodySize());
+        assertThat(event.getBoolean("succeeded")).isFalse();
+    }
+
+    @Test
+    void testSendEmailMovesOffThrottledKey() throws Exception {
+        BrevoMailProvider pooled = new BrevoMailProvider(List.of("key-a", "key-b"), mockWebServer.url("/").toString(), 60, 300,
+                ObservationRegistry.NOOP, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .addHeader("Retry-After", "120"));
+        for (int i = 0; i < 3; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setBody("{\"messageId\":\"msg-" + i + "\"}")
+                    .addHeader("Content-Type", "application/json"));
+        }
+
+        assertThat(pooled.sendEmail(createTestEmail())).isEqualTo("msg-0");
+        String throttled = mockWebServer.takeRequest().getHeader("api-key");
+        assertThat(mockWebServer.takeRequest().getHeader("api-key")).isNotEqualTo(throttled);
+        for (int i = 1; i < 3; i++) {
+            assertThat(pooled.sendEmail(createTestEmail())).isEqualTo("msg-" + i);
+            assertThat(mockWebServer.takeRequest().getHeader("api-key")).isNotEqualTo(throttled);
+        }
+    }
+
+    @Test
+    void testSendEmailFailsWhenOnlyKeyIsThrottled() {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .addHeader("Retry-After", "120"));
+
+        assertThatThrownBy(() -> brevoMailProvider.sendEmail(createTestEmail()))
+                .isInstanceOf(ApiKeyPool.KeyRemovedException.class)
+                .hasMessageContaining("BREVO API error");
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testLookupDeliveryAsksEveryKey() throws Exception {
+        BrevoMailProvider pooled = new BrevoMailProvider(List.of("key-a", "key-b"), mockWebServer.url("/").toString(), 60, 300,
+                ObservationRegistry.NOOP, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"transactionalEmails\":[]}")
+                .addHeader("Content-Type", "application/json"));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"transactionalEmails\":[{\"messageId\":\"<msg-123@smtp-relay>\",\"tags\":[\"kitly-mid-1\"]}]}")
+                .addHeader("Content-Type", "application/json"));
+
+        Email email = createTestEmail();
+        email.setMessageId("mid-1");
+        email.setCreatedAt(LocalDateTime.now());
+
+        DeliveryLookup lookup = pooled.lookupDelivery(email);
+
+        assertThat(lookup.getState()).isEqualTo(DeliveryLookup.State.DELIVERED);
+        assertThat(mockWebServer.takeRequest().getHeader("api-key")).isEqualTo("key-a");
+        assertThat(mockWebServer.takeRequest().getHeader("api-key")).isEqualTo("key-b");
+    }
+
     @Test
     void testSendEmailNoMessageId() {
         mockWebServer.enqueue(new MockResponse()
@@ -77,6 +183,97 @@ class BrevoMailProviderTest {
                 .hasMessageContaining("No message ID");
     }
 
+    @Test
+    void testSendEmailIncludesIdempotencyKey() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"messageId\":\"msg-123\"}")
+                .addHeader("Content-Type", "application/json"));
+
+        Email email = createTestEmail();
+        email.setMessageId("mid-1");
+        brevoMailProvider.sendEmail(email);
+
+        String body = mockWebServer.takeRequest().getBody().readUtf8();
+        assertThat(body).contains("\"idempotencyKey\":\"mid-1\"");
+        assertThat(body).contains("\"tags\":[\"kitly-mid-1\"]");
+        assertThat(brevoMailProvider.isIdempotent()).isTrue();
+    }
+
+    @Test
+    void testSendEmailStreamsAttachmentsAsBase64(@TempDir Path dir) throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"messageId\":\"msg-123\"}")
+                .addHeader("Content-Type", "application/json"));
+
+        // Larger than one encoding chunk, and not a multiple of 3, to exercise chunking and padding
+        byte[] content = new byte[100_001];
+        new Random(42).nextBytes(content);
+        Path file = Files.write(dir.resolve("report.pdf"), content);
+
+        Email email = createTestEmail();
+        email.setAttachments(List.of(Attachment.builder()
+                .filename("report \"final\".pdf")
+                .contentType("application/pdf")
+                .sizeBytes(content.length)
+                .contentPath(file)
+                .build()));
+        brevoMailProvider.sendEmail(email);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        String body = request.getBody().readUtf8();
+        assertThat(request.getHeader("Content-Length")).isEqualTo(String.valueOf(request.getBodySize()));
+        JsonNode json = new ObjectMapper().readTree(body);
+        assertThat(json.get("subject").asText()).isEqualTo("Test Subject");
+        assertThat(json.get("attachment")).hasSize(1);
+        assertThat(json.get("attachment").get(0).get("name").asText()).isEqualTo("report \"final\".pdf");
+        assertThat(Base64.getDecoder().decode(json.get("attachment").get(0).get("content").asText())).isEqualTo(content);
+    }
+
+    @Test
+    void testLookupDeliveryFindsEmailByMessageIdTag() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"transactionalEmails\":["
+                        + "{\"messageId\":\"<other@smtp-relay>\",\"tags\":[\"kitly-mid-0\"]},"
+                        + "{\"messageId\":\"<msg-123@smtp-relay>\",\"tags\":[\"kitly-mid-1\"]}]}")
+                .addHeader("Content-Type", "application/json"));
+
+        Email email = createTestEmail();
+        email.setMessageId("mid-1");
+        email.setCreatedAt(LocalDateTime.of(2026, 1, 2, 10, 0));
+
+        DeliveryLookup lookup = brevoMailProvider.lookupDelivery(email);
+
+        assertThat(lookup.getState()).isEqualTo(DeliveryLookup.State.DELIVERED);
+        assertThat(lookup.getExternalId()).isEqualTo("<msg-123@smtp-relay>");
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getMethod()).isEqualTo("GET");
+        assertThat(request.getPath()).startsWith("/smtp/emails?email=recipient@example.com&startDate=2026-01-02");
+    }
+
+    @Test
+    void testLookupDeliveryNotFound() {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"transactionalEmails\":[]}")
+                .addHeader("Content-Type", "application/json"));
+
+        Email email = createTestEmail();
+        email.setMessageId("mid-1");
+        email.setCreatedAt(LocalDateTime.now());
+
+        assertThat(brevoMailProvider.lookupDelivery(email).getState()).isEqualTo(DeliveryLookup.State.NOT_FOUND);
+    }
+
+    @Test
+    void testLookupDeliveryUnknownOnApiError() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        Email email = createTestEmail();
+        email.setMessageId("mid-1");
+        email.setCreatedAt(LocalDateTime.now());
+
+        assertThat(brevoMailProvider.lookupDelivery(email).getState()).isEqualTo(DeliveryLookup.State.UNKNOWN);
+    }
+
     @Test
     void testGetProviderName() {
         assertThat(brevoMailProvider.getProviderName()).isEqualTo("BREVO");
@@ -0,0 +1,148 @@
+package com.kitly.mail.provider.smtp;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process ESMTP server for provider tests. With pipelining enabled it withholds the replies
+ * to envelope commands until DATA arrives, so a client that waits for each reply stalls.
+ */
+class FakeSmtpServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final boolean pipelining;
+    private final Set<String> rejectedRecipients = new HashSet<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    final List<String> commands = new CopyOnWriteArrayList<>();
+    final List<String> messages = new CopyOnWriteArrayList<>();
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger activeConnections = new AtomicInteger();
+    final AtomicInteger maxActiveConnections = new AtomicInteger();
+
+    FakeSmtpServer(boolean pipelining, String... rejectedRecipients) throws IOException {
+        this.pipelining = pipelining;
+        this.rejectedRecipients.addAll(Arrays.asList(rejectedRecipients));
+        this.serverSocket = new ServerSocket(0);
+        executor.submit(this::acceptLoop);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Close every open session, as a relay does when its idle timeout expires.
+     */
+    void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.incrementAndGet();
+                executor.submit(() -> handle(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        maxActiveConnections.accumulateAndGet(activeConnections.incrementAndGet(), Math::max);
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            List<String> heldReplies = new ArrayList<>();
+            boolean recipientAccepted = false;
+            reply(out, "220 fake.smtp ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                commands.add(line);
+                String verb = line.split("[ :]", 2)[0].toUpperCase(Locale.ROOT);
+                String reply;
+                switch (verb) {
+                    case "EHLO" -> {
+                        reply(out, "250-fake.smtp\r\n" + (pipelining ? "250-PIPELINING\r\n" : "") + "250 AUTH PLAIN");
+                        continue;
+                    }
+                    case "AUTH" -> reply = line.equals("AUTH PLAIN " + Base64.getEncoder()
+                            .encodeToString("\0user\0secret".getBytes(StandardCharsets.UTF_8)))
+                            ? "235 2.7.0 Authentication successful" : "535 5.7.8 Authentication failed";
+                    case "MAIL", "RSET" -> {
+                        recipientAccepted = false;
+                        reply = "250 2.0.0 Ok";
+                    }
+                    case "RCPT" -> {
+                        String recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        recipientAccepted = !rejectedRecipients.contains(recipient);
+                        reply = recipientAccepted ? "250 2.1.5 Ok" : "550 5.1.1 Mailbox unavailable";
+                    }
+                    case "DATA" -> {
+                        for (String held : heldReplies) {
+                            out.write(held + "\r\n");
+                        }
+                        heldReplies.clear();
+                        if (!recipientAccepted) {
+                            reply(out, "554 5.5.1 No valid recipients");
+                            continue;
+                        }
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        messages.add(readData(in));
+                        reply(out, "250 2.0.0 Ok: queued as Q" + messages.size());
+                        recipientAccepted = false;
+                        continue;
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 2.0.0 Bye");
+                        return;
+                    }
+                    default -> reply = "502 5.5.2 Command not recognized";
+                }
+                if (pipelining && (verb.equals("MAIL") || verb.equals("RCPT") || verb.equals("RSET"))) {
+                    heldReplies.add(reply);
+                } else {
+                    reply(out, reply);
+                }
+            }
+        } catch (IOException ignored) {
+            // Session closed
+        } finally {
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    private static String readData(BufferedReader in) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            data.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+        }
+        return data.toString();
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+        out.write(reply + "\r\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,156 @@
+package com.kitly.mail.provider.smtp;
+
+import com.kitly.mail.model.Attachment;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.service.MailProviderException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SmtpMailProviderTest {
+
+    private FakeSmtpServer server;
+    private SmtpMailProvider provider;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (provider != null) {
+            provider.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void testSendsSeveralEmailsOverOnePipelinedSession() throws Exception {
+        start(true, 4);
+
+        String first = provider.sendEmail(createTestEmail("mid-1", "recipient@example.com"));
+        provider.sendEmail(createTestEmail("mid-2", "recipient@example.com"));
+        provider.sendEmail(createTestEmail("mid-3", "recipient@example.com"));
+
+        assertThat(first).isEqualTo("<mid-1@kitly.test>");
+        assertThat(server.messages).hasSize(3);
+        assertThat(server.connections).hasValue(1);
+        assertThat(server.commands).filteredOn(command -> command.startsWith("AUTH")).hasSize(1);
+        assertThat(server.messages.get(0))
+                .contains("Message-ID: <mid-1@kitly.test>")
+                .contains("X-Kitly-Message-Id: mid-1")
+                .contains("Subject: Test Subject")
+                .contains("multipart/alternative");
+    }
+
+    @Test
+    void testSendsCommandsOneByOneWithoutPipelining() throws Exception {
+        start(false, 4);
+
+        provider.sendEmail(createTestEmail("mid-1", "recipient@example.com"));
+
+        assertThat(server.messages).hasSize(1);
+    }
+
+    @Test
+    void testRejectedRecipientFailsAndSessionIsResetForTheNextEmail() throws Exception {
+        start(true, 4, "unknown@example.com");
+
+        assertThatThrownBy(() -> provider.sendEmail(createTestEmail("mid-1", "unknown@example.com")))
+                .isInstanceOf(MailProviderException.class)
+                .hasMessageContaining("550");
+        provider.sendEmail(createTestEmail("mid-2", "recipient@example.com"));
+
+        assertThat(server.connections).hasValue(1);
+        assertThat(server.messages).hasSize(1);
+        int reset = server.commands.indexOf("RSET");
+        assertThat(reset).isPositive();
+        assertThat(server.commands.get(reset + 1)).isEqualTo("MAIL FROM:<sender@example.com>");
+    }
+
+    @Test
+    void testReconnectsWhenTheRelayDropsAnIdleSession() throws Exception {
+        start(true, 4);
+
+        provider.sendEmail(createTestEmail("mid-1", "recipient@example.com"));
+        server.dropConnections();
+        provider.sendEmail(createTestEmail("mid-2", "recipient@example.com"));
+
+        assertThat(server.messages).hasSize(2);
+        assertThat(server.connections).hasValue(2);
+    }
+
+    @Test
+    void testPoolBoundsConcurrentSessions() throws Exception {
+        start(true, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                Email email = createTestEmail("mid-" + i, "recipient@example.com");
+                results.add(executor.submit(() -> provider.sendEmail(email)));
+            }
+            for (Future<String> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(server.messages).hasSize(16);
+        assertThat(server.maxActiveConnections.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void testEncodesHeadersAndStreamsAttachments(@TempDir Path dir) throws Exception {
+        start(true, 4);
+        byte[] content = "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(dir.resolve("data.csv"), content);
+
+        Email email = createTestEmail("mid-1", "recipient@example.com");
+        email.setSubject("Grüße aus München");
+        email.setAttachments(List.of(Attachment.builder()
+                .filename("data.csv")
+                .contentType("text/csv")
+                .sizeBytes(content.length)
+                .contentPath(file)
+                .build()));
+        provider.sendEmail(email);
+
+        String message = server.messages.get(0);
+        assertThat(message)
+                .contains("Subject: =?UTF-8?B?" + Base64.getEncoder().encodeToString(
+                        "Grüße aus München".getBytes(StandardCharsets.UTF_8)) + "?=")
+                .contains("multipart/mixed")
+                .contains("Content-Disposition: attachment; filename=\"data.csv\"")
+                .contains(Base64.getEncoder().encodeToString(content));
+    }
+
+    private void start(boolean pipelining, int maxConnections, String... rejectedRecipients) throws Exception {
+        server = new FakeSmtpServer(pipelining, rejectedRecipients);
+        provider = new SmtpMailProvider("localhost", server.getPort(), "none", "user", "secret",
+                "kitly.test", 2000, maxConnections, 100, 30000);
+    }
+
+    private Email createTestEmail(String messageId, String toEmail) {
+        return Email.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender Name")
+                .toEmail(toEmail)
+                .toName("Recipient Name")
+                .subject("Test Subject")
+                .htmlContent("<h1>Test Email</h1>")
+                .textContent("Test Email")
+                .messageId(messageId)
+                .build();
+    }
+}
@@ -2,14 +2,18 @@ package com.kitly.mail.provider.smtp2go;
 
 import com.kitly.mail.model.Email;
 import com.kitly.mail.service.MailProviderException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -25,7 +29,8 @@ class Smtp2GoMailProviderTest {
         mockWebServer.start();
 
         String baseUrl = mockWebServer.url("/").toString();
-        smtp2GoMailProvider = new Smtp2GoMailProvider("test-api-key", baseUrl);
+        smtp2GoMailProvider = new Smtp2GoMailProvider(List.of("test-api-key"), baseUrl, 60, 300,
+                ObservationRegistry.NOOP, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
     }
 
     @AfterEach
@@ -65,6 +70,20 @@ class Smtp2GoMailProviderTest {
                 .hasMessageContaining("SMTP2GO API error");
     }
 
+    @Test
+    void testSendEmailRetriesOnAnotherKeyWhenOneIsRejected() throws Exception {
+        Smtp2GoMailProvider pooled = new Smtp2GoMailProvider(List.of("key-a", "key-b"), mockWebServer.url("/").toString(), 60, 300,
+                ObservationRegistry.NOOP, new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"request_id\":\"req-1\",\"data\":{\"succeeded\":true,\"message_id\":\"msg-1\"}}")
+                .addHeader("Content-Type", "application/json"));
+
+        assertThat(pooled.sendEmail(createTestEmail())).isEqualTo("msg-1");
+        String rejected = mockWebServer.takeRequest().getHeader("X-Smtp2go-Api-Key");
+        assertThat(mockWebServer.takeRequest().getHeader("X-Smtp2go-Api-Key")).isNotEqualTo(rejected);
+    }
+
     @Test
     void testSendEmailNoMessageId() throws MailProviderException {
         mockWebServer.enqueue(new MockResponse()
@@ -1,14 +1,19 @@
 package com.kitly.mail.repository;
 
 import com.kitly.mail.model.Email;
+import com.kitly.mail.service.EmailFilter;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @DataJpaTest
 @ActiveProfiles("test")
@@ -59,6 +64,125 @@ class EmailRepositoryTest {
         assertThat(user1Emails).hasSize(2);
     }
 
+    @Test
+    void testFindAllMatchingCombinedFilter() {
+        Email match = createTestEmail();
+        match.setToEmail("User1@Example.com");
+        match.setStatus(Email.EmailStatus.FAILED);
+        match.setProvider("BREVO");
+        emailRepository.save(match);
+
+        Email otherStatus = createTestEmail();
+        otherStatus.setToEmail("user1@example.com");
+        otherStatus.setStatus(Email.EmailStatus.SENT);
+        otherStatus.setProvider("BREVO");
+        emailRepository.save(otherStatus);
+
+        Email otherRecipient = createTestEmail();
+        otherRecipient.setToEmail("user2@example.com");
+        otherRecipient.setStatus(Email.EmailStatus.FAILED);
+        otherRecipient.setProvider("BREVO");
+        emailRepository.save(otherRecipient);
+
+        EmailFilter filter = EmailFilter.builder()
+                .status(Email.EmailStatus.FAILED)
+                .recipient("user1@EXAMPLE.com")
+                .sender("Sender@example.com")
+                .provider("brevo")
+                .createdFrom(LocalDateTime.now().minusHours(1))
+                .createdTo(LocalDateTime.now().plusHours(1))
+                .build();
+
+        List<Email> result = emailRepository.findAll(EmailSpecifications.matching(filter));
+        assertThat(result).extracting(Email::getId).containsExactly(match.getId());
+
+        filter.setCreatedFrom(LocalDateTime.now().plusHours(1));
+        filter.setCreatedTo(null);
+        assertThat(emailRepository.findAll(EmailSpecifications.matching(filter))).isEmpty();
+    }
+
+    @Test
+    void testFindScheduledBeforePagesBySendTime() {
+        LocalDateTime base = LocalDateTime.now().plusMinutes(1).withNano(0);
+        Email first = createScheduledEmail(base);
+        Email second = createScheduledEmail(base);
+        Email third = createScheduledEmail(base.plusMinutes(1));
+        createScheduledEmail(base.plusDays(1));
+
+        List<ScheduledEmail> page = emailRepository.findScheduledBefore(base.plusHours(1),
+                LocalDateTime.of(1970, 1, 1, 0, 0), 0, Limit.of(2));
+        assertThat(page).extracting(ScheduledEmail::getId).containsExactly(first.getId(), second.getId());
+
+        List<ScheduledEmail> next = emailRepository.findScheduledBefore(base.plusHours(1),
+                page.get(1).getSendAt(), page.get(1).getId(), Limit.of(2));
+        assertThat(next).extracting(ScheduledEmail::getId).containsExactly(third.getId());
+    }
+
+    @Test
+    void testTransitionStatusIsConditional() {
+        Email scheduled = createScheduledEmail(LocalDateTime.now());
+
+        assertThat(emailRepository.transitionStatus(scheduled.getId(),
+                Email.EmailStatus.SCHEDULED, Email.EmailStatus.PENDING)).isEqualTo(1);
+        assertThat(emailRepository.transitionStatus(scheduled.getId(),
+                Email.EmailStatus.SCHEDULED, Email.EmailStatus.PENDING)).isZero();
+    }
+
+    @Test
+    void testBulkUpdatesBumpTheVersion() {
+        Email scheduled = createScheduledEmail(LocalDateTime.now());
+        assertThat(emailRepository.findVersionById(scheduled.getId())).contains(0L);
+
+        emailRepository.transitionStatus(scheduled.getId(), Email.EmailStatus.SCHEDULED, Email.EmailStatus.PENDING);
+        emailRepository.assignLease(List.of(scheduled.getId()), "owner", LocalDateTime.now());
+        emailRepository.releaseLease(scheduled.getId(), "owner");
+
+        assertThat(emailRepository.findVersionById(scheduled.getId())).contains(3L);
+        assertThat(emailRepository.findVersionById(-1L)).isEmpty();
+    }
+
+    @Test
+    void testFindAttributesByIdSelectsOnlyTheGivenAttributes() {
+        Email sent = createTestEmail();
+        sent.setStatus(Email.EmailStatus.SENT);
+        sent = emailRepository.save(sent);
+
+        Map<String, Object> attributes = emailRepository.findAttributesById(sent.getId(), List.of("status", "sentAt", "version"))
+                .orElseThrow();
+
+        assertThat(attributes).containsOnlyKeys("status", "sentAt", "version");
+        assertThat(attributes.get("status")).isEqualTo(Email.EmailStatus.SENT);
+        assertThat(attributes.get("sentAt")).isNull();
+        assertThat(attributes.get("version")).isEqualTo(0L);
+        assertThat(emailRepository.findAttributesById(-1L, List.of("status"))).isEmpty();
+    }
+
+    @Test
+    void testFindStatusesByIdsAndExternalIds() {
+        Email sent = createTestEmail();
+        sent.setStatus(Email.EmailStatus.SENT);
+        sent.setExternalId("ext-1");
+        sent = emailRepository.save(sent);
+        Email pending = emailRepository.save(createTestEmail());
+        emailRepository.save(createTestEmail());
+
+        List<EmailStatusView> byId = emailRepository.findStatusesByIdIn(List.of(sent.getId(), pending.getId(), -1L));
+        assertThat(byId).extracting(EmailStatusView::getId, EmailStatusView::getStatus)
+                .containsExactlyInAnyOrder(tuple(sent.getId(), Email.EmailStatus.SENT),
+                        tuple(pending.getId(), Email.EmailStatus.PENDING));
+
+        List<EmailStatusView> byExternalId = emailRepository.findStatusesByExternalIdIn(List.of("ext-1", "ext-2"));
+        assertThat(byExternalId).extracting(EmailStatusView::getExternalId, EmailStatusView::getStatus)
+                .containsExactly(tuple("ext-1", Email.EmailStatus.SENT));
+    }
+
+    private Email createScheduledEmail(LocalDateTime sendAt) {
+        Email email = createTestEmail();
+        email.setStatus(Email.EmailStatus.SCHEDULED);
+        email.setSendAt(sendAt);
+        return emailRepository.save(email);
+    }
+
     private Email createTestEmail() {
         return Email.builder()
                 .fromEmail("sender@example.com")
@@ -0,0 +1,45 @@
+package com.kitly.mail.repository;
+
+import com.kitly.mail.model.EmailStatsRollup;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailStatsRollupRepositoryTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    @Autowired
+    private EmailStatsRollupRepository rollupRepository;
+
+    @Test
+    void testInsertAndIncrement() {
+        EmailStatsRollup.Key key = new EmailStatsRollup.Key(HOUR, "SENT", "BREVO");
+
+        assertThat(rollupRepository.increment(key, 1)).isZero();
+        rollupRepository.insert(HOUR, "SENT", "BREVO", 2);
+        assertThat(rollupRepository.increment(key, 3)).isEqualTo(1);
+
+        assertThat(rollupRepository.findById(key)).get()
+                .extracting(EmailStatsRollup::getEmailCount).isEqualTo(5L);
+        assertThat(rollupRepository.findByIdBucketStartGreaterThanEqualAndIdBucketStartLessThan(HOUR, HOUR.plusHours(1)))
+                .hasSize(1);
+
+        assertThatThrownBy(() -> rollupRepository.insert(HOUR, "SENT", "BREVO", 1))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        rollupRepository.deleteAll();
+    }
+}
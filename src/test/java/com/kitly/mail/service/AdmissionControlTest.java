@@ -0,0 +1,137 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlTest {
+
+    @Test
+    void testShedsBulkBeforeCriticalWithRetryAfterFromTheBacklog() {
+        PriorityDispatcher dispatcher = mock(PriorityDispatcher.class);
+        when(dispatcher.workerCount()).thenReturn(10);
+        when(dispatcher.averageTaskMillis()).thenReturn(100.0);
+        when(dispatcher.queued()).thenReturn(290);
+        when(dispatcher.busy()).thenReturn(10);
+        AdmissionControl admission = admissionControl(dispatcher, 1000);
+
+        // 300 tasks ahead on 10 workers at 100 ms each: 3 s of queueing against a 2 s budget
+        AdmissionControl.Decision bulk = admission.tryAdmit(email(Email.Priority.BULK));
+        AdmissionControl.Decision transactional = admission.tryAdmit(email(Email.Priority.TRANSACTIONAL));
+        AdmissionControl.Decision critical = admission.tryAdmit(email(Email.Priority.CRITICAL));
+
+        assertThat(bulk.admitted()).isFalse();
+        assertThat(bulk.retryAfterSeconds()).isEqualTo(3);
+        assertThat(transactional.admitted()).isFalse();
+        assertThat(transactional.retryAfterSeconds()).isEqualTo(2);
+        assertThat(critical.admitted()).isFalse();
+        assertThat(critical.retryAfterSeconds()).isEqualTo(1);
+        assertThat(admission.rejected(Email.Priority.BULK)).isEqualTo(1);
+
+        when(dispatcher.queued()).thenReturn(90);
+        assertThat(admission.tryAdmit(email(Email.Priority.BULK)).admitted()).isFalse();
+        assertThat(admission.tryAdmit(email(Email.Priority.CRITICAL)).admitted()).isTrue();
+        assertThat(admission.inFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void testInFlightLimitIsSharedByPriority() {
+        PriorityDispatcher dispatcher = mock(PriorityDispatcher.class);
+        when(dispatcher.workerCount()).thenReturn(1000);
+        AdmissionControl admission = admissionControl(dispatcher, 8);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(admission.tryAdmit(email(Email.Priority.BULK)).admitted()).isTrue();
+        }
+        assertThat(admission.tryAdmit(email(Email.Priority.BULK)).admitted()).isFalse();
+        for (int i = 0; i < 6; i++) {
+            assertThat(admission.tryAdmit(email(Email.Priority.CRITICAL)).admitted()).isTrue();
+        }
+        assertThat(admission.tryAdmit(email(Email.Priority.CRITICAL)).admitted()).isFalse();
+
+        admission.release();
+        assertThat(admission.tryAdmit(email(Email.Priority.CRITICAL)).admitted()).isTrue();
+    }
+
+    @Test
+    void testAdmittedLatencyStaysBoundedUnderASpike() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(4, 0, 10000, 16, 4, 1, 1000);
+        AdmissionControl admission = admissionControl(dispatcher, 1000);
+        try {
+            // Warm up the latency estimate with 20 ms provider calls
+            dispatcher.submit(Email.Priority.TRANSACTIONAL, () -> sleep(20)).get(2, TimeUnit.SECONDS);
+
+            // Ten times what the workers can finish within the 1 s transactional budget
+            List<CompletableFuture<Long>> admitted = new ArrayList<>();
+            int rejected = 0;
+            for (int i = 0; i < 2000; i++) {
+                if (!admission.tryAdmit(email(Email.Priority.TRANSACTIONAL)).admitted()) {
+                    rejected++;
+                    continue;
+                }
+                long start = System.nanoTime();
+                admitted.add(dispatcher.submit(Email.Priority.TRANSACTIONAL, () -> {
+                    sleep(20);
+                    admission.release();
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }));
+            }
+
+            long worstLatencyMs = 0;
+            for (CompletableFuture<Long> send : admitted) {
+                worstLatencyMs = Math.max(worstLatencyMs, send.get(10, TimeUnit.SECONDS));
+            }
+            assertThat(admitted.size()).isBetween(100, 400);
+            assertThat(rejected).isGreaterThan(1500);
+            assertThat(worstLatencyMs).isLessThan(3000);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testThrottledDomainBacklogCountsTowardsTheDelay() {
+        PriorityDispatcher dispatcher = mock(PriorityDispatcher.class);
+        when(dispatcher.workerCount()).thenReturn(10);
+        DomainDispatcher domains = mock(DomainDispatcher.class);
+        Email toThrottled = email(Email.Priority.TRANSACTIONAL);
+        toThrottled.setToEmail("someone@gmx.de");
+        when(domains.estimatedWaitMillis(toThrottled)).thenReturn(12_500L);
+        AdmissionControl admission = new AdmissionControl(dispatcher, domains, true, 1000, 2000, 200, 30,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+        // Idle workers, but 12.5 s of backlog ahead at the domain's rate against a 1 s budget
+        AdmissionControl.Decision decision = admission.tryAdmit(toThrottled);
+
+        assertThat(decision.admitted()).isFalse();
+        assertThat(decision.retryAfterSeconds()).isEqualTo(12);
+        assertThat(admission.tryAdmit(email(Email.Priority.TRANSACTIONAL)).admitted()).isTrue();
+    }
+
+    private static AdmissionControl admissionControl(PriorityDispatcher dispatcher, int maxInFlight) {
+        return new AdmissionControl(dispatcher, mock(DomainDispatcher.class), true, maxInFlight, 2000, 200, 30,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static Email email(Email.Priority priority) {
+        return Email.builder()
+                .toEmail("someone@example.com")
+                .priority(priority)
+                .build();
+    }
+
+    private static boolean sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package com.kitly.mail.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AttachmentStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testStoreSpoolsContentWithSizeAndChecksum() throws Exception {
+        AttachmentStorage storage = new AttachmentStorage(dir.toString(), 1024);
+
+        AttachmentStorage.StoredContent stored = storage.store(
+                new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(stored.sizeBytes()).isEqualTo(5);
+        assertThat(stored.sha256()).isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        assertThat(Files.readString(storage.resolve(stored.key()))).isEqualTo("hello");
+
+        storage.delete(stored.key());
+        assertThat(storage.resolve(stored.key())).doesNotExist();
+    }
+
+    @Test
+    void testStoreRejectsOversizedContentWithoutLeavingFiles() throws Exception {
+        AttachmentStorage storage = new AttachmentStorage(dir.toString(), 4);
+
+        assertThatThrownBy(() -> storage.store(new ByteArrayInputStream(new byte[5])))
+                .isInstanceOf(AttachmentTooLargeException.class);
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void testResolveRejectsKeysOutsideTheDirectory() {
+        AttachmentStorage storage = new AttachmentStorage(dir.toString(), 1024);
+
+        assertThatThrownBy(() -> storage.resolve("../secret"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.kitly.mail.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CampaignRecipientStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testStoreParsesAndCountsRecipients() throws Exception {
+        CampaignRecipientStore store = new CampaignRecipientStore(dir.toString(), 100);
+
+        CampaignRecipientStore.StoredList list = store.store(stream("""
+                email,name
+                # opted in 2026-01
+                ann@example.com,Ann Example
+                "bob@example.org" , "Bob, Jr."
+
+                not-an-address,Nobody
+                carl@example.net
+                """));
+
+        assertThat(list.accepted()).isEqualTo(3);
+        assertThat(list.rejected()).isEqualTo(1);
+        assertThat(store.read(list.key(), 0, 10).recipients()).containsExactly(
+                new CampaignRecipientStore.Recipient("ann@example.com", "Ann Example"),
+                new CampaignRecipientStore.Recipient("bob@example.org", "Bob, Jr."),
+                new CampaignRecipientStore.Recipient("carl@example.net", ""));
+    }
+
+    @Test
+    void testReadResumesFromTheReturnedOffset() throws Exception {
+        CampaignRecipientStore store = new CampaignRecipientStore(dir.toString(), 100);
+        StringBuilder recipients = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            recipients.append("user").append(i).append("@example.com,Ünïcode ").append(i).append('\n');
+        }
+        CampaignRecipientStore.StoredList list = store.store(stream(recipients.toString()));
+
+        long offset = 0;
+        int read = 0;
+        CampaignRecipientStore.Chunk chunk;
+        while (!(chunk = store.read(list.key(), offset, 10)).recipients().isEmpty()) {
+            assertThat(chunk.recipients().get(0).email()).isEqualTo("user" + read + "@example.com");
+            assertThat(chunk.recipients().get(0).name()).isEqualTo("Ünïcode " + read);
+            read += chunk.recipients().size();
+            offset = chunk.nextOffset();
+        }
+        assertThat(read).isEqualTo(25);
+    }
+
+    @Test
+    void testStoreRejectsListsOverTheLimitWithoutLeavingFiles() throws Exception {
+        CampaignRecipientStore store = new CampaignRecipientStore(dir.toString(), 2);
+
+        assertThatThrownBy(() -> store.store(stream("a@example.com\nb@example.com\nc@example.com\n")))
+                .isInstanceOf(IllegalArgumentException.class);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
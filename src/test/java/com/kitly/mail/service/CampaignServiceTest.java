@@ -0,0 +1,155 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Campaign;
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.CampaignRepository;
+import com.kitly.mail.repository.EmailRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = "mail.campaigns.chunk-size=4")
+@ActiveProfiles("test")
+@Import({CampaignService.class, CampaignRecipientStore.class, HtmlPreprocessor.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CampaignServiceTest {
+
+    @Autowired
+    private CampaignService campaignService;
+
+    @Autowired
+    private CampaignRepository campaignRepository;
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @MockitoBean
+    private MailProvider mailProvider;
+
+    @MockitoBean
+    private EmailStatusListener statusListener;
+
+    @BeforeEach
+    void setUp() {
+        when(mailProvider.getProviderName()).thenReturn("brevo");
+    }
+
+    @AfterEach
+    void tearDown() {
+        emailRepository.deleteAll();
+        campaignRepository.deleteAll();
+    }
+
+    @Test
+    void testExpandsRecipientsInChunksAndCompletes() throws Exception {
+        Campaign campaign = createCampaign(0, 10);
+
+        campaignService.start(campaign.getId());
+        int inserted = campaignService.expandDue(campaignService.getCampaign(campaign.getId()));
+
+        assertThat(inserted).isEqualTo(10);
+        Campaign completed = campaignService.getCampaign(campaign.getId());
+        assertThat(completed.getStatus()).isEqualTo(Campaign.Status.COMPLETED);
+        assertThat(completed.getExpandedRecipients()).isEqualTo(10);
+        assertThat(campaignService.countByStatus(campaign.getId())).containsEntry(Email.EmailStatus.PENDING, 10L);
+        Email first = emailRepository.findByToEmail("user0@example.com").get(0);
+        assertThat(first.getSubject()).isEqualTo("Hello User 0");
+        assertThat(first.getHtmlContent()).isEqualTo("<p>Hi User 0 <3</p>");
+        assertThat(first.getLeaseOwner()).isNull();
+        assertThat(first.getPriority()).isEqualTo(Email.Priority.BULK);
+        verify(statusListener, times(10)).onStatusChange(any(Email.class), isNull());
+    }
+
+    @Test
+    void testPacesOverTheWindowAndStopsWhilePaused() throws Exception {
+        Campaign campaign = createCampaign(100, 10);
+        campaignService.start(campaign.getId());
+        // 30 of 100 seconds have passed
+        Campaign running = campaignService.getCampaign(campaign.getId());
+        running.setPacedFrom(LocalDateTime.now().minusSeconds(30));
+        campaignRepository.save(running);
+
+        assertThat(campaignService.expandDue(campaignService.getCampaign(campaign.getId()))).isEqualTo(3);
+
+        Campaign beforePause = campaignService.getCampaign(campaign.getId());
+        beforePause.setPacedFrom(LocalDateTime.now().minusSeconds(60));
+        campaignRepository.save(beforePause);
+        campaignService.pause(campaign.getId());
+        assertThat(campaignService.expandDue(beforePause)).isZero();
+
+        Campaign resumed = campaignService.resume(campaign.getId());
+        assertThat(resumed.getPacedBase()).isEqualTo(3);
+        assertThat(campaignService.expandDue(resumed)).isZero();
+        assertThat(emailRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void testCannotStartWithoutRecipients() {
+        Campaign campaign = campaignService.create(Campaign.builder()
+                .name("Empty").fromEmail("news@example.com").fromName("News").subject("Hi").build());
+
+        assertThatThrownBy(() -> campaignService.start(campaign.getId()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("without recipients");
+    }
+
+    @Test
+    void testDueByIsSpreadEvenlyOverTheWindow() {
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 0, 0);
+        Campaign campaign = Campaign.builder()
+                .totalRecipients(1_000_000)
+                .windowSeconds(6 * 3600)
+                .pacedFrom(start)
+                .pacedBase(0)
+                .build();
+
+        assertThat(CampaignService.dueBy(campaign, start.plusHours(3))).isEqualTo(500_000);
+        assertThat(CampaignService.dueBy(campaign, start.plusHours(7))).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void testPersonalizeEscapesValuesInHtml() {
+        assertThat(CampaignService.personalize("<b>{{name}}</b> ({{email}})", "a@example.com", "<Ann>", true))
+                .isEqualTo("<b>&lt;Ann&gt;</b> (a@example.com)");
+        assertThat(CampaignService.personalize("Hi {{name}}", "a@example.com", "<Ann>", false))
+                .isEqualTo("Hi <Ann>");
+    }
+
+    private Campaign createCampaign(long windowSeconds, int recipients) throws Exception {
+        Campaign campaign = campaignService.create(Campaign.builder()
+                .name("Launch")
+                .fromEmail("news@example.com")
+                .fromName("News")
+                .subject("Hello {{name}}")
+                .htmlContent("<p>Hi {{name}} <3</p>")
+                .windowSeconds(windowSeconds)
+                .build());
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < recipients; i++) {
+            list.append("user").append(i).append("@example.com,User ").append(i).append('\n');
+        }
+        campaignService.uploadRecipients(campaign.getId(),
+                new ByteArrayInputStream(list.toString().getBytes(StandardCharsets.UTF_8)));
+        return campaign;
+    }
+}
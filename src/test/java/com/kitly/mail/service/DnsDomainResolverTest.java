@@ -0,0 +1,50 @@
+package com.kitly.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DnsDomainResolverTest {
+
+    private final List<String> queries = new ArrayList<>();
+
+    @Test
+    void testAsksForOneRecordTypePerQuery() throws Exception {
+        assertThat(resolver(Map.of("MX", record("MX", "10 mx.example.com."))).resolve("example.com"))
+                .isEqualTo(DomainResolver.Route.MX);
+        assertThat(queries).containsExactly("example.com./MX");
+
+        queries.clear();
+        assertThat(resolver(Map.of("AAAA", record("AAAA", "2001:db8::1"))).resolve("example.com"))
+                .isEqualTo(DomainResolver.Route.IMPLICIT_MX);
+        assertThat(queries).containsExactly("example.com./MX", "example.com./A", "example.com./AAAA");
+    }
+
+    @Test
+    void testClassifiesNullMxAndMissingDomains() throws Exception {
+        assertThat(resolver(Map.of("MX", record("MX", "0 ."))).resolve("example.com"))
+                .isEqualTo(DomainResolver.Route.NULL_MX);
+        assertThat(resolver(Map.of()).resolve("example.com")).isEqualTo(DomainResolver.Route.NO_DOMAIN);
+        assertThat(new DnsDomainResolver((name, type) -> {
+            throw new NameNotFoundException(name);
+        }).resolve("missing.example")).isEqualTo(DomainResolver.Route.NO_DOMAIN);
+    }
+
+    private DnsDomainResolver resolver(Map<String, Attribute> records) {
+        return new DnsDomainResolver((name, type) -> {
+            queries.add(name + "/" + type);
+            return records.get(type);
+        });
+    }
+
+    private static Attribute record(String type, String value) {
+        return new BasicAttribute(type, value);
+    }
+}
@@ -0,0 +1,128 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DomainDispatcherTest {
+
+    private final PriorityDispatcher dispatcher = new PriorityDispatcher(4, 0, 1000, 16, 4, 1, 1000);
+    private DomainDispatcher domains;
+
+    @AfterEach
+    void tearDown() {
+        domains.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testParsesDomainsAndLimits() {
+        domains = domainDispatcher("");
+
+        assertThat(DomainDispatcher.domainOf("Someone@GMail.com ")).isEqualTo("gmail.com");
+        assertThat(DomainDispatcher.parseLimits("gmail.com=20/4, GMX.de=0.5/1"))
+                .containsEntry("gmail.com", new DomainDispatcher.Limit(20, 4))
+                .containsEntry("gmx.de", new DomainDispatcher.Limit(0.5, 1));
+        assertThatThrownBy(() -> DomainDispatcher.parseLimits("gmail.com=20"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSlowDomainDoesNotBlockOtherDomains() throws Exception {
+        domains = domainDispatcher("slow.example=0/1");
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> slow = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            slow.add(domains.submit(email("slow.example", Email.Priority.TRANSACTIONAL),
+                    () -> release.await(5, TimeUnit.SECONDS)));
+        }
+
+        String fast = domains.submit(email("fast.example", Email.Priority.TRANSACTIONAL), () -> "delivered")
+                .get(2, TimeUnit.SECONDS);
+
+        assertThat(fast).isEqualTo("delivered");
+        assertThat(domains.inFlight("slow.example")).isEqualTo(1);
+        assertThat(domains.backlog("slow.example")).isEqualTo(2);
+        release.countDown();
+        CompletableFuture.allOf(slow.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertThat(domains.delivered("slow.example")).isEqualTo(3);
+        assertThat(domains.delivered(DomainDispatcher.OTHER)).isEqualTo(1);
+    }
+
+    @Test
+    void testDomainRateIsLimitedAfterTheBurst() throws Exception {
+        domains = domainDispatcher("rate.example=10/10");
+        long start = System.nanoTime();
+
+        List<CompletableFuture<Long>> sends = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            sends.add(domains.submit(email("rate.example", Email.Priority.BULK),
+                    () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        // A one second burst of 10, then one send every 100 ms
+        assertThat(sends.get(9).get()).isLessThan(300);
+        assertThat(sends.get(14).get()).isGreaterThanOrEqualTo(400);
+    }
+
+    @Test
+    void testHigherPrioritiesGoFirstWithinADomain() throws Exception {
+        domains = domainDispatcher("one.example=0/1");
+        CountDownLatch release = new CountDownLatch(1);
+        domains.submit(email("one.example", Email.Priority.BULK), () -> release.await(5, TimeUnit.SECONDS));
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<Boolean> bulk = domains.submit(email("one.example", Email.Priority.BULK), () -> order.add("bulk"));
+        CompletableFuture<Boolean> critical = domains.submit(email("one.example", Email.Priority.CRITICAL), () -> order.add("critical"));
+
+        release.countDown();
+        CompletableFuture.allOf(bulk, critical).get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("critical", "bulk");
+    }
+
+    @Test
+    void testWaitingEmailsAndEstimatedWait() throws Exception {
+        domains = domainDispatcher("slow.example=2/1");
+        CountDownLatch release = new CountDownLatch(1);
+        domains.submit(email("slow.example", Email.Priority.BULK), () -> release.await(5, TimeUnit.SECONDS));
+        List<Email> queued = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Email email = email("slow.example", Email.Priority.BULK);
+            queued.add(email);
+            domains.submit(email, () -> true);
+        }
+
+        assertThat(domains.waiting()).containsExactlyInAnyOrderElementsOf(queued);
+        // One token left of the burst of two: four bulk sends ahead need four more at two per second
+        assertThat(domains.estimatedWaitMillis(email("slow.example", Email.Priority.BULK))).isBetween(1500L, 2000L);
+        // Critical mail jumps the bulk backlog
+        assertThat(domains.estimatedWaitMillis(email("slow.example", Email.Priority.CRITICAL))).isZero();
+        assertThat(domains.estimatedWaitMillis(email("idle.example", Email.Priority.BULK))).isZero();
+        release.countDown();
+    }
+
+    private DomainDispatcher domainDispatcher(String limits) {
+        return new DomainDispatcher(dispatcher, 0, 8, limits, 100,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static Email email(String domain, Email.Priority priority) {
+        return Email.builder()
+                .toEmail("someone@" + domain)
+                .priority(priority)
+                .build();
+    }
+}
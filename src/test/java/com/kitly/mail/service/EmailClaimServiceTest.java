@@ -0,0 +1,151 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.EmailRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(EmailClaimService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailClaimServiceTest {
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private EmailClaimService emailClaimService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        emailRepository.deleteAll();
+    }
+
+    @Test
+    void testConcurrentDispatchersClaimDisjointBatches() throws Exception {
+        List<Long> ids = IntStream.range(0, 200)
+                .mapToObj(i -> emailRepository.save(createPendingEmail()).getId())
+                .toList();
+
+        int dispatchers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(dispatchers);
+        CountDownLatch start = new CountDownLatch(1);
+        Map<Long, String> claimedBy = new ConcurrentHashMap<>();
+        List<Future<Integer>> duplicates = new ArrayList<>();
+
+        for (int d = 0; d < dispatchers; d++) {
+            // Each dispatcher acts as a separate instance with its own owner name
+            EmailClaimService claimer = new EmailClaimService(emailRepository, "node-" + d, 300);
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            duplicates.add(executor.submit(() -> {
+                start.await();
+                int clashes = 0;
+                List<Email> batch;
+                do {
+                    batch = transaction.execute(status -> claimer.claimBatch(7));
+                    for (Email email : batch) {
+                        if (claimedBy.putIfAbsent(email.getId(), claimer.getOwner()) != null) {
+                            clashes++;
+                        }
+                    }
+                } while (!batch.isEmpty());
+                return clashes;
+            }));
+        }
+        start.countDown();
+
+        for (Future<Integer> result : duplicates) {
+            assertThat(result.get(30, TimeUnit.SECONDS)).isZero();
+        }
+        executor.shutdown();
+
+        assertThat(claimedBy.keySet()).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(emailRepository.findAllById(ids))
+                .allSatisfy(email -> {
+                    assertThat(email.getLeaseOwner()).isEqualTo(claimedBy.get(email.getId()));
+                    assertThat(email.getLeaseExpiresAt()).isAfter(LocalDateTime.now());
+                });
+    }
+
+    @Test
+    void testExpiredLeasesAreOnlyClaimedForRecovery() {
+        Email leased = createPendingEmail();
+        leased.setLeaseOwner("other-node");
+        leased.setLeaseExpiresAt(LocalDateTime.now().plusMinutes(5));
+        emailRepository.save(leased);
+
+        Email expired = createPendingEmail();
+        expired.setLeaseOwner("dead-node");
+        expired.setLeaseExpiresAt(LocalDateTime.now().minusMinutes(1));
+        expired = emailRepository.save(expired);
+
+        Email sent = createPendingEmail();
+        sent.setStatus(Email.EmailStatus.SENT);
+        emailRepository.save(sent);
+
+        assertThat(emailClaimService.claimBatch(10)).isEmpty();
+
+        List<Email> batch = emailClaimService.claimExpiredBatch(10);
+        assertThat(batch).extracting(Email::getId).containsExactly(expired.getId());
+        assertThat(batch.get(0).getLeaseOwner()).isEqualTo(emailClaimService.getOwner());
+        assertThat(emailClaimService.claimExpiredBatch(10)).isEmpty();
+
+        // Releasing the lease hands the email back to the regular claimers
+        emailClaimService.release(batch.get(0));
+        assertThat(emailClaimService.claimBatch(10)).extracting(Email::getId).containsExactly(expired.getId());
+    }
+
+    @Test
+    void testRenewFailsOnceTheLeaseWasClaimedAgain() {
+        Email email = createPendingEmail();
+        email.setLeaseOwner(emailClaimService.getOwner());
+        email.setLeaseExpiresAt(LocalDateTime.now().minusMinutes(1));
+        Email queued = emailRepository.save(email);
+
+        // Recovery on the same instance takes the expired lease while the email still sits in a queue
+        List<Email> recovered = emailClaimService.claimExpiredBatch(10);
+        assertThat(recovered).extracting(Email::getId).containsExactly(queued.getId());
+
+        assertThat(emailClaimService.renew(queued)).isFalse();
+        assertThat(emailClaimService.renew(recovered.get(0))).isTrue();
+        assertThat(recovered.get(0).getLeaseExpiresAt()).isAfter(LocalDateTime.now());
+        assertThat(emailClaimService.renew(recovered.get(0))).isTrue();
+    }
+
+    private Email createPendingEmail() {
+        return Email.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test")
+                .status(Email.EmailStatus.PENDING)
+                .build();
+    }
+}
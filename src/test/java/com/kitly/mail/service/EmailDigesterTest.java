@@ -0,0 +1,193 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailDigesterTest {
+
+    @Mock
+    private EmailService emailService;
+
+    @TempDir
+    private Path journalDir;
+
+    private EmailDigester digester;
+
+    @AfterEach
+    void tearDown() {
+        if (digester != null) {
+            digester.shutdown();
+        }
+    }
+
+    @Test
+    void testEmailsWithinTheWindowAreMergedWhenItCloses() {
+        digester = digester(20, 100);
+
+        Email first = digester.add(email("Ann commented", "<p>First</p>", Email.Priority.BULK), "comments",
+                Duration.ofMillis(300));
+        Email second = digester.add(email("Bob mentioned you", "<p>Second</p>", Email.Priority.TRANSACTIONAL),
+                "comments", null);
+        digester.add(email("Your invoice", "<p>Invoice</p>", Email.Priority.TRANSACTIONAL), "billing",
+                Duration.ofMillis(300));
+
+        assertThat(second.getMessageId()).isEqualTo(first.getMessageId());
+        assertThat(second.getStatus()).isEqualTo(Email.EmailStatus.PENDING);
+        assertThat(digester.openDigests()).isEqualTo(2);
+        verify(emailService, after(100).never()).queueEmail(any(Email.class));
+
+        ArgumentCaptor<Email> queued = ArgumentCaptor.forClass(Email.class);
+        verify(emailService, timeout(2000).times(2)).queueEmail(queued.capture());
+        Email merged = queued.getAllValues().stream()
+                .filter(email -> email.getMessageId().equals(first.getMessageId()))
+                .findFirst().orElseThrow();
+        assertThat(merged.getSubject()).isEqualTo("Ann commented (+1 more)");
+        assertThat(merged.getHtmlContent()).isEqualTo("<p>First</p>" + EmailDigester.SEPARATOR_HTML + "<p>Second</p>");
+        assertThat(merged.getPriority()).isEqualTo(Email.Priority.TRANSACTIONAL);
+        assertThat(digester.openDigests()).isZero();
+    }
+
+    @Test
+    void testDigestIsSentAsSoonAsItIsFull() {
+        digester = digester(3, 100);
+
+        for (int i = 0; i < 3; i++) {
+            digester.add(email("Comment " + i, null, Email.Priority.BULK), "comments", Duration.ofMinutes(5));
+        }
+
+        ArgumentCaptor<Email> queued = ArgumentCaptor.forClass(Email.class);
+        verify(emailService).queueEmail(queued.capture());
+        assertThat(queued.getValue().getTextContent()).isEqualTo(String.join(EmailDigester.SEPARATOR_TEXT,
+                "Body of Comment 0", "Body of Comment 1", "Body of Comment 2"));
+        assertThat(queued.getValue().getHtmlContent()).isNull();
+        assertThat(digester.openDigests()).isZero();
+    }
+
+    @Test
+    void testEmailsFromDifferentSendersGoIntoSeparateDigests() {
+        digester = digester(20, 100);
+        Email fromBilling = email("Invoice", null, Email.Priority.BULK);
+        fromBilling.setFromEmail("billing@kitly.com");
+
+        Email first = digester.add(email("Ann commented", null, Email.Priority.BULK), "comments", null);
+        Email second = digester.add(fromBilling, "comments", null);
+
+        assertThat(second.getMessageId()).isNotEqualTo(first.getMessageId());
+        assertThat(digester.openDigests()).isEqualTo(2);
+    }
+
+    @Test
+    void testEmailsAreNotDigestedWhenTooManyDigestsAreOpen() {
+        digester = digester(20, 1);
+
+        assertThat(digester.add(email("One", null, Email.Priority.BULK), "comments", null)).isNotNull();
+        assertThat(digester.add(email("Two", null, Email.Priority.BULK), "likes", null)).isNull();
+    }
+
+    @Test
+    void testOpenDigestsAreSpooledOnShutdownWhenTheDatabaseIsDown() throws Exception {
+        digester = digester(20, 100);
+        when(emailService.queueEmail(any(Email.class))).thenThrow(new DatabaseUnavailableException("Database is degraded"));
+
+        digester.add(email("Ann commented", null, Email.Priority.BULK), "comments", null);
+        digester.shutdown();
+
+        verify(emailService).spoolEmail(any(Email.class), any());
+        verify(emailService, never()).sendEmailAsync(any(Email.class), any());
+    }
+
+    @Test
+    void testDigestIsRetriedWhenItCanNeitherBeQueuedNorSpooled() throws Exception {
+        digester = digester(1, 100);
+        when(emailService.queueEmail(any(Email.class)))
+                .thenThrow(new IllegalStateException("Connection refused"))
+                .thenThrow(new IllegalStateException("Connection refused"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Email accepted = digester.add(email("Ann commented", null, Email.Priority.BULK), "comments", null);
+
+        ArgumentCaptor<Email> queued = ArgumentCaptor.forClass(Email.class);
+        verify(emailService, timeout(2000).times(3)).queueEmail(queued.capture());
+        assertThat(queued.getValue().getMessageId()).isEqualTo(accepted.getMessageId());
+        digester.shutdown();
+        digester = null;
+        verify(emailService, times(3)).queueEmail(any(Email.class));
+        try (EmailSpool journal = new EmailSpool(journalDir.toString(), 1 << 20, "never")) {
+            assertThat(journal.pendingCount()).isZero();
+        }
+    }
+
+    @Test
+    void testDigestsLeftInTheJournalAreSentOnStart() throws Exception {
+        try (EmailSpool journal = new EmailSpool(journalDir.toString(), 1 << 20, "never")) {
+            for (String subject : List.of("Ann commented", "Bob commented")) {
+                Email part = email(subject, null, Email.Priority.BULK);
+                part.setMessageId("digest-1");
+                journal.append(new EmailSpool.SpooledEmail(part, List.of()));
+            }
+        }
+
+        digester = digester(20, 100);
+
+        ArgumentCaptor<Email> queued = ArgumentCaptor.forClass(Email.class);
+        verify(emailService, timeout(2000)).queueEmail(queued.capture());
+        assertThat(queued.getValue().getMessageId()).isEqualTo("digest-1");
+        assertThat(queued.getValue().getSubject()).isEqualTo("Ann commented (+1 more)");
+        digester.shutdown();
+        digester = null;
+        try (EmailSpool journal = new EmailSpool(journalDir.toString(), 1 << 20, "never")) {
+            assertThat(journal.pendingCount()).isZero();
+        }
+    }
+
+    @Test
+    void testMergeFallsBackToEscapedTextForPartsWithoutHtml() {
+        Email merged = EmailDigester.merge(List.of(
+                email("Ann commented", "<p>Hi</p>", null),
+                email("Bob <3", null, null)), "message-1");
+
+        assertThat(merged.getHtmlContent()).isEqualTo("<p>Hi</p>" + EmailDigester.SEPARATOR_HTML + "<p>Body of Bob &lt;3</p>");
+        assertThat(merged.getTextContent()).isEqualTo("Body of Ann commented" + EmailDigester.SEPARATOR_TEXT + "Body of Bob <3");
+        assertThat(merged.getMessageId()).isEqualTo("message-1");
+    }
+
+    private EmailDigester digester(int maxItems, int maxOpen) {
+        return new EmailDigester(emailService, 60, 900, maxItems, maxOpen, 10, 50, 1000, journalDir.toString(), 1 << 20, "never",
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static Email email(String subject, String html, Email.Priority priority) {
+        return Email.builder()
+                .fromEmail("notifications@kitly.com")
+                .fromName("Kitly")
+                .toEmail("User@Example.com")
+                .toName("User")
+                .subject(subject)
+                .htmlContent(html)
+                .textContent("Body of " + subject)
+                .priority(priority)
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.repository.EmailRepository;
+import com.kitly.mail.repository.ScheduledEmail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailSchedulerTest {
+
+    @Mock
+    private EmailRepository emailRepository;
+
+    private EmailScheduler emailScheduler;
+
+    private final List<Long> released = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        emailScheduler = new EmailScheduler(emailRepository, 60_000, 2, 100, 10);
+        emailScheduler.start(released::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        emailScheduler.shutdown();
+    }
+
+    @Test
+    void testTrackedEmailFiresAtSendTime() {
+        emailScheduler.track(1L, LocalDateTime.now().plusNanos(200_000_000));
+        emailScheduler.track(2L, LocalDateTime.now().plusHours(1));
+
+        assertThat(emailScheduler.pending()).isEqualTo(1);
+        await().atMost(Duration.ofSeconds(2)).until(() -> released.contains(1L));
+        assertThat(released).containsExactly(1L);
+        assertThat(emailScheduler.pending()).isZero();
+    }
+
+    @Test
+    void testOverdueEmailIsReleasedImmediately() {
+        emailScheduler.track(3L, LocalDateTime.now().minusMinutes(5));
+
+        assertThat(released).containsExactly(3L);
+    }
+
+    @Test
+    void testLoadDueEmailsPagesThroughTheWindow() {
+        LocalDateTime sendAt = LocalDateTime.now().plusMinutes(1);
+        when(emailRepository.findScheduledBefore(any(), any(), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(scheduled(1L, sendAt), scheduled(2L, sendAt)));
+        when(emailRepository.findScheduledBefore(any(), eq(sendAt), eq(2L), any(Limit.class)))
+                .thenReturn(List.of(scheduled(3L, sendAt.plusSeconds(1))));
+
+        emailScheduler.loadDueEmails();
+        emailScheduler.loadDueEmails();
+
+        assertThat(emailScheduler.pending()).isEqualTo(3);
+        assertThat(released).isEmpty();
+    }
+
+    private ScheduledEmail scheduled(long id, LocalDateTime sendAt) {
+        return new ScheduledEmail() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDateTime getSendAt() {
+                return sendAt;
+            }
+        };
+    }
+}
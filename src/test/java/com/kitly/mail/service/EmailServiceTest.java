@@ -1,17 +1,39 @@
 package com.kitly.mail.service;
 
+import com.kitly.mail.model.Attachment;
 import com.kitly.mail.model.Email;
 import com.kitly.mail.repository.EmailRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.transaction.CannotCreateTransactionException;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -27,25 +49,74 @@ class EmailServiceTest {
     @Mock
     private MailProvider mailProvider;
 
+    @Mock
+    private EmailStatusListener emailStatusListener;
+
+    @Mock
+    private EmailScheduler emailScheduler;
+
+    @Mock
+    private EmailClaimService claimService;
+
+    @Mock
+    private AttachmentService attachmentService;
+
+    @Mock
+    private EmailStatusWriter statusWriter;
+
+    @Mock
+    private EmailSpool spool;
+
+    @Mock
+    private DatabaseHealth databaseHealth;
+
+    private PriorityDispatcher dispatcher;
+
+    private DomainDispatcher domainDispatcher;
+
     private EmailService emailService;
 
+    private final HtmlPreprocessor htmlPreprocessor = new HtmlPreprocessor(false, 1,
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
     @BeforeEach
     void setUp() {
-        emailService = new EmailService(emailRepository, mailProvider);
+        dispatcher = new PriorityDispatcher(2, 1, 100, 16, 4, 1, 1000);
+        domainDispatcher = domainDispatcher(dispatcher);
+        emailService = new EmailService(emailRepository, mailProvider, domainDispatcher, emailScheduler, claimService, attachmentService, statusWriter, spool, databaseHealth, List.of(emailStatusListener), ObservationRegistry.NOOP, htmlPreprocessor);
+        lenient().when(claimService.renew(any(Email.class))).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        domainDispatcher.shutdown();
+        dispatcher.shutdown();
     }
 
     @Test
     void testSendEmailSuccess() throws MailProviderException {
         Email email = createTestEmail();
+        when(claimService.getOwner()).thenReturn("node-1");
         when(mailProvider.sendEmail(any(Email.class))).thenReturn("external-id-123");
-        when(emailRepository.save(any(Email.class))).thenAnswer(i -> i.getArgument(0));
+        List<String> leaseOwnersOnSave = new ArrayList<>();
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> {
+            leaseOwnersOnSave.add(i.<Email>getArgument(0).getLeaseOwner());
+            return i.getArgument(0);
+        });
 
         Email result = emailService.sendEmail(email);
 
         assertThat(result.getStatus()).isEqualTo(Email.EmailStatus.SENT);
         assertThat(result.getExternalId()).isEqualTo("external-id-123");
         assertThat(result.getSentAt()).isNotNull();
-        verify(emailRepository, times(2)).save(any(Email.class));
+        assertThat(result.getPriority()).isEqualTo(Email.Priority.TRANSACTIONAL);
+        // PENDING insert is leased to this instance, the terminal update releases the lease
+        assertThat(leaseOwnersOnSave).containsExactly("node-1");
+        verify(emailRepository, times(1)).save(any(Email.class));
+        verify(statusWriter).write(argThat(written -> written.getStatus() == Email.EmailStatus.SENT
+                && written.getLeaseOwner() == null));
+        verify(emailStatusListener).onStatusChange(any(Email.class), isNull());
+        verify(emailStatusListener).onStatusChange(any(Email.class), eq(Email.EmailStatus.PENDING));
     }
 
     @Test
@@ -60,14 +131,185 @@ class EmailServiceTest {
                 .hasMessage("Provider error");
 
         ArgumentCaptor<Email> emailCaptor = ArgumentCaptor.forClass(Email.class);
-        verify(emailRepository, times(2)).save(emailCaptor.capture());
+        verify(emailRepository, times(1)).save(any(Email.class));
+        verify(statusWriter).write(emailCaptor.capture());
 
-        Email savedEmail = emailCaptor.getAllValues().get(1);
+        Email savedEmail = emailCaptor.getValue();
         assertThat(savedEmail.getStatus()).isEqualTo(Email.EmailStatus.FAILED);
         assertThat(savedEmail.getErrorMessage()).contains("Provider error");
         assertThat(savedEmail.getSentAt()).isNull();
     }
 
+    @Test
+    void testSendEmailAsyncReturnsBeforeTheProviderAnswers() throws Exception {
+        CountDownLatch providerCalled = new CountDownLatch(1);
+        CountDownLatch providerAnswer = new CountDownLatch(1);
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> i.getArgument(0));
+        when(mailProvider.sendEmail(any(Email.class))).thenAnswer(i -> {
+            providerCalled.countDown();
+            providerAnswer.await();
+            return "external-id-123";
+        });
+
+        CompletableFuture<Email> delivery = emailService.sendEmailAsync(createTestEmail(), List.of());
+
+        assertThat(providerCalled.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(delivery).isNotDone();
+        providerAnswer.countDown();
+        assertThat(delivery.get(2, TimeUnit.SECONDS).getStatus()).isEqualTo(Email.EmailStatus.SENT);
+    }
+
+    @Test
+    void testDeliverSkipsEmailWhoseLeaseWasLost() throws Exception {
+        Email email = createTestEmail();
+        email.setId(5L);
+        email.setStatus(Email.EmailStatus.PENDING);
+        when(claimService.renew(email)).thenReturn(false);
+
+        Email result = emailService.deliver(email);
+
+        assertThat(result.getStatus()).isEqualTo(Email.EmailStatus.PENDING);
+        verify(mailProvider, never()).sendEmail(any());
+        verify(statusWriter, never()).write(any());
+    }
+
+    @Test
+    void testSendEmailRejectedWhenLaneIsFull() throws Exception {
+        PriorityDispatcher fullDispatcher = mock(PriorityDispatcher.class);
+        when(fullDispatcher.submit(any(), any())).thenThrow(new RejectedExecutionException("Dispatch lane BULK is full"));
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> i.getArgument(0));
+        EmailService service = new EmailService(emailRepository, mailProvider, domainDispatcher(fullDispatcher), emailScheduler, claimService, attachmentService, statusWriter, spool, databaseHealth, List.of(), ObservationRegistry.NOOP, htmlPreprocessor);
+
+        Email email = createTestEmail();
+        email.setPriority(Email.Priority.BULK);
+
+        assertThatThrownBy(() -> service.sendEmail(email))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(email.getStatus()).isEqualTo(Email.EmailStatus.FAILED);
+        assertThat(email.getLeaseOwner()).isNull();
+        assertThat(email.getLeaseExpiresAt()).isNull();
+        verify(mailProvider, never()).sendEmail(any());
+    }
+
+    @Test
+    void testSendEmailWithAttachmentsLinksAndLoadsThem() throws MailProviderException {
+        Email email = createTestEmail();
+        List<Attachment> attachments = List.of(Attachment.builder().id(3L).filename("a.pdf").build());
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> {
+            Email saved = i.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+        when(attachmentService.loadForDelivery(7L)).thenReturn(attachments);
+        when(mailProvider.sendEmail(any(Email.class))).thenReturn("external-id-123");
+
+        Email result = emailService.sendEmail(email, List.of(3L));
+
+        assertThat(result.getAttachmentCount()).isEqualTo(1);
+        verify(attachmentService).verifyUnlinked(List.of(3L));
+        verify(attachmentService).link(7L, List.of(3L));
+        verify(mailProvider).sendEmail(argThat(sent -> sent.getAttachments() == attachments));
+    }
+
+    @Test
+    void testSendEmailWithUsedAttachmentIsRejectedBeforeSaving() throws MailProviderException {
+        doThrow(new IllegalArgumentException("Unknown or already used attachment ids: [3]"))
+                .when(attachmentService).verifyUnlinked(List.of(3L));
+
+        assertThatThrownBy(() -> emailService.sendEmail(createTestEmail(), List.of(3L)))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(emailRepository, never()).save(any());
+        verify(mailProvider, never()).sendEmail(any());
+    }
+
+    @Test
+    void testSendEmailWhenDatabaseIsDownMarksItDegraded() throws MailProviderException {
+        CannotCreateTransactionException down = new CannotCreateTransactionException("Connection refused");
+        when(emailRepository.save(any(Email.class))).thenThrow(down);
+
+        assertThatThrownBy(() -> emailService.sendEmail(createTestEmail()))
+                .isInstanceOf(DatabaseUnavailableException.class)
+                .hasCause(down);
+        verify(databaseHealth).recordFailure(down);
+        verify(mailProvider, never()).sendEmail(any());
+    }
+
+    @Test
+    void testSendEmailWhileDatabaseIsDegradedSkipsTheDatabase() {
+        when(databaseHealth.isDegraded()).thenReturn(true);
+
+        assertThatThrownBy(() -> emailService.sendEmail(createTestEmail()))
+                .isInstanceOf(DatabaseUnavailableException.class);
+        verify(emailRepository, never()).save(any());
+    }
+
+    @Test
+    void testSpoolEmail() throws Exception {
+        Email email = createTestEmail();
+        email.setStatus(null);
+        when(mailProvider.getProviderName()).thenReturn("brevo");
+
+        Email spooled = emailService.spoolEmail(email, List.of(3L));
+
+        assertThat(spooled.getStatus()).isEqualTo(Email.EmailStatus.PENDING);
+        assertThat(spooled.getMessageId()).isNotNull();
+        assertThat(spooled.getProvider()).isEqualTo("brevo");
+        verify(spool).append(new EmailSpool.SpooledEmail(email, List.of(3L)));
+        verify(emailRepository, never()).save(any());
+    }
+
+    @Test
+    void testAcceptSpooledWithMissingAttachmentsStoresItAsFailed() {
+        Email email = createTestEmail();
+        email.setMessageId("message-1");
+        doThrow(new IllegalArgumentException("Unknown or already used attachment ids: [3]"))
+                .when(attachmentService).verifyUnlinked(List.of(3L));
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> i.getArgument(0));
+
+        emailService.acceptSpooled(new EmailSpool.SpooledEmail(email, List.of(3L)));
+
+        verify(emailRepository).save(argThat(saved -> saved.getStatus() == Email.EmailStatus.FAILED
+                && saved.getAttachmentCount() == 0));
+        verify(emailStatusListener).onStatusChange(email, null);
+    }
+
+    @Test
+    void testScheduleEmail() throws MailProviderException {
+        Email email = createTestEmail();
+        email.setSendAt(LocalDateTime.now().plusHours(1));
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> {
+            Email saved = i.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+
+        Email result = emailService.scheduleEmail(email);
+
+        assertThat(result.getStatus()).isEqualTo(Email.EmailStatus.SCHEDULED);
+        verify(emailScheduler).track(7L, email.getSendAt());
+        verify(emailStatusListener).onStatusChange(result, null);
+        verify(mailProvider, never()).sendEmail(any());
+    }
+
+    @Test
+    void testReleaseScheduledDeliversOnce() throws Exception {
+        Email email = createTestEmail();
+        email.setId(7L);
+        email.setPriority(Email.Priority.TRANSACTIONAL);
+        when(claimService.getOwner()).thenReturn("node-1");
+        when(emailRepository.claimScheduled(eq(7L), eq("node-1"), any())).thenReturn(1, 0);
+        when(emailRepository.findById(7L)).thenReturn(Optional.of(email));
+        when(mailProvider.sendEmail(any(Email.class))).thenReturn("external-id-123");
+
+        emailService.releaseScheduled(7L);
+        emailService.releaseScheduled(7L);
+
+        verify(mailProvider, timeout(2000)).sendEmail(email);
+        verify(emailStatusListener, timeout(2000)).onStatusChange(email, Email.EmailStatus.PENDING);
+        verify(emailStatusListener).onStatusChange(email, Email.EmailStatus.SCHEDULED);
+        verify(emailRepository, times(1)).findById(7L);
+    }
+
     @Test
     void testGetEmailById() {
         Email email = createTestEmail();
@@ -122,6 +364,50 @@ class EmailServiceTest {
         verify(emailRepository).findByToEmail("test@example.com");
     }
 
+    private static DomainDispatcher domainDispatcher(PriorityDispatcher dispatcher) {
+        return new DomainDispatcher(dispatcher, 0, 100, "", 100,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    @Test
+    void testSendEmailRecordsFlightRecorderTimeline() throws Exception {
+        when(emailRepository.save(any(Email.class))).thenAnswer(i -> {
+            Email saved = i.getArgument(0);
+            saved.setId(42L);
+            return saved;
+        });
+        when(mailProvider.sendEmail(any(Email.class))).thenReturn("external-id-123");
+        emailService = new EmailService(emailRepository, mailProvider, domainDispatcher, emailScheduler, claimService,
+                attachmentService, statusWriter, spool, databaseHealth,
+                List.of(new StatusTransitionRecorder()), ObservationRegistry.NOOP, htmlPreprocessor);
+
+        Path dump = Files.createTempFile("email-service", ".jfr");
+        try (Reader settings = new InputStreamReader(getClass().getResourceAsStream("/kitly-mail.jfc"), StandardCharsets.UTF_8);
+             Recording recording = new Recording(Configuration.create(settings))) {
+            recording.start();
+            emailService.sendEmail(createTestEmail());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().startsWith("com.kitly.mail."))
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                .toList();
+        Files.delete(dump);
+        assertThat(events).allSatisfy(event -> assertThat(event.getLong("emailId")).isEqualTo(42L));
+        assertThat(events).extracting(event -> event.getEventType().getName()).containsExactly(
+                "com.kitly.mail.EmailAccepted",
+                "com.kitly.mail.EmailPersisted",
+                "com.kitly.mail.StatusTransition",
+                "com.kitly.mail.EmailPersisted",
+                "com.kitly.mail.StatusTransition");
+        assertThat(events.get(1).getString("operation")).isEqualTo("insert");
+        assertThat(events.get(3).getString("operation")).isEqualTo("status");
+        assertThat(events.get(4).getString("from")).isEqualTo("PENDING");
+        assertThat(events.get(4).getString("to")).isEqualTo("SENT");
+    }
+
     private Email createTestEmail() {
         return Email.builder()
                 .fromEmail("sender@example.com")
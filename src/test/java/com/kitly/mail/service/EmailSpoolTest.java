@@ -0,0 +1,158 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testAppendedEmailsSurviveReopen() throws Exception {
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 1 << 16, "always")) {
+            spool.append(new EmailSpool.SpooledEmail(email(0), List.of(3L, 4L)));
+            spool.append(new EmailSpool.SpooledEmail(email(1), List.of()));
+            spool.markReplayed(spool.readPending(1).get(0));
+        }
+
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 1 << 16, "always")) {
+            List<EmailSpool.Entry> pending = spool.readPending(10);
+
+            assertThat(spool.pendingCount()).isEqualTo(1);
+            assertThat(pending).hasSize(1);
+            Email email = pending.get(0).email().email();
+            assertThat(email.getSubject()).isEqualTo("email-1");
+            assertThat(email.getMessageId()).isEqualTo("message-1");
+            assertThat(email.getStatus()).isEqualTo(Email.EmailStatus.PENDING);
+            assertThat(email.getSendAt()).isEqualTo(LocalDateTime.of(2030, 1, 1, 8, 0));
+            assertThat(email.getTextContent()).isNull();
+        }
+    }
+
+    @Test
+    void testSpoolDirectoryIsLockedByOneOwner() throws Exception {
+        try (EmailSpool ignored = new EmailSpool(dir.toString(), 1 << 16, "never")) {
+            assertThatThrownBy(() -> new EmailSpool(dir.toString(), 1 << 16, "never"))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscardedOnRecovery() throws Exception {
+        int recordSize = 9 + EmailSpool.encode(new EmailSpool.SpooledEmail(email(0), List.of())).length;
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 1 << 16, "always")) {
+            spool.append(new EmailSpool.SpooledEmail(email(0), List.of()));
+        }
+        // A record whose length made it to disk but whose payload did not
+        try (FileChannel segment = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.allocate(9).putInt(recordSize).putInt(12345).put((byte) 0).flip(), recordSize);
+        }
+
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 1 << 16, "always")) {
+            assertThat(spool.pendingCount()).isEqualTo(1);
+            spool.append(new EmailSpool.SpooledEmail(email(1), List.of()));
+            assertThat(spool.readPending(10)).extracting(entry -> entry.email().email().getSubject())
+                    .containsExactly("email-0", "email-1");
+        }
+    }
+
+    @Test
+    void testReplayedSegmentsAreDeleted() throws Exception {
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 1024, "never")) {
+            for (int i = 0; i < 20; i++) {
+                spool.append(new EmailSpool.SpooledEmail(email(i), List.of()));
+            }
+            assertThat(segments()).hasSizeGreaterThan(2);
+
+            for (EmailSpool.Entry entry : spool.readPending(100)) {
+                spool.markReplayed(entry);
+            }
+            spool.deleteReplayedSegments();
+
+            assertThat(spool.pendingCount()).isZero();
+            assertThat(segments()).hasSize(1);
+        }
+    }
+
+    @Test
+    void testAcknowledgedEmailsSurviveAKilledProcess() throws Exception {
+        Process writer = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), SpoolWriter.class.getName(), dir.toString())
+                .redirectErrorStream(true)
+                .start();
+        int acknowledged = -1;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (acknowledged < 200 && (line = out.readLine()) != null) {
+                if (line.startsWith("ACK ")) {
+                    acknowledged = Integer.parseInt(line.substring(4));
+                }
+            }
+        } finally {
+            writer.destroyForcibly();
+            writer.waitFor(10, TimeUnit.SECONDS);
+        }
+        assertThat(acknowledged).isEqualTo(200);
+
+        try (EmailSpool spool = new EmailSpool(dir.toString(), 4096, "always")) {
+            List<EmailSpool.Entry> pending = spool.readPending(Integer.MAX_VALUE);
+
+            assertThat(pending.size()).isGreaterThan(acknowledged);
+            for (int i = 0; i < pending.size(); i++) {
+                assertThat(pending.get(i).email().email().getSubject()).isEqualTo("email-" + i);
+            }
+        }
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".spool")).sorted().toList();
+        }
+    }
+
+    private static Email email(int i) {
+        return Email.builder()
+                .messageId("message-" + i)
+                .fromEmail("sender@example.com")
+                .toEmail("recipient@example.com")
+                .subject("email-" + i)
+                .htmlContent("<h1>Hello " + i + "</h1>")
+                .status(Email.EmailStatus.PENDING)
+                .priority(Email.Priority.BULK)
+                .sendAt(LocalDateTime.of(2030, 1, 1, 8, 0))
+                .build();
+    }
+
+    /**
+     * Appends emails until killed, acknowledging each one after the append returned.
+     */
+    static class SpoolWriter {
+
+        public static void main(String[] args) throws Exception {
+            EmailSpool spool = new EmailSpool(args[0], 4096, "always");
+            for (int i = 0; ; i++) {
+                spool.append(new EmailSpool.SpooledEmail(email(i), List.of()));
+                System.out.println("ACK " + i);
+                System.out.flush();
+            }
+        }
+    }
+}
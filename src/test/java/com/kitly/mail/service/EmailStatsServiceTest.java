@@ -0,0 +1,114 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.model.EmailStatsRollup;
+import com.kitly.mail.repository.EmailStatsRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailStatsServiceTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    @Mock
+    private EmailStatsRollupRepository rollupRepository;
+
+    private EmailStatsService emailStatsService;
+
+    @BeforeEach
+    void setUp() {
+        emailStatsService = new EmailStatsService(rollupRepository);
+    }
+
+    @Test
+    void testTransitionsMoveCountBetweenStatuses() {
+        Email email = createTestEmail(HOUR.plusMinutes(15));
+
+        emailStatsService.onStatusChange(email, null);
+        email.setStatus(Email.EmailStatus.SENT);
+        emailStatsService.onStatusChange(email, Email.EmailStatus.PENDING);
+
+        EmailStats stats = emailStatsService.getStats(HOUR, HOUR.plusHours(1), EmailStatsService.Granularity.HOUR);
+
+        assertThat(stats.getTotals()).containsEntry("SENT", 1L).doesNotContainKey("PENDING");
+        assertThat(stats.getByProvider().get("BREVO")).containsEntry("SENT", 1L);
+        assertThat(stats.getBuckets()).hasSize(1);
+        assertThat(stats.getBuckets().get(0).getStart()).isEqualTo(HOUR);
+    }
+
+    @Test
+    void testStatsCombineFlushedRollupAndPendingDeltas() {
+        when(rollupRepository.findByIdBucketStartGreaterThanEqualAndIdBucketStartLessThan(any(), any()))
+                .thenReturn(List.of(
+                        new EmailStatsRollup(new EmailStatsRollup.Key(HOUR, "SENT", "BREVO"), 3),
+                        new EmailStatsRollup(new EmailStatsRollup.Key(HOUR.plusHours(1), "FAILED", "BREVO"), 1)));
+
+        Email email = createTestEmail(HOUR.plusHours(2));
+        email.setStatus(Email.EmailStatus.FAILED);
+        emailStatsService.onStatusChange(email, null);
+
+        EmailStats stats = emailStatsService.getStats(HOUR, HOUR.plusDays(1), EmailStatsService.Granularity.DAY);
+
+        assertThat(stats.getTotals()).containsEntry("SENT", 3L).containsEntry("FAILED", 2L);
+        assertThat(stats.getBuckets()).hasSize(1);
+        assertThat(stats.getFailureRate()).isEqualTo(0.4);
+    }
+
+    @Test
+    void testFlushIncrementsExistingRowsAndInsertsMissingOnes() {
+        Email sent = createTestEmail(HOUR);
+        sent.setStatus(Email.EmailStatus.SENT);
+        emailStatsService.onStatusChange(sent, null);
+        emailStatsService.onStatusChange(sent, null);
+
+        when(rollupRepository.increment(any(), anyLong())).thenReturn(0);
+
+        emailStatsService.flush();
+
+        verify(rollupRepository).increment(new EmailStatsRollup.Key(HOUR, "SENT", "BREVO"), 2L);
+        verify(rollupRepository).insert(HOUR, "SENT", "BREVO", 2L);
+
+        emailStatsService.flush();
+        verifyNoMoreInteractions(rollupRepository);
+    }
+
+    @Test
+    void testFailedFlushKeepsDeltas() {
+        Email sent = createTestEmail(HOUR);
+        sent.setStatus(Email.EmailStatus.SENT);
+        emailStatsService.onStatusChange(sent, null);
+
+        when(rollupRepository.increment(any(), anyLong())).thenThrow(new RuntimeException("DB down"));
+        emailStatsService.flush();
+
+        EmailStats stats = emailStatsService.getStats(HOUR, HOUR.plusHours(1), EmailStatsService.Granularity.HOUR);
+        assertThat(stats.getTotals()).containsEntry("SENT", 1L);
+        verify(rollupRepository, never()).insert(any(), any(), any(), eq(1L));
+    }
+
+    private Email createTestEmail(LocalDateTime createdAt) {
+        return Email.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .status(Email.EmailStatus.PENDING)
+                .provider("BREVO")
+                .createdAt(createdAt)
+                .build();
+    }
+}
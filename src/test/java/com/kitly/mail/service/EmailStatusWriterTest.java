@@ -0,0 +1,113 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import com.kitly.mail.repository.EmailRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailStatusWriterTest {
+
+    @Autowired
+    private EmailRepository emailRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private EmailStatusWriter writer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        emailRepository.deleteAll();
+    }
+
+    @Test
+    void testBufferedUpdatesAreFlushedInBatches() {
+        writer = new EmailStatusWriter(new JdbcTemplate(dataSource), 1000, 50, 50, "");
+        List<Email> emails = IntStream.range(0, 120)
+                .mapToObj(i -> emailRepository.save(createPendingEmail()))
+                .toList();
+
+        for (Email email : emails) {
+            email.setStatus(Email.EmailStatus.SENT);
+            email.setExternalId("ext-" + email.getId());
+            email.setSentAt(LocalDateTime.now());
+            writer.write(email);
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> emailRepository.findByStatus(Email.EmailStatus.SENT).size() == 120);
+        Email stored = emailRepository.findById(emails.get(0).getId()).orElseThrow();
+        assertThat(stored.getExternalId()).isEqualTo("ext-" + stored.getId());
+        assertThat(stored.getLeaseOwner()).isNull();
+        assertThat(stored.getSentAt()).isNotNull();
+    }
+
+    @Test
+    void testDurablePriorityIsWrittenBeforeWriteReturns() {
+        writer = new EmailStatusWriter(new JdbcTemplate(dataSource), 1000, 50, 10_000, "CRITICAL");
+        Email email = createPendingEmail();
+        email.setPriority(Email.Priority.CRITICAL);
+        email = emailRepository.save(email);
+
+        email.setStatus(Email.EmailStatus.FAILED);
+        email.setErrorMessage("Provider error");
+        long start = System.nanoTime();
+        writer.write(email);
+
+        assertThat(emailRepository.findById(email.getId()).orElseThrow().getStatus()).isEqualTo(Email.EmailStatus.FAILED);
+        // Flushed without waiting for the flush interval
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testOnlyPendingEmailsAreUpdatedAndShutdownFlushesTheRest() throws Exception {
+        writer = new EmailStatusWriter(new JdbcTemplate(dataSource), 1000, 50, 10_000, "");
+        Email alreadySent = createPendingEmail();
+        alreadySent.setStatus(Email.EmailStatus.SENT);
+        alreadySent = emailRepository.save(alreadySent);
+        Email pending = emailRepository.save(createPendingEmail());
+
+        alreadySent.setStatus(Email.EmailStatus.FAILED);
+        writer.write(alreadySent);
+        pending.setStatus(Email.EmailStatus.SENT);
+        writer.write(pending);
+        writer.shutdown();
+        writer = null;
+
+        assertThat(emailRepository.findById(alreadySent.getId()).orElseThrow().getStatus()).isEqualTo(Email.EmailStatus.SENT);
+        assertThat(emailRepository.findById(pending.getId()).orElseThrow().getStatus()).isEqualTo(Email.EmailStatus.SENT);
+    }
+
+    private Email createPendingEmail() {
+        return Email.builder()
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test Subject")
+                .status(Email.EmailStatus.PENDING)
+                .leaseOwner("node-1")
+                .leaseExpiresAt(LocalDateTime.now().plusMinutes(5))
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HtmlPreprocessorTest {
+
+    private final HtmlPreprocessor preprocessor = new HtmlPreprocessor(true, 1,
+            new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    @Test
+    void testInlinesStylesBySpecificityWithInlineStylesWinning() {
+        String html = """
+                <style>
+                  /* brand colours */
+                  p { color: #333; margin: 0 }
+                  .lead { color: #000; font-size: 18px }
+                  #intro { color: red !important }
+                  a { background: url(data:image/png;base64,AAAA) }
+                </style>
+                <p class="lead" style="margin: 4px; color: blue">Hello</p>
+                <p id="intro" style="color: green">Intro</p>
+                <a href="https://kitly.com">Kitly</a>
+                """;
+
+        String result = preprocessor.process(html).html();
+
+        assertThat(result).isEqualTo("<p class=\"lead\" style=\"color:blue;margin:4px;font-size:18px\">Hello</p> "
+                + "<p id=\"intro\" style=\"color:red !important;margin:0\">Intro</p> "
+                + "<a href=\"https://kitly.com\" style=\"background:url(data:image/png;base64,AAAA)\">Kitly</a>");
+    }
+
+    @Test
+    void testKeepsRulesThatCannotBeInlined() {
+        String html = "<!DOCTYPE html><html><head><style>"
+                + "a:hover { color: red } td { padding: 8px } @media (max-width: 600px) { td { display: block } }"
+                + "</style></head><body><table>\n  <tr>\n    <td>Cell</td>\n  </tr>\n</table></body></html>";
+
+        String result = preprocessor.process(html).html();
+
+        assertThat(result).isEqualTo("<!doctype html><html><head>"
+                + "<style>a:hover{color: red}@media (max-width: 600px){ td { display: block } }</style></head>"
+                + "<body><table><tbody><tr><td style=\"padding:8px\">Cell</td></tr></tbody></table></body></html>");
+    }
+
+    @Test
+    void testRemovesCommentsAndWhitespaceButKeepsConditionalCommentsAndPre() {
+        String html = "<div>\n   <!-- tracking: campaign 42 -->\n   <b>Hi</b>\n   <i>there</i>\n</div>"
+                + "<!--[if mso]><table><tr><td><![endif]-->"
+                + "<pre>  keep\n    this</pre>";
+
+        String result = preprocessor.process(html).html();
+
+        assertThat(result).isEqualTo("<div> <b>Hi</b> <i>there</i> </div>"
+                + "<!--[if mso]><table><tr><td><![endif]-->"
+                + "<pre>  keep\n    this</pre>");
+    }
+
+    @Test
+    void testDerivesTextContent() {
+        String html = "<h1>Your order</h1><p>Thanks, <b>Ann</b>!<br>It ships today.</p>"
+                + "<ul><li>1 x Mug</li><li>2 x Tea</li></ul>"
+                + "<p><a href=\"https://kitly.com/orders/1\">Track it</a></p>";
+
+        String text = preprocessor.process(html).text();
+
+        assertThat(text).isEqualTo("""
+                Your order
+
+                Thanks, Ann!
+                It ships today.
+
+                - 1 x Mug
+                - 2 x Tea
+
+                Track it (https://kitly.com/orders/1)""");
+    }
+
+    @Test
+    void testPrepareKeepsGivenTextAndProcessesEachBodyOnce() {
+        Email withText = Email.builder().htmlContent("<p>\n  Hello\n</p>").textContent("Hello there").build();
+        Email withoutText = Email.builder().htmlContent("<p>\n  Hello\n</p>").build();
+
+        preprocessor.prepare(withText);
+        preprocessor.prepare(withoutText);
+
+        assertThat(withText.getHtmlContent()).isEqualTo("<p> Hello </p>");
+        assertThat(withText.getTextContent()).isEqualTo("Hello there");
+        assertThat(withoutText.getTextContent()).isEqualTo("Hello");
+        assertThat(preprocessor.process("<p>\n  Hello\n</p>")).isSameAs(preprocessor.process("<p>\n  Hello\n</p>"));
+    }
+
+    @Test
+    void testDisabledLeavesEmailUntouched() {
+        HtmlPreprocessor disabled = new HtmlPreprocessor(false, 1,
+                new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        Email email = Email.builder().htmlContent("<p>\n  Hello\n</p>").build();
+
+        disabled.prepare(email);
+
+        assertThat(email.getHtmlContent()).isEqualTo("<p>\n  Hello\n</p>");
+        assertThat(email.getTextContent()).isNull();
+    }
+}
@@ -0,0 +1,59 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PendingEmailPollerTest {
+
+    @Mock
+    private EmailClaimService claimService;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private DomainDispatcher dispatcher;
+
+    private PendingEmailPoller poller;
+
+    @BeforeEach
+    void setUp() {
+        poller = new PendingEmailPoller(claimService, emailService, dispatcher, 2, 100);
+    }
+
+    @Test
+    void testEmailRejectedByFullBacklogIsReleased() {
+        Email accepted = createPendingEmail(1L);
+        Email rejected = createPendingEmail(2L);
+        when(claimService.claimBatch(2)).thenReturn(List.of(accepted, rejected));
+        when(dispatcher.submit(same(accepted), any())).thenReturn(null);
+        when(dispatcher.submit(same(rejected), any())).thenThrow(new RejectedExecutionException("Backlog full"));
+
+        poller.poll();
+
+        verify(claimService).release(rejected);
+        verify(claimService, never()).release(accepted);
+        verify(claimService, times(1)).claimBatch(2);
+    }
+
+    private Email createPendingEmail(Long id) {
+        return Email.builder()
+                .id(id)
+                .fromEmail("sender@example.com")
+                .toEmail("recipient@example.com")
+                .subject("Test")
+                .status(Email.EmailStatus.PENDING)
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PendingEmailRecoveryTest {
+
+    @Mock
+    private EmailClaimService claimService;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private MailProvider mailProvider;
+
+    private PendingEmailRecovery recovery;
+
+    @BeforeEach
+    void setUp() {
+        recovery = new PendingEmailRecovery(claimService, emailService, mailProvider, 2, 100);
+    }
+
+    @Test
+    void testDeliveredEmailIsMarkedSent() {
+        Email email = createStaleEmail(1L);
+        when(mailProvider.lookupDelivery(email)).thenReturn(DeliveryLookup.delivered("msg-1"));
+
+        recovery.recover(email);
+
+        verify(emailService).markSent(email, "msg-1");
+        verify(claimService, never()).release(any());
+    }
+
+    @Test
+    void testEmailUnknownToProviderIsRequeued() {
+        Email email = createStaleEmail(1L);
+        when(mailProvider.lookupDelivery(email)).thenReturn(DeliveryLookup.notFound());
+
+        recovery.recover(email);
+
+        verify(claimService).release(email);
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void testUnknownOutcomeIsRequeuedOnlyForIdempotentProviders() {
+        Email idempotent = createStaleEmail(1L);
+        Email risky = createStaleEmail(2L);
+        when(mailProvider.lookupDelivery(any())).thenReturn(DeliveryLookup.unknown());
+        when(mailProvider.isIdempotent()).thenReturn(true, false);
+
+        recovery.recover(idempotent);
+        recovery.recover(risky);
+
+        verify(claimService).release(idempotent);
+        verify(emailService).markFailed(risky, PendingEmailRecovery.UNKNOWN_OUTCOME);
+    }
+
+    @Test
+    void testSweepDrainsExpiredBatches() {
+        List<Email> full = IntStream.range(0, 2).mapToObj(i -> createStaleEmail((long) i)).toList();
+        when(claimService.claimExpiredBatch(2))
+                .thenReturn(full)
+                .thenReturn(List.of(createStaleEmail(3L)))
+                .thenReturn(List.of());
+        when(mailProvider.lookupDelivery(any())).thenReturn(DeliveryLookup.notFound());
+
+        recovery.sweep();
+
+        verify(claimService, times(2)).claimExpiredBatch(2);
+        verify(claimService, times(3)).release(any());
+    }
+
+    private Email createStaleEmail(Long id) {
+        return Email.builder()
+                .id(id)
+                .fromEmail("sender@example.com")
+                .fromName("Sender")
+                .toEmail("recipient@example.com")
+                .toName("Recipient")
+                .subject("Test")
+                .status(Email.EmailStatus.PENDING)
+                .messageId("mid-" + id)
+                .leaseOwner("dead-node")
+                .build();
+    }
+}
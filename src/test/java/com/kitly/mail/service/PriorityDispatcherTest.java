@@ -0,0 +1,120 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PriorityDispatcherTest {
+
+    private PriorityDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testWeightedRoundRobinFavorsHigherPriorityLanes() throws Exception {
+        dispatcher = new PriorityDispatcher(1, 0, 100, 3, 1, 1, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(Email.Priority.BULK, () -> release.await(5, TimeUnit.SECONDS));
+        awaitIdleLane(Email.Priority.BULK);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(dispatcher.submit(Email.Priority.BULK, () -> order.add("B")));
+        }
+        for (int i = 0; i < 6; i++) {
+            tasks.add(dispatcher.submit(Email.Priority.CRITICAL, () -> order.add("C")));
+        }
+        release.countDown();
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        // With weights 3:1, critical gets three of every four slots while both lanes are busy
+        assertThat(String.join("", order)).isEqualTo("CCBCCCBCBB");
+    }
+
+    @Test
+    void testReservedWorkerServesCriticalWhileOthersAreBusy() throws Exception {
+        dispatcher = new PriorityDispatcher(2, 1, 100, 16, 4, 1, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(Email.Priority.BULK, () -> release.await(5, TimeUnit.SECONDS));
+        awaitIdleLane(Email.Priority.BULK);
+        dispatcher.submit(Email.Priority.BULK, () -> "queued behind the blocked worker");
+
+        String result = dispatcher.submit(Email.Priority.CRITICAL, () -> "critical")
+                .get(2, TimeUnit.SECONDS);
+
+        assertThat(result).isEqualTo("critical");
+        assertThat(dispatcher.queued(Email.Priority.BULK)).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    void testRejectsWhenLaneIsFull() {
+        dispatcher = new PriorityDispatcher(1, 0, 1, 16, 4, 1, 1000);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(Email.Priority.BULK, () -> release.await(5, TimeUnit.SECONDS));
+        awaitIdleLane(Email.Priority.BULK);
+        dispatcher.submit(Email.Priority.BULK, () -> true);
+
+        assertThatThrownBy(() -> dispatcher.submit(Email.Priority.BULK, () -> true))
+                .isInstanceOf(RejectedExecutionException.class)
+                .hasMessageContaining("BULK");
+        // Other lanes are unaffected
+        dispatcher.submit(Email.Priority.CRITICAL, () -> true);
+        release.countDown();
+    }
+
+    @Test
+    void testTaskExceptionCompletesFutureExceptionally() {
+        dispatcher = new PriorityDispatcher(1, 0, 10, 16, 4, 1, 1000);
+
+        CompletableFuture<Object> future = dispatcher.submit(Email.Priority.TRANSACTIONAL, () -> {
+            throw new MailProviderException("Provider error");
+        });
+
+        assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(MailProviderException.class);
+    }
+
+    @Test
+    void testShutdownLetsRunningTasksFinishAndFailsQueuedOnes() throws Exception {
+        dispatcher = new PriorityDispatcher(1, 0, 10, 16, 4, 1, 2000);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> running = dispatcher.submit(Email.Priority.TRANSACTIONAL, () -> {
+            started.countDown();
+            // An interrupt would cut this provider call short
+            Thread.sleep(200);
+            return "accepted";
+        });
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = dispatcher.submit(Email.Priority.TRANSACTIONAL, () -> "never runs");
+
+        dispatcher.shutdown();
+
+        assertThat(running).isCompletedWithValue("accepted");
+        assertThatThrownBy(queued::join).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThatThrownBy(() -> dispatcher.submit(Email.Priority.CRITICAL, () -> true))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private void awaitIdleLane(Email.Priority priority) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (dispatcher.queued(priority) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
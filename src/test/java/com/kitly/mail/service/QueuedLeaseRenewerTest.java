@@ -0,0 +1,52 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueuedLeaseRenewerTest {
+
+    @Mock
+    private EmailClaimService claimService;
+
+    @Mock
+    private DomainDispatcher dispatcher;
+
+    @Test
+    void testRenewsOnlyLeasesRunningOutBeforeTheNextPasses() {
+        Email expiring = createQueuedEmail(1L, LocalDateTime.now().plusSeconds(90));
+        Email fresh = createQueuedEmail(2L, LocalDateTime.now().plusSeconds(290));
+        when(dispatcher.waiting()).thenReturn(List.of(expiring, fresh));
+        when(claimService.renew(expiring)).thenReturn(true);
+
+        new QueuedLeaseRenewer(claimService, dispatcher, 60_000, 300).renew();
+
+        verify(claimService).renew(expiring);
+        verify(claimService, never()).renew(fresh);
+    }
+
+    @Test
+    void testRenewIntervalMustLeaveRoomBeforeTheLeaseRunsOut() {
+        assertThatThrownBy(() -> new QueuedLeaseRenewer(claimService, dispatcher, 150_000, 300))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Email createQueuedEmail(Long id, LocalDateTime leaseExpiresAt) {
+        return Email.builder()
+                .id(id)
+                .toEmail("recipient@gmx.de")
+                .status(Email.EmailStatus.PENDING)
+                .leaseOwner("node-1")
+                .leaseExpiresAt(leaseExpiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.kitly.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecipientValidatorTest {
+
+    private final StubDomainResolver resolver = new StubDomainResolver();
+    private final AtomicLong nanos = new AtomicLong();
+
+    private RecipientValidator validator(List<String> extraDisposable) {
+        return new RecipientValidator(resolver, true, true, extraDisposable,
+                Duration.ofMinutes(60), Duration.ofMinutes(10), 1000, nanos::get);
+    }
+
+    @Test
+    void testNormalize() {
+        assertThat(RecipientValidator.normalize(" John.Doe@Example.COM ")).isEqualTo("John.Doe@example.com");
+        assertThat(RecipientValidator.normalize("user+tag@example.com.")).isEqualTo("user+tag@example.com");
+        assertThat(RecipientValidator.normalize("user@bücher.de")).isEqualTo("user@xn--bcher-kva.de");
+
+        assertThat(RecipientValidator.normalize(null)).isNull();
+        assertThat(RecipientValidator.normalize("user")).isNull();
+        assertThat(RecipientValidator.normalize("@example.com")).isNull();
+        assertThat(RecipientValidator.normalize("user@")).isNull();
+        assertThat(RecipientValidator.normalize("user@localhost")).isNull();
+        assertThat(RecipientValidator.normalize("user@192.168.0.1")).isNull();
+        assertThat(RecipientValidator.normalize("us..er@example.com")).isNull();
+        assertThat(RecipientValidator.normalize("user name@example.com")).isNull();
+        assertThat(RecipientValidator.normalize("user@-example.com")).isNull();
+        assertThat(RecipientValidator.normalize("a".repeat(65) + "@example.com")).isNull();
+    }
+
+    @Test
+    void testDisposableDomainsAreRejected() {
+        RecipientValidator validator = validator(List.of("Throwaway.test"));
+
+        assertThat(validator.validate("someone@mailinator.com").reason())
+                .isEqualTo(RecipientValidator.Reason.DISPOSABLE_DOMAIN);
+        assertThat(validator.validate("someone@eu.mailinator.com").reason())
+                .isEqualTo(RecipientValidator.Reason.DISPOSABLE_DOMAIN);
+        assertThat(validator.validate("someone@throwaway.test").reason())
+                .isEqualTo(RecipientValidator.Reason.DISPOSABLE_DOMAIN);
+        assertThat(validator.validate("someone@notmailinator.com").valid()).isTrue();
+        // Disposable domains are rejected without a lookup
+        assertThat(resolver.lookups()).isEqualTo(1);
+    }
+
+    @Test
+    void testDomainsThatTakeNoMailAreRejected() {
+        resolver.route("nullmx.test", DomainResolver.Route.NULL_MX)
+                .route("missing.test", DomainResolver.Route.NO_DOMAIN)
+                .route("implicit.test", DomainResolver.Route.IMPLICIT_MX);
+        RecipientValidator validator = validator(List.of());
+
+        RecipientValidator.Verdict nullMx = validator.validate("someone@nullmx.test");
+        assertThat(nullMx.valid()).isFalse();
+        assertThat(nullMx.reason()).isEqualTo(RecipientValidator.Reason.NO_MAIL_DOMAIN);
+        assertThat(nullMx.rejection()).contains("accepts no mail");
+        assertThat(validator.validate("someone@missing.test").rejection()).contains("does not exist");
+        assertThat(validator.validate("someone@implicit.test").valid()).isTrue();
+        assertThat(validator.validate("not an address").reason()).isEqualTo(RecipientValidator.Reason.SYNTAX);
+    }
+
+    @Test
+    void testLookupsAreCachedUntilTheirTtlExpires() {
+        resolver.route("missing.test", DomainResolver.Route.NO_DOMAIN);
+        RecipientValidator validator = validator(List.of());
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(validator.validate("user" + i + "@example.org").valid()).isTrue();
+            assertThat(validator.validate("user" + i + "@Missing.test").valid()).isFalse();
+        }
+        assertThat(resolver.lookups()).isEqualTo(2);
+
+        // Negative results expire first
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        validator.validate("user@example.org");
+        validator.validate("user@missing.test");
+        assertThat(resolver.lookups()).isEqualTo(3);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(50));
+        validator.validate("user@example.org");
+        assertThat(resolver.lookups()).isEqualTo(4);
+    }
+
+    @Test
+    void testFailedLookupsAcceptTheAddressAndAreNotCached() {
+        resolver.fail("flaky.test");
+        RecipientValidator validator = validator(List.of());
+
+        RecipientValidator.Verdict verdict = validator.validate("someone@flaky.test");
+        assertThat(verdict.valid()).isTrue();
+        assertThat(verdict.address()).isEqualTo("someone@flaky.test");
+        validator.validate("someone@flaky.test");
+        assertThat(resolver.lookups()).isEqualTo(2);
+    }
+
+    @Test
+    void testDomainCheckCanBeDisabled() {
+        resolver.route("missing.test", DomainResolver.Route.NO_DOMAIN);
+        RecipientValidator validator = new RecipientValidator(resolver, false, false, List.of(),
+                Duration.ofMinutes(60), Duration.ofMinutes(10), 1000, nanos::get);
+
+        assertThat(validator.validate("someone@missing.test").valid()).isTrue();
+        assertThat(validator.validate("someone@mailinator.com").valid()).isTrue();
+        assertThat(resolver.lookups()).isZero();
+    }
+}
@@ -0,0 +1,83 @@
+package com.kitly.mail.service;
+
+import com.kitly.mail.model.Email;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SpoolReplayerTest {
+
+    @TempDir
+    Path dir;
+
+    private EmailSpool spool;
+    private EmailService emailService;
+    private DatabaseHealth databaseHealth;
+    private SpoolReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        spool = new EmailSpool(dir.toString(), 1 << 16, "never");
+        emailService = mock(EmailService.class);
+        databaseHealth = new DatabaseHealth(500, 3, 60000);
+        replayer = new SpoolReplayer(spool, emailService, databaseHealth, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void testReplayInsertsEveryEmailAndSkipsDuplicates() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            spool.append(new EmailSpool.SpooledEmail(email(i), List.of()));
+        }
+        doThrow(new DataIntegrityViolationException("duplicate message_id"))
+                .when(emailService).acceptSpooled(argThat(spooled -> spooled.email().getMessageId().equals("message-1")));
+
+        replayer.replay();
+
+        verify(emailService, times(5)).acceptSpooled(any());
+        assertThat(spool.pendingCount()).isZero();
+    }
+
+    @Test
+    void testReplayStopsWhileTheDatabaseIsUnavailable() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            spool.append(new EmailSpool.SpooledEmail(email(i), List.of()));
+        }
+        doNothing()
+                .doAnswer(i -> {
+                    databaseHealth.recordFailure(new IllegalStateException("Connection refused"));
+                    throw new DatabaseUnavailableException("Connection refused");
+                })
+                .when(emailService).acceptSpooled(any());
+
+        replayer.replay();
+        replayer.replay();
+
+        verify(emailService, times(2)).acceptSpooled(any());
+        assertThat(spool.pendingCount()).isEqualTo(2);
+        assertThat(spool.readPending(10).get(0).email().email().getMessageId()).isEqualTo("message-1");
+    }
+
+    private static Email email(int i) {
+        return Email.builder()
+                .messageId("message-" + i)
+                .fromEmail("sender@example.com")
+                .toEmail("recipient@example.com")
+                .subject("email-" + i)
+                .status(Email.EmailStatus.PENDING)
+                .build();
+    }
+}
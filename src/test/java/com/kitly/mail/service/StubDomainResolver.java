@@ -0,0 +1,40 @@
+package com.kitly.mail.service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process {@link DomainResolver} for tests. Domains resolve to {@link Route#MX} unless set otherwise.
+ */
+public class StubDomainResolver implements DomainResolver {
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    public StubDomainResolver route(String domain, Route route) {
+        routes.put(domain, route);
+        return this;
+    }
+
+    public StubDomainResolver fail(String domain) {
+        failures.put(domain, new IOException("DNS timeout for " + domain));
+        return this;
+    }
+
+    public int lookups() {
+        return lookups.get();
+    }
+
+    @Override
+    public Route resolve(String domain) throws IOException {
+        lookups.incrementAndGet();
+        IOException failure = failures.get(domain);
+        if (failure != null) {
+            throw failure;
+        }
+        return routes.getOrDefault(domain, Route.MX);
+    }
+}
@@ -0,0 +1,57 @@
+package com.kitly.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void testFiresTimersInTheirTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+
+        assertThat(wheel.schedule("a", 1025)).isTrue();
+        assertThat(wheel.schedule("b", 1050)).isTrue();
+        assertThat(wheel.size()).isEqualTo(2);
+
+        assertThat(wheel.advance(1015)).isEmpty();
+        assertThat(wheel.advance(1029)).containsExactly("a");
+        assertThat(wheel.advance(1049)).isEmpty();
+        assertThat(wheel.advance(1050)).containsExactly("b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void testCascadesTimersFromOverflowWheels() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+
+        // Beyond the 80ms span of the first wheel and the 640ms span of the second
+        wheel.schedule("second-level", 300);
+        wheel.schedule("third-level", 2_000);
+
+        assertThat(wheel.advance(299)).isEmpty();
+        assertThat(wheel.advance(310)).containsExactly("second-level");
+        assertThat(wheel.advance(1_999)).isEmpty();
+        assertThat(wheel.advance(2_000)).containsExactly("third-level");
+    }
+
+    @Test
+    void testRejectsTimersThatAreAlreadyDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+
+        assertThat(wheel.schedule("past", 900)).isFalse();
+        assertThat(wheel.schedule("current-tick", 1005)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void testAdvanceAcrossLargeGapExpiresEverything() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 8, 0);
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, i * 37L);
+        }
+
+        assertThat(wheel.advance(10_000)).hasSize(100);
+        assertThat(wheel.size()).isZero();
+    }
+}